@@ -0,0 +1,247 @@
+package ua.kiev.icyb.bio;
+
+import java.io.Serializable;
+
+/**
+ * Компактное представление строки полных состояний, в котором каждой позиции строки
+ * отводится минимально необходимое количество бит.
+ * 
+ * <p>Полное состояние в позиции строки кодируется числом
+ * <pre>
+ * observed | (hidden &lt;&lt; observedBits),
+ * </pre>
+ * где {@code observedBits} — количество бит, необходимое для хранения наблюдаемого
+ * состояния. Например, для нуклеотидов ({@code "ACGT"}) с разметкой на экзоны и интроны
+ * ({@code "xi"}) на позицию отводится 3 бита вместо 16 бит в паре массивов {@code byte[]};
+ * для четырех скрытых состояний — 4 бита. Если строка скрытых состояний отсутствует,
+ * хранятся только наблюдаемые состояния. Коды хранятся в массиве {@code long}; код
+ * не пересекает границу между элементами массива, так что при распаковке окна строки
+ * каждый элемент массива читается один раз.
+ * 
+ * <p>Объекты класса неизменяемы и могут использоваться несколькими потоками.
+ * 
+ * <p><b>Пример.</b>
+ * <pre>
+ * PackedStates packed = new PackedStates(observed, hidden, 4, 2);
+ * byte[] window = new byte[10];
+ * packed.observed(100, 10, window, 0);
+ * // window содержит наблюдаемые состояния observed[100..109]
+ * </pre>
+ */
+public final class PackedStates implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Возвращает количество бит, необходимое для хранения одного из заданного числа состояний.
+	 * 
+	 * @param nStates
+	 *    размер алфавита состояний
+	 * @return
+	 *    количество бит
+	 */
+	public static int bits(int nStates) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(nStates - 1));
+	}
+	
+	/** Длина строки. */
+	private final int length;
+	
+	/** Количество бит, отводимых под наблюдаемое состояние. */
+	private final byte observedBits;
+	
+	/** Количество бит, отводимых под скрытое состояние; {@code 0}, если скрытые состояния отсутствуют. */
+	private final byte hiddenBits;
+	
+	/** Упакованные коды полных состояний. */
+	private final long[] words;
+	
+	/**
+	 * Упаковывает строку полных состояний.
+	 * 
+	 * @param observed
+	 *    строка наблюдаемых состояний
+	 * @param hidden
+	 *    строка скрытых состояний той же длины или {@code null}
+	 * @param nObserved
+	 *    размер алфавита наблюдаемых состояний
+	 * @param nHidden
+	 *    размер алфавита скрытых состояний
+	 * @throws IllegalArgumentException
+	 *    если длины строк не совпадают, код полного состояния не помещается в 32 бита
+	 *    или код состояния в одной из позиций строки не помещается в отведенные ему биты
+	 */
+	public PackedStates(byte[] observed, byte[] hidden, int nObserved, int nHidden) {
+		if ((hidden != null) && (hidden.length != observed.length)) {
+			throw new IllegalArgumentException("Observed and hidden strings have different lengths: "
+					+ observed.length + ", " + hidden.length);
+		}
+		
+		this.length = observed.length;
+		this.observedBits = (byte) bits(nObserved);
+		this.hiddenBits = (byte) ((hidden == null) ? 0 : bits(nHidden));
+		final int bits = observedBits + hiddenBits;
+		if (bits > 32) {
+			throw new IllegalArgumentException("Too many complete states: " + nObserved + " x " + nHidden);
+		}
+		
+		final int perWord = 64 / bits;
+		this.words = new long[(length + perWord - 1) / perWord];
+		for (int pos = 0; pos < length; pos++) {
+			checkCode(observed[pos], observedBits, pos);
+			long code = observed[pos];
+			if (hidden != null) {
+				checkCode(hidden[pos], hiddenBits, pos);
+				code |= hidden[pos] << observedBits;
+			}
+			words[pos / perWord] |= code << ((pos % perWord) * bits);
+		}
+	}
+	
+	/**
+	 * Проверяет, что код состояния помещается в заданное количество бит.
+	 * 
+	 * @param code
+	 *    код состояния
+	 * @param bits
+	 *    количество бит, отводимых под состояние
+	 * @param pos
+	 *    позиция состояния в строке
+	 * @throws IllegalArgumentException
+	 *    если код отрицателен или не помещается в заданное количество бит
+	 */
+	private static void checkCode(byte code, int bits, int pos) {
+		if ((code < 0) || (code >= (1 << bits))) {
+			throw new IllegalArgumentException("Invalid state code at position " + pos + ": " + code);
+		}
+	}
+	
+	/**
+	 * Возвращает длину строки.
+	 * 
+	 * @return
+	 *    длина строки
+	 */
+	public int length() {
+		return length;
+	}
+	
+	/**
+	 * Проверяет, хранятся ли в объекте скрытые состояния.
+	 * 
+	 * @return
+	 *    {@code true}, если строка скрытых состояний была задана при упаковке
+	 */
+	public boolean hasHidden() {
+		return (hiddenBits > 0);
+	}
+	
+	/**
+	 * Распаковывает окно строки наблюдаемых состояний.
+	 * 
+	 * @param start
+	 *    начальная позиция окна в строке
+	 * @param length
+	 *    длина окна
+	 * @param output
+	 *    массив, в который записываются состояния
+	 * @param offset
+	 *    позиция в массиве, с которой записываются состояния
+	 */
+	public void observed(int start, int length, byte[] output, int offset) {
+		unpack(start, length, 0, observedBits, output, offset);
+	}
+	
+	/**
+	 * Распаковывает окно строки скрытых состояний.
+	 * 
+	 * @param start
+	 *    начальная позиция окна в строке
+	 * @param length
+	 *    длина окна
+	 * @param output
+	 *    массив, в который записываются состояния
+	 * @param offset
+	 *    позиция в массиве, с которой записываются состояния
+	 * @throws IllegalStateException
+	 *    если скрытые состояния не хранятся в объекте
+	 */
+	public void hidden(int start, int length, byte[] output, int offset) {
+		if (!hasHidden()) {
+			throw new IllegalStateException("No hidden states");
+		}
+		unpack(start, length, observedBits, hiddenBits, output, offset);
+	}
+	
+	/**
+	 * Распаковывает строку наблюдаемых состояний.
+	 * 
+	 * @return
+	 *    строка наблюдаемых состояний
+	 */
+	public byte[] observed() {
+		byte[] result = new byte[length];
+		observed(0, length, result, 0);
+		return result;
+	}
+	
+	/**
+	 * Распаковывает строку скрытых состояний.
+	 * 
+	 * @return
+	 *    строка скрытых состояний или {@code null}, если скрытые состояния не хранятся в объекте
+	 */
+	public byte[] hidden() {
+		if (!hasHidden()) return null;
+		
+		byte[] result = new byte[length];
+		hidden(0, length, result, 0);
+		return result;
+	}
+	
+	/**
+	 * Распаковывает часть кодов в заданном окне строки.
+	 * 
+	 * @param start
+	 *    начальная позиция окна в строке
+	 * @param length
+	 *    длина окна
+	 * @param shift
+	 *    сдвиг извлекаемой части кода
+	 * @param width
+	 *    количество бит в извлекаемой части кода
+	 * @param output
+	 *    массив, в который записываются состояния
+	 * @param offset
+	 *    позиция в массиве, с которой записываются состояния
+	 */
+	private void unpack(int start, int length, int shift, int width, byte[] output, int offset) {
+		if ((start < 0) || (length < 0) || (start + length > this.length)) {
+			throw new IndexOutOfBoundsException("Invalid window: " + start + "+" + length
+					+ " for length " + this.length);
+		}
+		
+		if (length == 0) return;
+		
+		final int bits = observedBits + hiddenBits, perWord = 64 / bits;
+		final long mask = (1L << width) - 1;
+		
+		int wordIdx = start / perWord, inWord = start % perWord;
+		long word = words[wordIdx] >>> (inWord * bits + shift);
+		for (int i = 0; i < length; i++) {
+			if (inWord == perWord) {
+				word = words[++wordIdx] >>> shift;
+				inWord = 0;
+			}
+			output[offset + i] = (byte) (word & mask);
+			word >>>= bits;
+			inWord++;
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("<%s(%d, %d+%d bits)>", this.getClass().getSimpleName(),
+				length, observedBits, hiddenBits);
+	}
+}
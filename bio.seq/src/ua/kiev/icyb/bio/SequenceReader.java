@@ -0,0 +1,191 @@
+package ua.kiev.icyb.bio;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+import ua.kiev.icyb.bio.res.Messages;
+
+/**
+ * Последовательное чтение строк выборки из текстового файла. В отличие от
+ * {@link SimpleSequenceSet#SimpleSequenceSet(BufferedReader)}, класс не хранит прочитанные
+ * прецеденты, что позволяет обрабатывать выборки, не помещающиеся в оперативную память.
+ * 
+ * <p>Формат файла совпадает с форматом, используемым методом {@link SequenceSet#saveToFile(String)}:
+ * первая строка содержит алфавиты наблюдаемых, скрытых и (опционально) полных состояний,
+ * последующие строки — пары «ключ: значение» с ключами {@code i} (идентификатор прецедента),
+ * {@code o} (наблюдаемые состояния), {@code h} (скрытые состояния) и {@code c} (полные состояния).
+ */
+public class SequenceReader implements Closeable {
+
+	/** Автомат, из которого читаются строки. */
+	private final BufferedReader reader;
+
+	/** Алфавит наблюдаемых состояний. */
+	private final String observedStates;
+	/** Алфавит скрытых состояний. */
+	private final String hiddenStates;
+	/** Алфавит полных состояний. */
+	private final String completeStates;
+
+	/** Количество прочитанных прецедентов. */
+	private int count = 0;
+
+	/**
+	 * Создает автомат для чтения строк выборки, считывая заголовок файла.
+	 * 
+	 * @param reader
+	 *    поток данных, из которого читается информация о строках выборки
+	 * @throws IOException
+	 *    если при чтении заголовка произошла ошибка ввода/вывода или заголовок имеет
+	 *    неверный формат
+	 */
+	public SequenceReader(BufferedReader reader) throws IOException {
+		this.reader = reader;
+
+		String line = reader.readLine();
+		String[] parts = (line == null) ? new String[0] : line.trim().split("\\s+");
+		if (parts.length < 2) {
+			throw new IOException(Messages.format("dataset.e_line", line));
+		}
+		observedStates = parts[0];
+		hiddenStates = parts[1];
+		completeStates = (parts.length == 2) ? null : parts[2];
+	}
+
+	/**
+	 * Возвращает алфавит наблюдаемых состояний.
+	 * 
+	 * @return
+	 *    алфавит наблюдаемых состояний
+	 */
+	public String observedStates() {
+		return observedStates;
+	}
+
+	/**
+	 * Возвращает алфавит скрытых состояний.
+	 * 
+	 * @return
+	 *    алфавит скрытых состояний
+	 */
+	public String hiddenStates() {
+		return hiddenStates;
+	}
+
+	/**
+	 * Возвращает алфавит полных состояний.
+	 * 
+	 * @return
+	 *    алфавит полных состояний или {@code null}, если он не задан
+	 */
+	public String completeStates() {
+		return completeStates;
+	}
+
+	/**
+	 * Возвращает количество прецедентов, прочитанных с момента создания автомата.
+	 * 
+	 * @return
+	 *    число прочитанных прецедентов
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Читает следующий прецедент.
+	 * 
+	 * Пустые строки файла пропускаются.
+	 * 
+	 * @return
+	 *    прочитанный прецедент или {@code null}, если достигнут конец файла. Если
+	 *    идентификатор прецедента не задан в файле, поле {@link Sequence#id} равно {@code null}
+	 * @throws IOException
+	 *    если при чтении произошла ошибка ввода/вывода или файл имеет неверный формат
+	 */
+	public Sequence next() throws IOException {
+		byte[] lastObservedSeq = null;
+		String id = null;
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty()) continue;
+			
+			final int colon = line.indexOf(':');
+			if (colon < 0) {
+				throw new IOException(Messages.format("dataset.e_line", line));
+			}
+			String key = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+
+			if (key.equals("o")) {
+				lastObservedSeq = decode(value, observedStates);
+			} else if (key.equals("i")) {
+				id = value;
+			} else if (key.equals("h")) {
+				count++;
+				return new Sequence(id, lastObservedSeq, decode(value, hiddenStates));
+			} else if (key.equals("c")) {
+				byte[] complete = decode(value, completeStates);
+				byte[] observed = new byte[complete.length], hidden = new byte[complete.length];
+
+				for (int pos = 0; pos < complete.length; pos++) {
+					observed[pos] = (byte) (complete[pos] % observedStates.length());
+					hidden[pos] = (byte) (complete[pos] / observedStates.length());
+				}
+
+				count++;
+				return new Sequence(id, observed, hidden);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Пропускает заданное количество прецедентов.
+	 * 
+	 * @param n
+	 *    число прецедентов, которые надо пропустить
+	 * @return
+	 *    число фактически пропущенных прецедентов (меньше {@code n}, если достигнут конец файла)
+	 * @throws IOException
+	 *    если при чтении произошла ошибка ввода/вывода
+	 */
+	public int skip(int n) throws IOException {
+		int skipped = 0;
+		while ((skipped < n) && (next() != null)) {
+			skipped++;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Конвертирует строку символов из определенного алфавита в байтовый массив,
+	 * каждый элемент которого равен индексу соответствующего символа строки в алфавите.
+	 * 
+	 * @param line
+	 *    строка, которая подвергается преобразованию
+	 * @param alphabet
+	 *    испольуемый алфавит символов
+	 * @return
+	 *    байтовый массив индексов
+	 * @throws IOException
+	 */
+	private static byte[] decode(String line, String alphabet) throws IOException {
+		byte[] decoded = new byte[line.length()];
+		for (int pos = 0; pos < line.length(); pos++) {
+			decoded[pos] = (byte) alphabet.indexOf(line.charAt(pos));
+			if (decoded[pos] < 0) {
+				throw new IOException(Messages.format("dataset.e_char", line.charAt(pos)));
+			}
+		}
+		return decoded;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
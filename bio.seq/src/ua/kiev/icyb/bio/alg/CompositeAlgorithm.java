@@ -0,0 +1,56 @@
+package ua.kiev.icyb.bio.alg;
+
+import ua.kiev.icyb.bio.SeqAlgorithm;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+
+/**
+ * Композиция алгоритмов распознавания, в которой каждая строка наблюдаемых состояний
+ * обрабатывается ровно одним из составляющих алгоритмов.
+ * 
+ * <p>Интерфейс позволяет обрабатывать выборку группами строк, относящихся к одному
+ * составляющему алгоритму: например, {@link ThreadedAlgorithm} распознает строки
+ * каждой группы подряд (что уменьшает количество переключений между большими моделями)
+ * и обучает составляющие алгоритмы параллельно.
+ */
+public interface CompositeAlgorithm extends SeqAlgorithm {
+	
+	/**
+	 * Возвращает количество составляющих алгоритмов.
+	 * 
+	 * @return
+	 *    количество составляющих алгоритмов
+	 */
+	int size();
+	
+	/**
+	 * Возвращает составляющий алгоритм.
+	 * 
+	 * @param index
+	 *    индекс (с отсчетом от нуля) составляющего алгоритма
+	 * @return
+	 *    составляющий алгоритм
+	 */
+	SeqAlgorithm component(int index);
+	
+	/**
+	 * Возвращает индекс составляющего алгоритма, обрабатывающего заданную строку.
+	 * 
+	 * @param sequence
+	 *    строка наблюдаемых состояний
+	 * @return
+	 *    индекс (с отсчетом от нуля) составляющего алгоритма
+	 */
+	int index(Sequence sequence);
+	
+	/**
+	 * Возвращает индексы составляющих алгоритмов для всех строк выборки.
+	 * 
+	 * @param set
+	 *    выборка
+	 * @return
+	 *    индексы (с отсчетом от нуля) составляющих алгоритмов; {@code i}-й элемент массива
+	 *    соответствует {@code i}-й строке выборки
+	 */
+	int[] indices(SequenceSet set);
+}
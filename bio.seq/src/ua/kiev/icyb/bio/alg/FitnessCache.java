@@ -0,0 +1,289 @@
+package ua.kiev.icyb.bio.alg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.res.Messages;
+
+/**
+ * Кэш вычисленных значений функционала качества с ограниченным размером.
+ * 
+ * <p>Значения хранятся по ключам {@link Key}, включающим отпечаток выборки, порядок
+ * марковских цепей и оцениваемый объект (предикат, организм и т.п.). При превышении
+ * максимального размера из кэша удаляются значения, к которым дольше всего не было
+ * обращений. Все методы класса синхронизированы, так что кэш может использоваться
+ * одновременно несколькими потоками.
+ * 
+ * <p>Кэш может сохраняться на диск; экземпляры, открытые методом {@link #open(Env, String, int)}
+ * с одним и тем же именем файла, разделяются всеми алгоритмами в пределах процесса.
+ * Это позволяет не вычислять функционал качества повторно в серии экспериментов на одной
+ * и той же выборке.
+ * 
+ * <p><b>Пример.</b>
+ * <pre>
+ * FitnessCache cache = FitnessCache.open(env, "fitness.cache", 100000);
+ * FitnessCache.Key key = new FitnessCache.Key(entropy.fingerprint(), entropy.getOrder(), rule);
+ * Double fitness = cache.get(key);
+ * if (fitness == null) {
+ *     fitness = entropy.fitness(rule);
+ *     cache.put(key, fitness);
+ * }
+ * cache.save(env, "fitness.cache");
+ * </pre>
+ */
+public class FitnessCache implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Ключ для значения функционала качества.
+	 */
+	public static final class Key implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Отпечаток выборки, на которой вычисляется функционал. */
+		private final long fingerprint;
+		
+		/** Порядок марковских цепей, используемых при вычислении функционала. */
+		private final int order;
+		
+		/** Оцениваемый объект; должен корректно реализовывать методы {@code equals} и {@code hashCode}. */
+		private final Serializable candidate;
+		
+		/**
+		 * Создает новый ключ.
+		 * 
+		 * @param fingerprint
+		 *    отпечаток выборки, на которой вычисляется функционал
+		 * @param order
+		 *    порядок марковских цепей, используемых при вычислении функционала
+		 * @param candidate
+		 *    оцениваемый объект
+		 */
+		public Key(long fingerprint, int order, Serializable candidate) {
+			this.fingerprint = fingerprint;
+			this.order = order;
+			this.candidate = candidate;
+		}
+		
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (int) (fingerprint ^ (fingerprint >>> 32));
+			result = prime * result + order;
+			result = prime * result + candidate.hashCode();
+			return result;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (obj == null) return false;
+			if (getClass() != obj.getClass()) return false;
+			
+			Key other = (Key) obj;
+			return (fingerprint == other.fingerprint) && (order == other.order)
+					&& candidate.equals(other.candidate);
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("[%016x, %d: %s]", fingerprint, order, candidate);
+		}
+	}
+	
+	/**
+	 * Хэш-таблица, упорядоченная по времени последнего обращения и удаляющая
+	 * самые старые элементы при превышении максимального размера.
+	 */
+	private static class LruMap extends LinkedHashMap<Key, Double> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private int capacity;
+		
+		public LruMap(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+			return size() > capacity;
+		}
+	}
+	
+	/**
+	 * Кэши, открытые в пределах процесса; ключами служат абсолютные пути к файлам кэшей.
+	 */
+	private static final Map<String, FitnessCache> openCaches = new HashMap<String, FitnessCache>();
+	
+	/** Блокировка, под которой кэши записываются в файлы. */
+	private static final Object SAVE_LOCK = new Object();
+	
+	/**
+	 * Открывает кэш, сохраненный в файле. Если кэш с тем же именем файла уже открыт
+	 * в пределах процесса, возвращается открытый экземпляр. Если файл не существует
+	 * или не может быть прочитан, создается пустой кэш. Максимальный размер открытого
+	 * или прочитанного кэша увеличивается до запрошенного, если он меньше.
+	 * 
+	 * @param env
+	 *    окружение, используемое для чтения файла
+	 * @param filename
+	 *    имя файла кэша
+	 * @param capacity
+	 *    максимальное количество значений в кэше; если кэш уже открыт или прочитан из файла,
+	 *    используется максимум из его размера и этого значения
+	 * @return
+	 *    кэш значений функционала качества
+	 */
+	public static FitnessCache open(Env env, String filename, int capacity) {
+		final String path = new File(filename).getAbsolutePath();
+		synchronized (openCaches) {
+			FitnessCache cache = openCaches.get(path);
+			if (cache == null) {
+				if (new File(path).exists()) {
+					try {
+						cache = env.load(path);
+						env.debug(1, Messages.format("cache.load", path, cache.size()));
+					} catch (IOException e) {
+						env.error(1, Messages.format("cache.e_load", e));
+					}
+				}
+				if (cache == null) {
+					cache = new FitnessCache(capacity);
+				}
+				openCaches.put(path, cache);
+			}
+			cache.ensureCapacity(capacity);
+			return cache;
+		}
+	}
+	
+	/** Значения функционала качества. */
+	private final LruMap values;
+	
+	/** Количество успешных обращений к кэшу. */
+	private transient long hits;
+	
+	/** Количество обращений к кэшу, для которых значение не было найдено. */
+	private transient long misses;
+	
+	/**
+	 * Создает пустой кэш.
+	 * 
+	 * @param capacity
+	 *    максимальное количество значений в кэше
+	 */
+	public FitnessCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity should be positive: " + capacity);
+		}
+		this.values = new LruMap(capacity);
+	}
+	
+	/**
+	 * Возвращает сохраненное значение функционала качества.
+	 * 
+	 * @param key
+	 *    ключ значения
+	 * @return
+	 *    значение функционала качества или {@code null}, если значение отсутствует в кэше
+	 */
+	public synchronized Double get(Key key) {
+		Double value = values.get(key);
+		if (value == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return value;
+	}
+	
+	/**
+	 * Сохраняет значение функционала качества.
+	 * 
+	 * @param key
+	 *    ключ значения
+	 * @param fitness
+	 *    значение функционала качества
+	 */
+	public synchronized void put(Key key, double fitness) {
+		values.put(key, fitness);
+	}
+	
+	/**
+	 * Возвращает количество значений в кэше.
+	 * 
+	 * @return
+	 *    количество значений
+	 */
+	public synchronized int size() {
+		return values.size();
+	}
+	
+	/**
+	 * Возвращает максимальное количество значений в кэше.
+	 * 
+	 * @return
+	 *    максимальное количество значений
+	 */
+	public synchronized int capacity() {
+		return values.capacity;
+	}
+	
+	/**
+	 * Увеличивает максимальное количество значений в кэше до заданного, если текущее
+	 * значение меньше.
+	 * 
+	 * @param capacity
+	 *    требуемое максимальное количество значений
+	 */
+	public synchronized void ensureCapacity(int capacity) {
+		if (capacity > values.capacity) {
+			values.capacity = capacity;
+		}
+	}
+	
+	/**
+	 * Сохраняет кэш в файл. Ошибки ввода/вывода выводятся в окружение и не прерывают
+	 * выполнение алгоритма. Записывается копия кэша, поэтому другие потоки могут обращаться
+	 * к кэшу во время записи.
+	 * 
+	 * @param env
+	 *    окружение, используемое для записи файла
+	 * @param filename
+	 *    имя файла
+	 */
+	public void save(Env env, String filename) {
+		final FitnessCache snapshot;
+		synchronized (this) {
+			snapshot = new FitnessCache(values.capacity);
+			snapshot.values.putAll(values);
+			snapshot.hits = hits;
+			snapshot.misses = misses;
+		}
+		
+		synchronized (SAVE_LOCK) {
+			try {
+				env.save(snapshot, filename);
+				env.debug(2, Messages.format("cache.save", filename, snapshot.values.size(), 
+						snapshot.hits, snapshot.misses));
+			} catch (IOException e) {
+				env.error(1, Messages.format("cache.e_save", e));
+			}
+		}
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return Messages.format("cache.repr", values.size(), values.capacity, hits, misses);
+	}
+}
@@ -0,0 +1,701 @@
+package ua.kiev.icyb.bio.alg;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ua.kiev.icyb.bio.AbstractLaunchable;
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Простая реализация генетического алгоритма оптимизации.
+ * 
+ * <p>Генетический алгоритм работает по принципу эволюции живых организмов.
+ * Элементы множества, на котором производится оптимизация, представляются
+ * в виде {@linkplain Organism организмов}, для которых определены операции
+ * мутации и скрещивания. На каждой итерации каждый организм из текущего множества организмов
+ * (<em>поколения</em> или <em>популяции</em>) подвергается определенному
+ * количеству обеих этих операций; результаты операций добавляются в популяцию. 
+ * После этого определенное число организмов с наивысшим показателем функционала качества 
+ * переходит в следующее поколение.
+ * 
+ * <p>Начальная популяция организмов задается из априорных соображений; во многих случаях
+ * ее можно создавать случайным образом.
+ * 
+ * <p>Если число {@linkplain #islands островов} больше единицы, используется островная модель.
+ * Начальная популяция делится между островами, каждый из которых развивается независимо
+ * в отдельном задании пула потоков со своим генератором случайных чисел; функционал качества
+ * вычисляется в том же задании. Через каждые {@link #migrationInterval} поколений
+ * лучшие организмы острова копируются на следующий остров (острова образуют кольцо).
+ * Острова не ожидают друг друга: мигранты забираются получателем при формировании
+ * его очередного поколения. Функционал качества организмов в этом режиме не должен
+ * использовать пул потоков окружения, так как все потоки пула могут быть заняты островами.
+ */
+public class GeneticAlgorithm extends AbstractLaunchable implements Representable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Класс, сопоставляющий организму его функционал качества.
+	 * 
+	 * Экземпляры класса сравнимы между собой; для сравнения используется значение функционала
+	 * качества.
+	 * 
+	 * @param <T>
+	 *    тип организмов, используемых в алгоритме оптимизации
+	 */
+	private static class FitnessRecord implements Comparable<FitnessRecord> {
+		/** Значение функционала качества. */
+		public final double fitness;
+		/** Организм, для которого вычисляется функционал качества. */
+		public final Organism organism;
+		
+		/**
+		 * Создает новую запись для организма.
+		 * 
+		 * @param organism
+		 * @param cache
+		 */
+		private FitnessRecord(Map.Entry<Organism, Double> mapEntry) {
+			this.organism = mapEntry.getKey();
+			this.fitness = mapEntry.getValue();
+		}
+		
+		@Override
+		public int compareTo(FitnessRecord other) {
+			return -Double.compare(this.fitness, other.fitness);
+		}
+	}
+	
+	/**
+	 * Остров — независимо развивающаяся часть популяции в островной модели.
+	 */
+	private static class Island implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Индекс острова (с отсчетом от нуля). */
+		public final int index;
+		
+		/** Генератор случайных чисел для операций мутации и скрещивания. */
+		public final Random random;
+		
+		/** Текущая популяция острова; заменяется целиком после формирования поколения. */
+		public Set<Organism> population;
+		
+		/** Число поколений, сформированных на острове. */
+		public int generation = 0;
+		
+		/** Организмы, мигрировавшие на остров и еще не добавленные в популяцию. */
+		public final List<Organism> migrants = new ArrayList<Organism>();
+		
+		public Island(int index, Set<Organism> population, long seed) {
+			this.index = index;
+			this.population = population;
+			this.random = new Random(seed);
+		}
+		
+		/**
+		 * Создает копию острова для сохранения. Популяция не копируется, так как она
+		 * не изменяется после формирования поколения.
+		 * 
+		 * @param other
+		 *    копируемый остров
+		 */
+		public Island(Island other) {
+			this.index = other.index;
+			this.random = other.random;
+			this.population = other.population;
+			this.generation = other.generation;
+			this.migrants.addAll(other.migrants);
+		}
+	}
+	
+	/**
+	 * Задание, выполняющее все поколения генетического алгоритма на одном острове.
+	 */
+	private class IslandTask implements Callable<Void> {
+		
+		private final Island island;
+		
+		/** Кэш оценок качества организмов, общий для всех островов. */
+		private final FitnessCache cache;
+		
+		public IslandTask(Island island, FitnessCache cache) {
+			this.island = island;
+			this.cache = cache;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			while (island.generation < generations) {
+				Set<Organism> population = new HashSet<Organism>(island.population);
+				synchronized (islandList) {
+					population.addAll(island.migrants);
+					island.migrants.clear();
+				}
+				
+				// Скрещивание
+				List<Organism> list = new ArrayList<Organism>(population);
+				for (Organism item: list)
+					for (int i = 0; i < crossovers; i++) {
+						Organism other = list.get(island.random.nextInt(list.size()));
+						population.add(item.crossover(other, island.random));
+					}
+				
+				// Мутации
+				list = new ArrayList<Organism>(population);
+				for (Organism item: list)
+					for (int i = 0; i < mutations; i++)
+						population.add(item.mutate(mutationP, island.random));
+				
+				onGenerationFormed(population);
+				
+				Map<Organism, Double> fitness = new HashMap<Organism, Double>();
+				for (Organism item : population) {
+					Double val = cachedFitness(cache, item);
+					if (val == null) {
+						val = item.fitness();
+						cacheFitness(cache, item, val);
+					}
+					fitness.put(item, val);
+				}
+				List<FitnessRecord> ranked = rank(fitness);
+				
+				Set<Organism> newPopulation = new HashSet<Organism>();
+				for (FitnessRecord r : ranked.subList(0, Math.min(maxSize, ranked.size()))) {
+					newPopulation.add(r.organism);
+				}
+				
+				synchronized (islandList) {
+					island.population = newPopulation;
+					island.generation++;
+					
+					if ((islandList.size() > 1) && (island.generation % migrationInterval == 0)) {
+						Island target = islandList.get((island.index + 1) % islandList.size());
+						for (FitnessRecord r : ranked.subList(0, Math.min(migrants, ranked.size()))) {
+							target.migrants.add(r.organism);
+						}
+					}
+					
+					getEnv().debug(1, Messages.format("gen.island_generation", island.index + 1,
+							island.generation, newPopulation.size(), ranked.get(0).fitness));
+				}
+				
+				// Если сохранение уже выполняется другим островом, оно пропускается
+				if (checkpointLock.tryLock()) {
+					try {
+						checkpoint(cache);
+					} finally {
+						checkpointLock.unlock();
+					}
+				}
+			}
+			return null;
+		}
+	}
+	
+	private static class FitnessTask implements Callable<Void> {
+		private final Map.Entry<Organism, Double> entry;
+		
+		public FitnessTask(Map.Entry<Organism, Double> entry) {
+			this.entry = entry;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			entry.setValue(entry.getKey().fitness());
+			return null;
+		}
+	}
+	
+	/**
+	 * Число генерируемых алгоритмом поколений организмов.
+	 */
+	public int generations;
+	
+	/**
+	 * Число скрещиваний организма с другими организмами того же поколения
+	 * в пределах каждой итерации генетического алгоритма.
+	 */
+	public int crossovers;
+	
+	/**
+	 * Число мутаций организма в пределах каждой итерации генетического алгоритма.
+	 */
+	public int mutations;
+	
+	/**
+	 * Максимальный размер поколения организмов.
+	 */
+	public int maxSize;
+	
+	/**
+	 * Вероятность <em>атомарной</em> мутации.
+	 * 
+	 * @see Organism#mutate(double)
+	 */
+	public double mutationP;
+	
+	/**
+	 * Переключатель, определявший, следует ли использовать для кэширования
+	 * значений функционала качества карту со слабыми ссылками.
+	 * 
+	 * @deprecated
+	 *    Параметр не влияет на работу алгоритма; размер кэша ограничивается
+	 *    параметром {@link #cacheCapacity}.
+	 */
+	@Deprecated
+	public boolean weakCache = false;
+	
+	/**
+	 * Максимальное количество значений функционала качества, хранящихся в кэше.
+	 */
+	public int cacheCapacity = 100000;
+	
+	/**
+	 * Имя файла, в котором сохраняется кэш значений функционала качества
+	 * (см. {@link FitnessCache#open(ua.kiev.icyb.bio.Env, String, int)}). Если значение
+	 * равно {@code null}, кэш хранится только в памяти на время работы алгоритма.
+	 */
+	public String cacheFile = null;
+	
+	/**
+	 * Число островов в островной модели. Если значение равно единице, популяция
+	 * развивается как единое целое.
+	 */
+	public int islands = 1;
+	
+	/**
+	 * Число поколений острова между последовательными миграциями организмов.
+	 */
+	public int migrationInterval = 5;
+	
+	/**
+	 * Число лучших организмов, копируемых на следующий остров при миграции.
+	 */
+	public int migrants = 2;
+	
+	/**
+	 * Шаблон для сохранения поколений, получаемых алгоритмом. <code>{i}</code>
+	 * заменяется на номер текущего поколения.
+	 */
+	public String saveTemplate = null;
+	
+	/**
+	 * Начальная популяция организмов.
+	 */
+	public Collection<? extends Organism> initialPopulation;
+	
+	/**
+	 * Текущая популяция организмов.
+	 */
+	private Set<Organism> population;
+	
+	/**
+	 * Номер текущего поколения.
+	 */
+	private int generationIdx = 0;
+	
+	/**
+	 * Полностью ли сформировано ли текущее поколение (т.е. выполнены ли операции скрещивания
+	 * и мутации). 
+	 */
+	private boolean populationFormed = false;
+	
+	/**
+	 * Отображения, связывающее организмы текущего поколения и их функционал качества.
+	 * Значения {@link Double#NaN} соответствуют невычисленным значениям.
+	 */
+	private Map<Organism, Double> fitness;
+	
+	/**
+	 * Острова в островной модели; {@code null}, если используется обычный режим.
+	 * Изменения полей островов синхронизируются на этом списке.
+	 */
+	private transient List<Island> islandList;
+	
+	/**
+	 * Копия состояния островов на момент последнего сохранения; {@code null}, если 
+	 * используется обычный режим.
+	 */
+	private List<Island> savedIslands;
+	
+	/** Блокировка, обеспечивающая, что острова сохраняются не более чем одним потоком. */
+	private transient ReentrantLock checkpointLock;
+	
+	/**
+	 * Кэш значений функционала качества для организмов, у которых нет ключа
+	 * (см. {@link #cacheKey(Organism)}). Хранится только в памяти на время работы алгоритма.
+	 */
+	private transient FitnessCache localCache;
+	
+	/**
+	 * Создает новый генетический алгоритм.
+	 */
+	public GeneticAlgorithm() {
+	}
+	
+	@Override
+	protected void doRun() {
+		localCache = new FitnessCache(cacheCapacity);
+		if ((savedIslands != null) || (islands > 1)) {
+			islandRun();
+			return;
+		}
+		
+		if (population == null) {
+			population = new HashSet<Organism>(initialPopulation);
+			populationFormed = false;
+		}
+		final FitnessCache cache = openCache();
+		if (fitness == null) {
+			fitness = new HashMap<Organism, Double>();
+		}
+		
+		for (int t = this.generationIdx; t < generations; this.generationIdx = ++t) {
+			getEnv().debug(1, Messages.format("gen.generation", t + 1));
+			getEnv().debug(1, Messages.format("gen.pop_size", population.size()));
+			getEnv().debug(2, Messages.format("gen.cache", cache.size()));
+			
+			if (!populationFormed) {
+				// Скрещивание
+				List<Organism> list = new ArrayList<Organism>(population);
+				for (Organism item: list)
+					for (int i = 0; i < crossovers; i++) {
+						int index = (int)Math.floor(Math.random() * list.size());
+						Organism other = list.get(index);
+						population.add(item.crossover(other));
+					};
+				
+				// Мутации
+				list = new ArrayList<Organism>(population);
+				for (Organism item: list)
+					for (int i = 0; i < mutations; i++)
+						population.add(item.mutate(mutationP));
+				
+				getEnv().debug(1, Messages.format("gen.new_pop_size", population.size()));
+				onGenerationFormed(population);
+				populationFormed = true;
+			}
+			
+			// Отбор наилучших организмов
+			if (population.size() > maxSize) {
+				getEnv().debug(1, Messages.getString("gen.filter"));
+				
+				int cached = 0;
+				for (Organism item : population) {
+					if (!fitness.containsKey(item)) {
+						Double val = cachedFitness(cache, item);
+						if (val != null) {
+							cached++;
+						}
+						fitness.put(item, (val == null) ? Double.NaN : val);
+					}
+				}
+				
+				
+				ExecutorService executor = getEnv().executor();
+				List<FitnessTask> tasks = new ArrayList<FitnessTask>();
+				for (Map.Entry<Organism, Double> entry : fitness.entrySet()) {
+					if (entry.getValue().isNaN()) {
+						tasks.add(new FitnessTask(entry));
+					}
+				}
+				getEnv().debug(1, Messages.format("gen.tasks", 
+						tasks.size(), fitness.size() - tasks.size(), cached));
+				
+				try {
+					final List<Future<Void>> futures = executor.invokeAll(tasks);
+					for (Future<Void> future: futures) {
+						future.get();
+					}
+				} catch (InterruptedException e) {
+					getEnv().exception(e);
+				} catch (ExecutionException e) {
+					getEnv().exception(e);
+				}
+				
+				population = trimPopulation(fitness, maxSize);
+				for (Map.Entry<Organism, Double> entry : fitness.entrySet()) {
+					cacheFitness(cache, entry.getKey(), entry.getValue());
+				}
+				fitness.clear();
+			}
+			
+			populationFormed = false;
+			save();
+			saveCache(cache);
+			savePopulation();
+		}
+	}
+	
+	/**
+	 * Выполняет генетический алгоритм в соответствии с островной моделью.
+	 */
+	private void islandRun() {
+		if (savedIslands != null) {
+			islandList = new ArrayList<Island>();
+			for (Island island : savedIslands) {
+				islandList.add(new Island(island));
+			}
+		} else {
+			List<Organism> list = new ArrayList<Organism>(initialPopulation);
+			final int nIslands = Math.min(islands, list.size());
+			final Random random = new Random();
+			
+			List<Island> islandList = new ArrayList<Island>();
+			for (int i = 0; i < nIslands; i++) {
+				islandList.add(new Island(i, new HashSet<Organism>(), random.nextLong()));
+			}
+			for (int i = 0; i < list.size(); i++) {
+				islandList.get(i % nIslands).population.add(list.get(i));
+			}
+			this.islandList = islandList;
+		}
+		checkpointLock = new ReentrantLock();
+		
+		final FitnessCache cache = openCache();
+		
+		List<IslandTask> tasks = new ArrayList<IslandTask>();
+		for (Island island : islandList) {
+			tasks.add(new IslandTask(island, cache));
+		}
+		
+		try {
+			for (Future<Void> future : getEnv().executor().invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			getEnv().exception(e);
+		} catch (ExecutionException e) {
+			getEnv().exception(e);
+		}
+		
+		synchronized (islandList) {
+			population = new HashSet<Organism>();
+			for (Island island : islandList) {
+				population.addAll(island.population);
+			}
+			generationIdx = generations - 1;
+		}
+		checkpoint(cache);
+		savePopulation();
+	}
+	
+	/**
+	 * Сохраняет состояние островной модели и кэш значений функционала качества.
+	 * Состояние островов копируется при блокировке списка островов; запись на диск 
+	 * выполняется без блокировки, так что острова не ожидают ее окончания.
+	 * 
+	 * @param cache
+	 *    кэш значений функционала качества
+	 */
+	private void checkpoint(FitnessCache cache) {
+		List<Island> snapshot = new ArrayList<Island>();
+		synchronized (islandList) {
+			for (Island island : islandList) {
+				snapshot.add(new Island(island));
+			}
+		}
+		savedIslands = snapshot;
+		save();
+		saveCache(cache);
+	}
+	
+	/**
+	 * Открывает кэш значений функционала качества.
+	 * 
+	 * @return
+	 *    кэш, сохраняемый в файле {@link #cacheFile}, или новый кэш в памяти,
+	 *    если файл не задан
+	 */
+	private FitnessCache openCache() {
+		return (cacheFile == null) ? new FitnessCache(cacheCapacity)
+				: FitnessCache.open(getEnv(), cacheFile, cacheCapacity);
+	}
+	
+	/**
+	 * Сохраняет кэш значений функционала качества в файл {@link #cacheFile}, если он задан.
+	 * 
+	 * @param cache
+	 *    кэш значений функционала качества
+	 */
+	private void saveCache(FitnessCache cache) {
+		if (cacheFile != null) {
+			cache.save(getEnv(), cacheFile);
+		}
+	}
+	
+	/**
+	 * Возвращает сохраненное значение функционала качества организма.
+	 * 
+	 * @param cache
+	 *    кэш значений для организмов, имеющих ключ
+	 * @param organism
+	 *    организм
+	 * @return
+	 *    значение функционала качества или {@code null}, если значение отсутствует в кэше
+	 */
+	private Double cachedFitness(FitnessCache cache, Organism organism) {
+		final FitnessCache.Key key = cacheKey(organism);
+		return (key != null) ? cache.get(key) : localCache.get(localKey(organism));
+	}
+	
+	/**
+	 * Сохраняет значение функционала качества организма в кэше. Значения для организмов,
+	 * не имеющих ключа, сохраняются в кэше {@link #localCache}.
+	 * 
+	 * @param cache
+	 *    кэш значений для организмов, имеющих ключ
+	 * @param organism
+	 *    организм
+	 * @param value
+	 *    значение функционала качества
+	 */
+	private void cacheFitness(FitnessCache cache, Organism organism, double value) {
+		final FitnessCache.Key key = cacheKey(organism);
+		if (key != null) {
+			cache.put(key, value);
+		} else {
+			localCache.put(localKey(organism), value);
+		}
+	}
+	
+	/**
+	 * Возвращает ключ организма в кэше, хранящемся только в памяти.
+	 * 
+	 * @param organism
+	 *    организм
+	 * @return
+	 *    ключ, определяемый самим организмом
+	 */
+	private static FitnessCache.Key localKey(Organism organism) {
+		return new FitnessCache.Key(0L, 0, organism);
+	}
+	
+	/**
+	 * Возвращает ключ, по которому значение функционала качества организма хранится в кэше.
+	 * Значение функционала должно однозначно определяться ключом; в частности, если
+	 * кэш сохраняется на диск, ключ должен учитывать данные, на которых вычисляется функционал.
+	 * Реализация по умолчанию возвращает {@code null}: организмы общего вида не содержат
+	 * сведений о выборке, поэтому их значения функционала хранятся только в памяти
+	 * на время работы алгоритма и не попадают в файл {@link #cacheFile}.
+	 * 
+	 * @param organism
+	 *    организм
+	 * @return
+	 *    ключ для кэша значений функционала качества или {@code null}, если значение
+	 *    не следует сохранять в общем кэше
+	 */
+	protected FitnessCache.Key cacheKey(Organism organism) {
+		return null;
+	}
+	
+	/**
+	 * Упорядочивает организмы по убыванию функционала качества.
+	 * 
+	 * @param fitness
+	 *    отображение, связывающее организмы и их функционал качества
+	 * @return
+	 *    список записей, упорядоченный по убыванию функционала качества
+	 */
+	private static List<FitnessRecord> rank(Map<Organism, Double> fitness) {
+		List<FitnessRecord> list = new ArrayList<FitnessRecord>();
+		for (Map.Entry<Organism, Double> entry : fitness.entrySet()) {
+			list.add(new FitnessRecord(entry));
+		}
+		Collections.sort(list);
+		return list;
+	}
+	
+	/**
+	 * Уменьшает размер популяции, оставляее в ней организмы с наибольшими значениями
+	 * функционала качества.
+	 * 
+	 * @param fitness
+	 *    отображение, связывающее организмы и их функционал качества
+	 * @param size
+	 *    максимальный допустимый размер популяции
+	 * @return
+	 *    сокращенная популяция организмов
+	 */
+	private Set<Organism> trimPopulation(Map<Organism, Double> fitness, int size) {
+		List<FitnessRecord> list = rank(fitness).subList(0, size);
+		
+		Set<Organism> newPopulation = new HashSet<Organism>();
+		for (FitnessRecord r : list) {
+			newPopulation.add(r.organism);
+		}
+		return newPopulation;
+	}
+	
+	/**
+	 * Сохраняет текущую популяцию.
+	 */
+	private void savePopulation() {
+		if (saveTemplate != null) {
+			String filename = saveTemplate.replaceAll("\\{i\\}", "" + (this.generationIdx + 1));
+			getEnv().debug(1, Messages.format("gen.save_pop", filename));
+			try {
+				getEnv().save((Serializable) this.population, filename);
+			} catch (IOException e) {
+				getEnv().debug(1, Messages.format("gen.e_save_pop", e));
+			}
+		}
+	}
+	
+	/**
+	 * Вызывается каждый раз после формирования нового поколения организмов.
+	 * 
+	 * @param population
+	 *    сформированное поколение
+	 */
+	protected void onGenerationFormed(Set<Organism> population) {
+	}
+	
+	@Override
+	public String repr() {
+		String repr = Messages.format("gen.generations", this.generations) + "\n";
+		repr += Messages.format("gen.crossovers", this.crossovers) + "\n";
+		repr += Messages.format("gen.mutations", this.mutations) + "\n";
+		repr += Messages.format("gen.max_size", this.maxSize) + "\n";
+		repr += Messages.format("gen.mutation_p", this.mutationP) + "\n";
+		repr += Messages.format("misc.cache_file", this.cacheFile, this.cacheCapacity);
+		if (this.islands > 1) {
+			repr += "\n" + Messages.format("gen.islands", this.islands) + "\n";
+			repr += Messages.format("gen.migration", this.migrants, this.migrationInterval);
+		}
+		
+		if ((initialPopulation != null) && !initialPopulation.isEmpty()) {
+			Organism item = initialPopulation.iterator().next();
+			repr += "\n" + Messages.format("gen.init_pop", 
+					initialPopulation.size(), item.getClass().getName());
+		}
+		
+		if ((population != null) && !population.isEmpty()) {
+			repr += "\n" + Messages.format("gen.curr_gen", generationIdx + 1) + "\n";
+			
+			Organism item = population.iterator().next();
+			repr += Messages.format("gen.curr_pop", 
+					population.size(), item.getClass().getName());
+		}
+		
+		return repr;
+	}
+}
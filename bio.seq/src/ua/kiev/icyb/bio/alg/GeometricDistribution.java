@@ -0,0 +1,82 @@
+package ua.kiev.icyb.bio.alg;
+
+
+/**
+ * Геометрическое вероятностное распределение (<a href="http://ru.wikipedia.org/wiki/Геометрическое_распределение">википедия</a>).
+ * Значение функции правдоподобия для натурального числа <code>x</code> равно
+ * <pre>
+ * p * (1 - p)^(x - 1),
+ * </pre>
+ * где <code>p</code> — параметр распределения (вероятность успеха при одиночном испытании). 
+ */
+public class GeometricDistribution extends AbstractDistribution<Integer> {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Взвешенная сумма всех прецедентов.
+	 */
+	private double valueSum = 0;
+	/**
+	 * Суммарный вес всех прецедентов.
+	 */
+	private double weightSum = 0;
+	
+	/**
+	 * Возвращает вычисленное значение параметра распределения — вероятности успеха <code>p</code>.
+	 * 
+	 * @return
+	 *    вероятность успеха
+	 */
+	public double successP() {
+		return weightSum / valueSum;
+	}
+
+	@Override
+	public void reset() {
+		valueSum = 0;
+		weightSum = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Geom(%s)", successP());
+	}
+
+	@Override
+	public void train(Integer sample, double weight) {
+		valueSum += weight * sample;
+		weightSum += weight;		
+	}
+
+	/**
+	 * Добавляет к статистике этого распределения прецеденты, накопленные другим распределением,
+	 * умножая их веса на заданный коэффициент.
+	 * 
+	 * @param other
+	 *    геометрическое распределение
+	 * @param weight
+	 *    неотрицательный множитель для весов прецедентов другого распределения
+	 */
+	public void merge(GeometricDistribution other, double weight) {
+		valueSum += weight * other.valueSum;
+		weightSum += weight * other.weightSum;
+	}
+	
+	/**
+	 * Умножает веса всех прецедентов на заданный коэффициент.
+	 * 
+	 * @param factor
+	 *    неотрицательный множитель
+	 */
+	public void scale(double factor) {
+		valueSum *= factor;
+		weightSum *= factor;
+	}
+
+	@Override
+	public double estimate(Integer point) {
+		final double p = successP();
+		return (point - 1) * Math.log(1 - p) + Math.log(p);
+	}
+}
@@ -0,0 +1,892 @@
+package ua.kiev.icyb.bio.alg;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.StatesDescription;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Обобщение марковских цепей произвольного порядка для вероятностных моделей,
+ * в которых существуют как наблюдаемые, так и скрытые состояния.
+ * 
+ * <p>Модель, используемая классом, определяет вероятностное распределение на пространстве
+ * строк полных состояний. Функция правдоподобия при этом состоит из трех частей, задаваемых
+ * вероятностными распределениями:
+ * <ul>
+ * <li>распределение строк по длинам;
+ * <li>распределение начальных фрагментов строк определенной длины <code>l</code>;
+ * <li>условное распределение переходов из строки длины <code>l</code> в строки длины
+ * <code>m</code>.
+ * </ul>
+ * Длина <code>l</code> называется <em>порядком</em> модели, <code>m</code> — длиной зависимой
+ * цепочки состояний. При <code>m = 1</code> модель соответствует марковской цепи
+ * <code>l</code>-го порядка на пространстве строк полных состояний.
+ * 
+ * <p>Класс содержит две основных группы методов: 
+ * <ol>
+ * <li>обучение параметров вероятностной модели;
+ * <li>вычисление этих параметров.
+ * </ol>
+ * Параметры модели, возвращаемые методами второй группы, 
+ * являются решением задачи максимизации совместного (взвешенного) правдоподобия
+ * для набора строк полных состояний, которые были перед этим переданы методам первой группы.
+ */
+public class MarkovChain extends AbstractDistribution<Sequence> implements Representable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/** Генератор отметок версий цепей. */
+	private static final AtomicLong STAMPS = new AtomicLong();
+	
+	/** Длина зависимой цепочки состояний. */
+	private int depLength;
+	/** Порядок цепи Маркова. */
+	protected int order;
+	
+	/** Описание состояний, с которыми работает цепь. */
+	private final StatesDescription states;
+	
+	/** Фабрика для работы с фрагментами цепочек состояний. */
+	protected transient FragmentFactory factory;
+	
+	/** 
+	 * Количество последовательностей, которые были использованы для обучения параметров
+	 * вероятностной модели.
+	 */
+	protected int nSequences;
+	
+	/** Статистика по начальным состояниям цепочек полных состояний. */
+	private Map<Fragment, Double> initial;
+	
+	/** Отметка версии статистики цепи (см. {@link #stamp()}). */
+	private transient long stamp;
+	
+	/**
+	 * Возворащает статистику по начальным состояниям цепочек полных состояний.
+	 * 
+	 * Для каждой цепочки полных состояний длины {@link #order()} подсчитывается взвешенное количество
+	 * строк, которые с этой цепочки начинаются. Если в таблице нет элемента, соответствующая цепочка не
+	 * начинает ни одной строки из обучающей выборки.
+	 * 
+	 * @return
+	 *    хэш-таблица со статистикой по начальным состояниям 
+	 */
+	public Map<Fragment, Double> getInitialTable() {
+		return Collections.unmodifiableMap(initial);
+	}
+	
+	public Collection<Fragment> getInitialStates() {
+		return Collections.unmodifiableSet(initial.keySet());
+	}
+	
+	/** Количество возможных различных зависимых цепочек состояний. */
+	private transient int headsCount;
+	
+	/**
+	 * Статистика по переходам из цепочек полных состояний длины, определяемой порядком
+	 * марковской цепи, в цепочки длины зависимой части. Последовательности
+	 * длины {@link #order} в таблице соответствует массив величин, каждая из которых равна взвешенному
+	 * числу переходов из этой последовательности в одно из возможных зависимых состояний.
+	 * Зависимые состояния упорядочены в алфавитном порядке, определяемом
+	 * методом {@link Fragment#index()}.
+	 * Последний элемент массива равен сумме остальных элементов (предназначен для ускорения
+	 * вычислений).
+	 */
+	protected Map<Fragment, double[]> transitions;
+	
+	/**
+	 * Возвращает статистику по переходам из цепочек полных состояний длины, определяемой порядком
+	 * марковской цепи, в цепочки длины зависимой части. 
+	 * 
+	 * Последовательности длины {@link #order()} в таблице соответствует массив величин, 
+	 * каждая из которых равна взвешенному числу переходов из этой последовательности 
+	 * в одно из возможных зависимых состояний.
+	 * Зависимые состояния упорядочены в алфавитном порядке, определяемом
+	 * методом {@link Fragment#index()}.
+	 * Последний элемент массива равен сумме остальных элементов (предназначен для ускорения
+	 * вычислений).
+	 * 
+	 * @return
+	 *    хэш-таблица с статистикой переходов
+	 */
+	public Map<Fragment, double[]> getTransitionTable() {
+		return Collections.unmodifiableMap(transitions);
+	}
+	
+	public Collection<Fragment> getTransitionTails() {
+		return Collections.unmodifiableSet(transitions.keySet());
+	}
+	
+	/** Вероятностное распределение строк по длинам. */
+	protected Distribution<Integer> lengthDistr;
+	
+	/**
+	 * Создает марковскую цепь с заданными параметрами.
+	 * 
+	 * @param depLength
+	 *    длина зависимой цепочки состояний 
+	 * @param order
+	 *    порядок цепочки
+	 * @param states
+	 *    описание состояний, с которыми работает цепь
+	 */
+	public MarkovChain(int depLength, int order, StatesDescription states) {
+		this.depLength = depLength;
+		this.order = order;
+		this.states = states;
+		initialize();
+	}
+	
+	/**
+	 * Копирует параметры вероятностной модели из другой марковской цепи.
+	 * 
+	 * @param other
+	 */
+	protected MarkovChain(MarkovChain other) {
+		this(other.depLength, other.order, other.states);
+	}
+	
+	/**
+	 * Возвращает описание состояний, используемых в этой вероятностной модели.
+	 * 
+	 * @return 
+	 *    состояния
+	 */
+	public StatesDescription states() { 
+		return this.states; 
+	}
+
+	/**
+	 * Возвращает порядок марковской цепи, т.е. количество предшествующих полных состояний,
+	 * от которых зависит вероятность вхождения определенного полного состояния 
+	 * в цепочку состояний.
+	 * 
+	 * @return
+	 *    порядок марковской цепи 
+	 */
+	public int order() { 
+		return order; 
+	}
+
+	/**
+	 * Возвращает длину зависимой цепочки состояний.
+	 * 
+	 * @return
+	 *    длина зависимой цепочки состояний
+	 */
+	public int depLength() {
+		return depLength;
+	}
+	
+	/**
+	 * Возвращает фабрику для работы с фрагментами цепочек состояний.
+	 *   
+	 * @return
+	 *    фабрика фрагментов
+	 */
+	public FragmentFactory factory() {
+		return factory;
+	}
+	
+	/**
+	 * Возвращает отметку версии цепи. Отметка изменяется при каждом изменении статистики
+	 * цепи (обучении, сбросе, объединении с другой цепью), так что по ней можно определить,
+	 * устарели ли величины, вычисленные для цепи ранее (например, правдоподобия строк выборки).
+	 * Отметки различных изменений не повторяются в пределах одного запуска программы.
+	 * 
+	 * <p>Обучение на отдельных строках лишь сбрасывает отметку, а новая отметка выдается
+	 * при первом обращении к этому методу, чтобы при сборе статистики потоки 
+	 * не обращались к общему счетчику отметок для каждой строки выборки.
+	 * 
+	 * @return
+	 *    отметка версии
+	 */
+	public synchronized long stamp() {
+		if (stamp == 0) {
+			touch();
+		}
+		return stamp;
+	}
+	
+	/**
+	 * Обновляет отметку версии цепи после изменения ее статистики.
+	 */
+	private void touch() {
+		stamp = STAMPS.incrementAndGet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public MarkovChain clone() {
+		MarkovChain other = (MarkovChain) super.clone();
+		other.initial = (Map<Fragment, Double>) 
+				((HashMap<Fragment, Double>) this.initial).clone();
+		other.transitions = (Map<Fragment, double[]>) 
+				((HashMap<Fragment, double[]>) this.transitions).clone();
+		return other;
+	}
+	
+	@Override
+	public MarkovChain clearClone() {
+		MarkovChain other = (MarkovChain) super.clone();
+		other.initialize();
+		return other;
+	}
+	
+	/**
+	 * Выполняет инициализацию большинства полей класса.
+	 */
+	protected void initialize() {
+		headsCount = 1;
+		for (int i = 0; i < depLength; i++) {
+			headsCount *= this.states.nComplete();
+		}
+		
+		factory = new FragmentFactory(this.states, order + depLength);
+		initial = new HashMap<Fragment, Double>();
+		nSequences = 0;
+		transitions = new HashMap<Fragment, double[]>();
+		
+		lengthDistr = new EmpiricalDistribution(20000, 100, 1e-7);
+		touch();
+	}
+	
+	/**
+	 * Возвращает условную вероятность того, что определенная последовательность полных состояний
+	 * является началом цепочки. Если среди в процессе обучения не было
+	 * строк, начинающихся с заданной последовательности, возвращается <code>0</code>.
+	 * 
+	 * @param state
+	 *    фрагмент, для которого требуется вычислить начальную вероятность
+	 * @return
+	 *    начальная вероятность для фрагмента
+	 */
+	public double getInitialP(Fragment state) {
+		Double count = initial.get(state);
+		return (count == null) ? 0 : 1.0 * count / nSequences;
+	}
+	
+	/**
+	 * Возвращает логарифм начальной вероятности для заданной последовательности полных состояний
+	 * (см. {@link #getInitialP(Fragment)}). Алгоритмы распознавания, работающие с логарифмами
+	 * вероятностей, используют этот метод; подклассы могут переопределить его, чтобы избежать
+	 * лишних вычислений экспоненты и логарифма.
+	 * 
+	 * @param state
+	 *    фрагмент, для которого требуется вычислить начальную вероятность
+	 * @return
+	 *    логарифм начальной вероятности для фрагмента
+	 */
+	public double getLogInitialP(Fragment state) {
+		return Math.log(getInitialP(state));
+	}
+	
+	/**
+	 * Обновляет статистику по начальным состояниям.
+	 * 
+	 * @param state
+	 *    начальный фрагмент цепочки полных состояний
+	 * @param weight
+	 *    неотрицательный вес фрагмента
+	 */
+	protected final void incInitialStats(Fragment state, double weight) {
+		Double count = initial.get(state);
+		if (count == null) {
+			initial.put(state.clone(), weight);
+		} else {
+			// Ключ уже присутствует в таблице и не заменяется, поэтому копия не нужна
+			initial.put(state, count + weight);
+		}
+	}
+	
+	/**
+	 * Возвращает условную вероятность перехода между заданными цепочками полных состояний.
+	 * Если в процессе обучения ни в одном из прецедентов не наблюдалось желаемого перехода,
+	 * возвращается <code>0</code>.
+	 * 
+	 * @param tail 
+	 *    последовательность, из которой происходит переход
+	 * @param head
+	 *    последовательность, в которую происходит переход
+	 * @return вероятность перехода
+	 */
+	public double getTransP(Fragment tail, Fragment head) {
+		double[] trans = transitions.get(tail);
+		int idx = head.index();
+		
+		return ((trans == null) || (trans[headsCount] == 0)) 
+				? 0 : (1.0 * trans[idx] / trans[headsCount]);
+	}
+	
+	/**
+	 * Возвращает логарифм условной вероятности перехода между заданными цепочками полных состояний
+	 * (см. {@link #getTransP(Fragment, Fragment)}).
+	 * 
+	 * @param tail 
+	 *    последовательность, из которой происходит переход
+	 * @param head
+	 *    последовательность, в которую происходит переход
+	 * @return
+	 *    логарифм вероятности перехода
+	 */
+	public double getLogTransP(Fragment tail, Fragment head) {
+		return Math.log(getTransP(tail, head));
+	}
+	
+	/**
+	 * Обновляет статиситику по переходам между парой цепочек полных состояний.
+	 * 
+	 * @param tail 
+	 *    последовательность, из которой происходит переход
+	 * @param head
+	 *    последовательность, в которую происходит переход
+	 * @param weight
+	 *    неотрицательный вес прецедента
+	 */
+	protected final void incTransStats(Fragment tail, Fragment head, double weight) {
+		int totalIndex = head.index();
+		double[] trans = transitions.get(tail);
+		if (trans == null) {
+			trans = new double[headsCount + 1];
+			transitions.put(tail.clone(), trans);
+		}
+		trans[totalIndex] += weight;
+		trans[headsCount] += weight;
+	}
+	
+	@Override
+	public void reset() {
+		nSequences = 0;
+		initial.clear();
+		transitions.clear();
+		lengthDistr.reset();
+		touch();
+	}
+	
+	/**
+	 * Обнуляет статистику цепи, сохраняя выделенную под нее память. В отличие от метода
+	 * {@link #reset()}, таблицы начальных состояний и переходов сохраняют свои ключи,
+	 * а накопленные величины заменяются нулями, так что повторное обучение цепи на той же 
+	 * или похожей выборке почти не требует выделения новых объектов. Фрагменты с нулевой 
+	 * статистикой не влияют на вероятности, вычисляемые цепью.
+	 */
+	public void clearStats() {
+		nSequences = 0;
+		for (Map.Entry<Fragment, Double> entry : initial.entrySet()) {
+			entry.setValue(0.0);
+		}
+		for (double[] trans : transitions.values()) {
+			Arrays.fill(trans, 0.0);
+		}
+		lengthDistr.reset();
+		touch();
+	}
+	
+	/**
+	 * Производит сбор статистики на паре строк, состоящей из наблюдаемых и соответствующих им скрытых состояний.
+	 * При необходимости этот метод может переопределяться в подклассах.
+	 * 
+	 * @param observed
+	 *    цепочка наблюдаемых состояний
+	 * @param hidden
+	 *    цепочка скрытых состояний, отвечающих наблюдаемым
+	 * @param weight
+	 *    неотрицательный вес прецедента
+	 */
+	protected void doDigest(byte[] observed, byte[] hidden, double weight) {
+		digest(observed, hidden, observed.length, weight);
+	}
+	
+	/**
+	 * Производит сбор статистики на начальных участках массивов наблюдаемых и скрытых
+	 * состояний. Массивы могут быть длиннее строки, что позволяет использовать
+	 * для нескольких строк один и тот же буфер.
+	 * 
+	 * @param observed
+	 *    массив, в начале которого записана цепочка наблюдаемых состояний
+	 * @param hidden
+	 *    массив, в начале которого записана цепочка скрытых состояний
+	 * @param length
+	 *    длина цепочек
+	 * @param weight
+	 *    неотрицательный вес прецедента
+	 */
+	private void digest(byte[] observed, byte[] hidden, int length, double weight) {
+		lengthDistr.train(length, weight);
+		
+		Fragment tail = factory.fragment(), head = factory.fragment(); 
+		factory.fragment(observed, hidden, 0, order, tail);
+		incInitialStats(tail, weight);
+		
+		for (int i = order; i + depLength <= length; i += depLength) {
+			factory.fragment(observed, hidden, i - order, order, tail);
+			factory.fragment(observed, hidden, i, depLength, head);
+			incTransStats(tail, head, weight);
+		}
+	}
+	
+	/**
+	 * Проверяет, совпадают ли параметры этой и другой марковской цепи.
+	 * 
+	 * @param other
+	 *    марковская цепь
+	 * @throws IllegalArgumentException
+	 *    если порядок, длина зависимой цепочки или описание состояний цепей различаются
+	 */
+	private void checkCompatible(MarkovChain other) {
+		if ((other.order != this.order) || (other.depLength != this.depLength)
+				|| !other.states.equals(this.states)) {
+			throw new IllegalArgumentException("Chain parameters don't agree");
+		}
+	}
+	
+	/**
+	 * Добавляет к статистике этой цепи статистику, собранную другой цепью с теми же
+	 * параметрами. Метод позволяет собирать статистику на нескольких частях выборки
+	 * независимо (например, в разных потоках), а затем объединять результаты.
+	 * 
+	 * @param other
+	 *    марковская цепь с таким же порядком, длиной зависимой цепочки и описанием состояний
+	 * @throws IllegalArgumentException
+	 *    если параметры цепей не совпадают
+	 * @throws UnsupportedOperationException
+	 *    если распределения строк по длинам нельзя объединить (см. {@link #isMergeable()})
+	 */
+	public void merge(MarkovChain other) {
+		merge(other, 1.0);
+	}
+	
+	/**
+	 * Добавляет к статистике этой цепи статистику другой цепи, умноженную на заданный коэффициент.
+	 * Количество строк, использованных для обучения цепи, увеличивается на соответствующую
+	 * величину для другой цепи.
+	 * 
+	 * @param other
+	 *    марковская цепь с таким же порядком, длиной зависимой цепочки и описанием состояний
+	 * @param weight
+	 *    неотрицательный множитель для статистики другой цепи
+	 */
+	private void merge(MarkovChain other, double weight) {
+		checkCompatible(other);
+		
+		for (Map.Entry<Fragment, Double> entry : other.initial.entrySet()) {
+			incInitialStats(entry.getKey(), weight * entry.getValue());
+		}
+		
+		for (Map.Entry<Fragment, double[]> entry : other.transitions.entrySet()) {
+			double[] trans = this.transitions.get(entry.getKey());
+			if (trans == null) {
+				trans = new double[headsCount + 1];
+				Fragment tail = entry.getKey().clone();
+				tail.factory = this.factory;
+				this.transitions.put(tail, trans);
+			}
+			
+			double[] otherTrans = entry.getValue();
+			for (int i = 0; i <= headsCount; i++) {
+				trans[i] += weight * otherTrans[i];
+			}
+		}
+		
+		mergeLengths(other.lengthDistr, weight);
+		this.nSequences += other.nSequences;
+		touch();
+	}
+	
+	/**
+	 * Проверяет, может ли статистика этой цепи объединяться со статистикой других цепей
+	 * (см. {@link #merge(MarkovChain)}). Объединение возможно, если распределение строк
+	 * по длинам является эмпирическим или геометрическим.
+	 * 
+	 * @return
+	 *    {@code true}, если статистику цепи можно объединять
+	 */
+	public boolean isMergeable() {
+		return (lengthDistr instanceof EmpiricalDistribution) 
+				|| (lengthDistr instanceof GeometricDistribution);
+	}
+	
+	/**
+	 * Добавляет к распределению строк по длинам для этой цепи статистику другого 
+	 * распределения того же типа.
+	 * 
+	 * @param other
+	 *    распределение строк по длинам для другой цепи
+	 * @param weight
+	 *    неотрицательный множитель для статистики другого распределения
+	 * @throws UnsupportedOperationException
+	 *    если распределения нельзя объединить
+	 */
+	private void mergeLengths(Distribution<Integer> other, double weight) {
+		if ((lengthDistr instanceof EmpiricalDistribution) 
+				&& (other instanceof EmpiricalDistribution)) {
+			((EmpiricalDistribution) lengthDistr).merge((EmpiricalDistribution) other, weight);
+		} else if ((lengthDistr instanceof GeometricDistribution) 
+				&& (other instanceof GeometricDistribution)) {
+			((GeometricDistribution) lengthDistr).merge((GeometricDistribution) other, weight);
+		} else {
+			throw new UnsupportedOperationException("Length distributions can't be merged: " 
+				+ lengthDistr.getClass().getSimpleName() + ", " + other.getClass().getSimpleName());
+		}
+	}
+	
+	/**
+	 * Умножает веса прецедентов распределения строк по длинам на заданный коэффициент.
+	 * 
+	 * @param factor
+	 *    неотрицательный множитель
+	 * @throws UnsupportedOperationException
+	 *    если распределение не поддерживает масштабирование
+	 */
+	private void scaleLengths(double factor) {
+		if (lengthDistr instanceof EmpiricalDistribution) {
+			((EmpiricalDistribution) lengthDistr).scale(factor);
+		} else if (lengthDistr instanceof GeometricDistribution) {
+			((GeometricDistribution) lengthDistr).scale(factor);
+		} else {
+			throw new UnsupportedOperationException("Length distribution can't be scaled: " 
+				+ lengthDistr.getClass().getSimpleName());
+		}
+	}
+	
+	/**
+	 * Смещает статистику этой цепи в сторону статистики другой цепи с теми же параметрами
+	 * (шаг пошагового EM-алгоритма). Статистика другой цепи предварительно нормируется 
+	 * на количество строк, использованных при обучении этой цепи, после чего
+	 * каждая накопленная величина <code>s</code> заменяется на
+	 * <blockquote>
+	 * <code>(1 - step) s + step s<sub>other</sub></code>.
+	 * </blockquote>
+	 * Если эта цепь еще не обучалась, ее статистика просто заменяется статистикой другой цепи.
+	 * 
+	 * @param other
+	 *    марковская цепь с таким же порядком, длиной зависимой цепочки и описанием состояний
+	 * @param step
+	 *    величина шага из промежутка <code>[0, 1]</code>
+	 * @throws IllegalArgumentException
+	 *    если параметры цепей не совпадают или шаг выходит за допустимые пределы
+	 */
+	public void interpolate(MarkovChain other, double step) {
+		if ((step < 0.0) || (step > 1.0)) {
+			throw new IllegalArgumentException("Invalid step: " + step);
+		}
+		checkCompatible(other);
+		if (other.nSequences == 0) {
+			return;
+		}
+		if (this.nSequences == 0) {
+			this.reset();
+			this.merge(other);
+			return;
+		}
+		
+		final double keep = 1.0 - step;
+		final double add = step * this.nSequences / other.nSequences;
+		final int nSequences = this.nSequences;
+		
+		for (Map.Entry<Fragment, Double> entry : this.initial.entrySet()) {
+			entry.setValue(keep * entry.getValue());
+		}
+		for (double[] trans : this.transitions.values()) {
+			for (int i = 0; i <= headsCount; i++) {
+				trans[i] *= keep;
+			}
+		}
+		scaleLengths(keep);
+		
+		merge(other, add);
+		this.nSequences = nSequences;
+	}
+	
+	/**
+	 * Обучает несколько марковских цепей на одной строке полных состояний с различными весами.
+	 * Если цепи имеют одинаковые параметры и не переопределяют сбор статистики, 
+	 * каждый фрагмент строки кодируется лишь один раз; в противном случае для каждой цепи
+	 * вызывается метод {@link #train(Sequence, double)}.
+	 * 
+	 * <p>Цепи с неположительным весом не обучаются. Цепи, вес которых положителен, но меньше
+	 * <code>minWeight</code>, учитывают строку только в общем числе обучающих строк 
+	 * (как и в {@link #train(Sequence, double)}, от него зависят начальные вероятности),
+	 * но не в статистике фрагментов.
+	 * 
+	 * @param chains
+	 *    обучаемые цепи
+	 * @param sample
+	 *    строка полных состояний
+	 * @param weights
+	 *    веса строки для каждой из цепей
+	 * @param minWeight
+	 *    минимальный вес, при котором строка учитывается в статистике фрагментов
+	 */
+	public static void train(MarkovChain[] chains, Sequence sample, double[] weights, double minWeight) {
+		if (chains.length == 0) return;
+		
+		final MarkovChain first = chains[0];
+		boolean shared = true;
+		for (MarkovChain chain : chains) {
+			shared = shared && (chain.getClass() == MarkovChain.class)
+					&& (chain.order == first.order) && (chain.depLength == first.depLength)
+					&& chain.states.equals(first.states);
+		}
+		
+		if (!shared) {
+			for (int k = 0; k < chains.length; k++) {
+				if (weights[k] >= minWeight) {
+					chains[k].train(sample, weights[k]);
+				} else if ((weights[k] > 0.0) && (sample.length() >= chains[k].order)) {
+					chains[k].nSequences++;
+					chains[k].stamp = 0;
+				}
+			}
+			return;
+		}
+		
+		final byte[] observed = sample.observed, hidden = sample.hidden;
+		final int order = first.order, depLength = first.depLength;
+		if (observed.length < order) return;
+		
+		boolean needStats = false;
+		for (int k = 0; k < chains.length; k++) {
+			if (weights[k] <= 0.0) continue;
+			chains[k].nSequences++;
+			chains[k].stamp = 0;
+			if (weights[k] >= minWeight) {
+				chains[k].lengthDistr.train(observed.length, weights[k]);
+				needStats = true;
+			}
+		}
+		if (!needStats) return;
+		
+		final FragmentFactory factory = first.factory;
+		Fragment tail = factory.fragment(), head = factory.fragment();
+		factory.fragment(observed, hidden, 0, order, tail);
+		for (int k = 0; k < chains.length; k++) {
+			if ((weights[k] > 0.0) && (weights[k] >= minWeight)) {
+				chains[k].incInitialStats(tail, weights[k]);
+			}
+		}
+		
+		for (int i = order; i + depLength <= observed.length; i += depLength) {
+			factory.fragment(observed, hidden, i - order, order, tail);
+			factory.fragment(observed, hidden, i, depLength, head);
+			
+			for (int k = 0; k < chains.length; k++) {
+				if ((weights[k] > 0.0) && (weights[k] >= minWeight)) {
+					chains[k].incTransStats(tail, head, weights[k]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Учитывает в общем числе обучающих строк заданное количество строк, не влияющих 
+	 * на статистику фрагментов (аналогично строкам с весом меньше минимального в методе
+	 * {@link #train(MarkovChain[], Sequence, double[], double)}).
+	 * 
+	 * @param count
+	 *    число строк
+	 */
+	public void countSkipped(int count) {
+		if (count <= 0) return;
+		nSequences += count;
+		stamp = 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void writeObject(ObjectOutputStream stream) throws IOException {
+		
+		Map<Fragment, double[]> transitions = this.transitions;
+		
+		Map<Fragment, ?> _tempMap = new HashMap<Fragment, float[]>();
+		for (Map.Entry<Fragment, double[]> entry : transitions.entrySet()) {
+			double[] dVal = entry.getValue();
+			float[] fVal = new float[dVal.length];
+			
+			for (int i = 0; i < fVal.length; i++) {
+				fVal[i] = (float) dVal[i];
+			}
+			
+			((Map<Fragment, float[]>) _tempMap).put(entry.getKey(), fVal);
+		}
+		
+		this.transitions = (Map<Fragment, double[]>) _tempMap;
+		stream.defaultWriteObject();
+		this.transitions = transitions;
+	}
+	
+	/**
+	 * Восстанавливает поля объекта, которые не записываются в поток, 
+	 * на основе сохраненных полей.
+	 * 
+	 * @param stream
+	 *    поток для считывания объекта
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream stream) 
+			throws IOException, ClassNotFoundException {
+		
+		stream.defaultReadObject();
+		
+		for (Map.Entry<Fragment, ?> entry : this.transitions.entrySet()) {
+			if (entry.getValue() instanceof float[]) {
+				float[] fVal = (float[]) entry.getValue(); 
+				double[] dVal = new double[fVal.length];
+				for (int i = 0; i < fVal.length; i++) {
+					dVal[i] = fVal[i];
+				}
+				
+				((Map.Entry<Fragment, double[]>) entry).setValue(dVal);
+			}
+		}
+		
+		// Initialize transient fields
+		headsCount = 1;
+		for (int i = 0; i < depLength; i++) {
+			headsCount *= this.states.nComplete();
+		}
+		
+		this.factory = new FragmentFactory(this.states, order + depLength);
+		for (Fragment tail : initial.keySet()) {
+			if (tail.factory == null) tail.factory = this.factory;
+		}
+		for (Fragment tail : transitions.keySet()) {
+			if (tail.factory == null) tail.factory = this.factory;
+		}
+		touch();
+	}
+	
+	@Override
+	public String repr() {
+		return Messages.format("alg.chain", this.depLength(), this.order());
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("h=%d, order=%d", depLength, nSequences);
+	}
+
+	@Override
+	public void train(Sequence sample, double weight) {
+		if (weight <= 0.0) return;
+		if (sample.length() < order) return;
+		
+		doDigest(sample.observed, sample.hidden, weight);
+		nSequences++;
+		stamp = 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Если коллекция является выборкой, строки копируются в общие буферы
+	 * с помощью методов {@link SequenceSet#observed(int, int, int, byte[])} и
+	 * {@link SequenceSet#hidden(int, int, int, byte[])}; для упакованных выборок это
+	 * исключает создание распакованных массивов для каждой строки. Для подклассов, которые
+	 * могут переопределять обучение на отдельных прецедентах, используется реализация по умолчанию.
+	 */
+	@Override
+	public void train(Collection<? extends Sequence> samples) {
+		if ((getClass() != MarkovChain.class) || !(samples instanceof SequenceSet)) {
+			super.train(samples);
+			return;
+		}
+		
+		final SequenceSet set = (SequenceSet) samples;
+		byte[] observed = new byte[0], hidden = new byte[0];
+		for (int i = 0; i < set.size(); i++) {
+			final int length = set.length(i);
+			if (length < order) continue;
+			if (observed.length < length) {
+				observed = new byte[length];
+				hidden = new byte[length];
+			}
+			set.observed(i, 0, length, observed);
+			set.hidden(i, 0, length, hidden);
+			
+			digest(observed, hidden, length, 1.0);
+			nSequences++;
+		}
+		stamp = 0;
+	}
+
+	@Override
+	public double estimate(Sequence point) {
+		final byte[] observed = point.observed, hidden = point.hidden;
+		double logP = 0.0;
+		
+		logP = Math.max(lengthDistr.estimate(observed.length), -15);
+		if (observed.length < order) {
+			return logP;
+		}
+		
+		Fragment tail = factory.fragment(), head = factory.fragment();
+		
+		factory.fragment(observed, hidden, 0, order, tail);
+		logP = Math.log(Math.max(1e-4, getInitialP(tail)));
+		
+		for (int i = order; i + depLength <= observed.length; i += depLength) {
+			factory.fragment(observed, hidden, i - order, order, tail);
+			factory.fragment(observed, hidden, i, depLength, head);
+			
+			logP += Math.log(Math.max(1e-4, getTransP(tail, head)));
+		}
+		
+		return logP;
+	}
+	
+	@Override
+	public Sequence generate() {
+		int length = -1;
+		while (length < this.order) {
+			length = this.lengthDistr.generate();
+		}
+		
+		byte[] observed = new byte[length], hidden = new byte[length];
+		Sequence sequence = new Sequence(observed, hidden);
+		
+		Fragment[] tails = this.getInitialStates().toArray(new Fragment[0]);
+		double[] p = new double[tails.length];
+		
+		int i = 0;
+		for (Fragment tail : tails) {
+			p[i] = this.getInitialP(tail);
+			i++;
+		}
+		
+		Fragment tail = DistributionUtils.choose(tails, p).clone();
+		tail.embed(sequence, 0);
+		
+		Fragment[] heads = this.factory().allFragments(depLength()).toArray(new Fragment[0]);
+		p = new double[heads.length];
+		
+		for (int pos = this.order(); pos < length; pos += depLength()) {
+			i = 0;
+			for (Fragment head : heads) {
+				p[i] = this.getTransP(tail, head);
+				i++;
+			}
+			
+			Fragment chosenHead = DistributionUtils.choose(heads, p);
+			chosenHead.embed(sequence, pos);
+			
+			tail.append(chosenHead, tail);
+			tail.suffix(this.order(), tail);
+		}
+		
+		return sequence;
+	}
+}
@@ -0,0 +1,229 @@
+package ua.kiev.icyb.bio.alg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.JobListener;
+import ua.kiev.icyb.bio.SeqAlgorithm;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Многопоточная имплементация интерфейса {@link SeqAlgorithm}.
+ * Может строиться на основе любой однопоточной реализации алгоритма распознавания
+ * скрытых состояний.
+ * 
+ * <p>Если базовый алгоритм является {@linkplain CompositeAlgorithm композицией}, строки выборки
+ * распознаются группами, относящимися к одному составляющему алгоритму, а составляющие
+ * алгоритмы обучаются параллельно.
+ */
+public class ThreadedAlgorithm extends AbstractSeqAlgorithm {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Базовый алгоритм распознавания.
+	 */
+	private SeqAlgorithm baseAlgorithm;
+	
+	private final Env env;
+	
+	/**
+	 * Создает алгоритм на основе заданного алгоритма распознавания с использованием
+	 * нескольких рабочих потоков.
+	 * 
+	 * @param base
+	 *    базовый алгоритм распознавания
+	 * @param env
+	 *    среда выполнения, которая предоставляет потоки
+	 */
+	public ThreadedAlgorithm(SeqAlgorithm base, Env env) {
+		this.baseAlgorithm = base;
+		this.env = env;
+	}
+	
+	@Override
+	public void train(Sequence sequence) {
+		baseAlgorithm.train(sequence);
+	}
+	
+	@Override
+	public void train(Collection<? extends Sequence> set) {
+		if ((baseAlgorithm instanceof CompositeAlgorithm) && (set instanceof SequenceSet)) {
+			trainComposite((CompositeAlgorithm) baseAlgorithm, (SequenceSet) set);
+		} else {
+			baseAlgorithm.train(set);
+		}
+	}
+	
+	/**
+	 * Обучает составляющие алгоритмы композиции параллельно; каждый алгоритм обучается
+	 * на строках, относящихся к нему.
+	 * 
+	 * @param composite
+	 *    композиция алгоритмов
+	 * @param set
+	 *    обучающая выборка
+	 */
+	private void trainComposite(CompositeAlgorithm composite, SequenceSet set) {
+		// Совпадающие составляющие алгоритмы обучаются в пределах одного задания
+		Map<SeqAlgorithm, boolean[]> groups = new IdentityHashMap<SeqAlgorithm, boolean[]>();
+		final int[] indices = composite.indices(set);
+		for (int i = 0; i < indices.length; i++) {
+			final SeqAlgorithm component = composite.component(indices[i]);
+			if (!groups.containsKey(component)) {
+				groups.put(component, new boolean[indices.length]);
+			}
+			groups.get(component)[i] = true;
+		}
+		
+		List<TrainTask> tasks = new ArrayList<TrainTask>();
+		for (Map.Entry<SeqAlgorithm, boolean[]> group : groups.entrySet()) {
+			tasks.add(new TrainTask(group.getKey(), set.filter(group.getValue())));
+		}
+		
+		try {
+			List<Future<Void>> results = env.executor().invokeAll(tasks);
+			for (int t = 0; t < results.size(); t++) {
+				results.get(t).get();
+			}
+		} catch (InterruptedException e) {
+			env.exception(e);
+		} catch (ExecutionException e) {
+			env.exception(e);
+		}
+	}
+	
+	@Override
+	public void reset() {
+		baseAlgorithm.reset();
+	}
+	
+	@Override
+	public byte[] run(Sequence sequence) {
+		// Вычисления на отдельных строках не распараллеливаются
+		return baseAlgorithm.run(sequence);
+	}
+	
+	private static class TrainTask implements Callable<Void> {
+		
+		private final SeqAlgorithm algorithm;
+		private final SequenceSet set;
+		
+		public TrainTask(SeqAlgorithm algorithm, SequenceSet set) {
+			this.algorithm = algorithm;
+			this.set = set;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			algorithm.train(set);
+			return null;
+		}
+	}
+	
+	private static class SequenceTask implements Callable<Void> {
+		
+		private final SeqAlgorithm algorithm;
+		private final SequenceSet set;
+		private final EstimatesSet estimates;
+		private final int index;
+		private final JobListener listener;
+		
+		public SequenceTask(SeqAlgorithm algorithm, SequenceSet set, EstimatesSet estimates, 
+				int index, JobListener listener) {
+			
+			this.algorithm = algorithm;
+			this.set = set;
+			this.estimates = estimates;
+			this.index = index;
+			this.listener = listener;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			byte[] result = algorithm.run(set.get(index));
+			Sequence est = estimates.put(index, result);
+			
+			if (listener != null) {
+				listener.seqCompleted(est);
+			}
+			return null;
+		}
+	}
+	
+	@Override
+	public synchronized SequenceSet runSet(SequenceSet set) {
+		return runSet(set, null);
+	}
+	
+	@Override
+	public synchronized SequenceSet runSet(SequenceSet set, final JobListener listener) {
+		ExecutorService executor = env.executor();
+		
+		EstimatesSet estimates = new EstimatesSet(set);
+		
+		List<SequenceTask> tasks = new ArrayList<SequenceTask>();
+		if (baseAlgorithm instanceof CompositeAlgorithm) {
+			// Строки, относящиеся к одному составляющему алгоритму, распознаются подряд
+			final CompositeAlgorithm composite = (CompositeAlgorithm) baseAlgorithm;
+			final int[] indices = composite.indices(set);
+			List<List<Integer>> groups = new ArrayList<List<Integer>>();
+			for (int k = 0; k < composite.size(); k++) {
+				groups.add(new ArrayList<Integer>());
+			}
+			for (int i = 0; i < indices.length; i++) {
+				groups.get(indices[i]).add(i);
+			}
+			
+			for (int k = 0; k < groups.size(); k++) {
+				for (int i : groups.get(k)) {
+					tasks.add(new SequenceTask(composite.component(k), set, estimates, i, listener));
+				}
+			}
+		} else {
+			for (int i = 0; i < set.size(); i++) {
+				tasks.add(new SequenceTask(baseAlgorithm, set, estimates, i, listener));
+			}
+		}
+		
+		try {
+			List<Future<Void>> results = executor.invokeAll(tasks);
+			for (int i = 0; i < results.size(); i++) {
+				results.get(i).get();
+			}
+			
+			if (listener != null) listener.finished();	
+		} catch (InterruptedException e) {
+			env.exception(e);
+		} catch (ExecutionException e) {
+			env.exception(e);
+		}
+		
+		return estimates;
+	}
+	
+	@Override
+	public ThreadedAlgorithm clearClone() {
+		ThreadedAlgorithm other = (ThreadedAlgorithm) super.clearClone();
+		other.baseAlgorithm = (SeqAlgorithm) baseAlgorithm.clearClone();
+		return other;
+	}
+	
+	@Override
+	public String repr() {
+		String repr = super.repr() + "\n";
+		repr += Messages.format("alg.base", baseAlgorithm.repr());
+		return repr;
+	}
+}
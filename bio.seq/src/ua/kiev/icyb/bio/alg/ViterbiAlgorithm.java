@@ -0,0 +1,446 @@
+package ua.kiev.icyb.bio.alg;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.StatesDescription;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Алгоритм распознавания скрытых последовательностей на основе принципа
+ * максимума правдоподобия с использованием динамического программирования.
+ * По сути является модификацией алгоритма Витерби для предсказания оптимальной последовательности
+ * скрытых состояний для обыкновенных скрытых марковских моделей.
+ * 
+ * @see MarkovChain
+ */
+public class ViterbiAlgorithm extends AbstractSeqAlgorithm {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Максимальная обрабатываемая длина последовательности.
+	 */
+	private static final int MAX_SEQ_LENGTH = 50000;
+	
+	private static class Memory {
+		
+		@SuppressWarnings("unchecked")
+		public final Map<Integer, Integer>[] pointer = new Map[MAX_SEQ_LENGTH];
+	}
+	
+	/**
+	 * Носитель переходных вероятностей марковской цепи, скомпилированный в битовые маски.
+	 * Для каждой наблюдаемой цепочки длины {@code order + depLength} хранится массив масок:
+	 * бит {@code k} маски с индексом {@code j} установлен тогда и только тогда, когда
+	 * из скрытой цепочки {@code j} возможен переход (с ненулевой вероятностью) в скрытую
+	 * цепочку {@code k}. Маски вычисляются по мере необходимости и действительны, пока
+	 * не изменилась {@linkplain MarkovChain#stamp() версия} цепи.
+	 */
+	private static class Support {
+		
+		/** Версия цепи на момент создания носителя. */
+		public final long stamp;
+		
+		/** Битовые маски переходов; ключами служат индексы наблюдаемых цепочек. */
+		public final Map<Integer, long[]> masks = new ConcurrentHashMap<Integer, long[]>();
+		
+		public Support(MarkovChain chain) {
+			this.stamp = chain.stamp();
+		}
+	}
+	
+	/**
+	 * Максимальное количество скрытых цепочек длины {@code order}, для которого выполняется
+	 * предварительная проверка {@link #isFeasible(Sequence)} (множество достижимых цепочек
+	 * хранится в одном числе типа {@code long}).
+	 */
+	private static final int MAX_SUPPORT_TAILS = 64;
+	
+	/**
+	 * Параметры марковской цепи, использующиеся в алгоритме распознавания.
+	 */
+	protected MarkovChain chain;
+	
+	/**
+	 * Скомпилированные носители переходных вероятностей для проверки {@link #isFeasible(Sequence)};
+	 * ключами служат марковские цепи, для которых выполнялась проверка.
+	 */
+	private transient Map<MarkovChain, Support> supports;
+	
+	
+	protected int depLength;
+	
+	/**
+	 * Порядок модели, используемой алгоритмом. 
+	 */
+	protected int order;
+	
+	/**
+	 * Создает новый алгоритм распознавания с заданными параметрами вероятностной модели.
+	 * 
+	 * @param depLength
+	 *    длина зависимой цепочки состояний, используемая в алгоритме
+	 * @param order
+	 *    порядок марковской цепи, используемый в алгоритме
+	 */
+	public ViterbiAlgorithm(int depLength, int order) {
+		this.depLength = depLength;
+		this.order = order;
+	}
+	
+	/**
+	 * Создает новый алгоритм.
+	 */
+	protected ViterbiAlgorithm() {
+	}
+	
+	/**
+	 * Создает марковскую модель на основе предоставленной обучающей выборки.
+	 * Созданная модель используется в алгоритме Витерби для получения сведений 
+	 * о начальных и переходных вероятностях.
+	 * 
+	 * @param states
+	 * @return
+	 *    созданная модель
+	 */
+	protected MarkovChain createChain(StatesDescription states) {
+		return new MarkovChain(depLength, order, states);
+	}
+	
+	@Override
+	public void train(Sequence sequence) {
+		if (chain == null) {
+			chain = this.createChain(sequence.states());
+		}
+		chain.train(sequence);
+	}
+	
+	@Override
+	public void train(Collection<? extends Sequence> set) {
+		if (chain == null) {
+			chain = this.createChain(((SequenceSet) set).states());
+		}
+		chain.train(set);
+	}
+	
+	@Override
+	public void reset() {
+		if (chain != null) chain.reset();
+	}
+	
+	@Override
+	public byte[] run(Sequence sequence) {
+		return run(sequence.observed, this.chain);
+	}
+	
+	/**
+	 * Определяет наиболее вероятную последовательность скрытых состояний с использованием
+	 * заданного вероятностного распределения.
+	 * 
+	 * @param seq
+	 *    строка наблюдаемых состояний
+	 * @param chain
+	 *    марковская цепь, которая задает начальные и переходные вероятности, используемые в алгоритме
+	 *    оптимизации
+	 * @return
+	 *    цепочка скрытых состояний, наиболее вероятная для заданной вероятностной модели;
+	 *    {@code null} в случае отказа от распознавания
+	 */
+	protected byte[] run(byte[] seq, MarkovChain chain) {
+		if (chain == null) return null;
+		if ((seq.length < chain.order()) || (seq.length > MAX_SEQ_LENGTH)) return null;
+		
+		final int order = chain.order(), 
+			depLength = chain.depLength(),
+			nHiddenStates = chain.states().nHidden();
+		int nHiddenHeads = 1;
+		for (int i = 0; i < chain.depLength(); i++) {
+			nHiddenHeads *= nHiddenStates;
+		}
+		int nHiddenTails = 1;
+		for (int i = 0; i < chain.order(); i++) {
+			nHiddenTails *= nHiddenStates;
+		}
+		
+		final FragmentFactory factory = chain.factory();
+		Fragment tail = factory.fragment(), head = factory.fragment(), shifted = factory.fragment();
+		
+		Memory mem = (Memory) getMemory();
+		
+		double[] curProb = new double[nHiddenTails], nextProb = new double[nHiddenTails]; 
+		Map<Integer, Integer>[] pointer = mem.pointer;
+		// Обрезать последовательность
+		int trimmedLength = ((seq.length - order) / depLength) * depLength + order; 
+		
+		// Инициализировать промежуточные массивы
+		for (int i = 0; i < nHiddenTails; i++) {
+			factory.fragment(seq, i, 0, order, tail);
+			curProb[i] = Math.log(Math.max(chain.getInitialP(tail), 0));
+		}
+		
+		int ptrIdx = 0; // текущая позиция в массиве указателей
+		for (int pos = order; pos <= trimmedLength - depLength; pos += depLength) {
+			Arrays.fill(nextProb, Double.NEGATIVE_INFINITY);
+			if (pointer[ptrIdx] == null) {
+				pointer[ptrIdx] = new HashMap<Integer, Integer>();
+			}
+			pointer[ptrIdx].clear();
+			
+			for (int i = 0; i < nHiddenHeads; i++) {
+				factory.fragment(seq, i, pos, depLength, head);
+				
+				for (int j = 0; j < nHiddenTails; j++) {
+					if (curProb[j] == Double.NEGATIVE_INFINITY) continue;
+					
+					factory.fragment(seq, j, pos - order, order, tail);
+					double val = Math.log(Math.max(0, chain.getTransP(tail, head))) 
+							+ curProb[j];
+					if (val == Double.NEGATIVE_INFINITY) continue;
+					
+					tail.append(head, shifted);
+					shifted.suffix(tail.length, shifted);
+					int idx = shifted.hidden;
+					
+					if (nextProb[idx] < val) {
+						nextProb[idx] = val;
+						pointer[ptrIdx].put(idx, j);
+					}
+				}
+			}
+			System.arraycopy(nextProb, 0, curProb, 0, nextProb.length);
+			ptrIdx++;
+		}
+		
+		// Обратный шаг алгоритма	
+		double maxProb = Double.NEGATIVE_INFINITY;
+		int maxPtr = -1;
+		
+		for (int i = 0; i < nHiddenTails; i++)
+			if (curProb[i] > maxProb) {
+				maxProb = curProb[i];				
+				maxPtr = i;
+			}
+		if (maxPtr == -1) {
+			return null;
+		}
+		
+		byte[] result = new byte[seq.length];
+		for (int pos = trimmedLength; pos > order; pos -= depLength) {
+			// XXX проверить, работает ли для depLength > 1
+			result[pos - 1] = (byte)(maxPtr % nHiddenHeads);
+			maxPtr = pointer[ptrIdx - 1].get(maxPtr);
+			pointer[ptrIdx - 1].clear();
+			ptrIdx--;
+		}
+		insertStates(result, nHiddenStates, maxPtr, 0, order);
+		
+		return result;
+	}
+	
+	/**
+	 * Быстро проверяет, может ли алгоритм распознать заданную строку, т.е. существует ли
+	 * последовательность скрытых состояний с ненулевой вероятностью для используемой
+	 * марковской цепи. Проверка распространяет множество достижимых скрытых цепочек
+	 * вдоль строки, не вычисляя логарифмов вероятностей и не сохраняя указателей;
+	 * поэтому она значительно дешевле, чем {@link #run(Sequence)}.
+	 * 
+	 * <p>Если метод возвращает {@code false}, алгоритм гарантированно откажется
+	 * от распознавания строки. Для этого класса верно и обратное, если количество скрытых
+	 * цепочек длины {@code order} не превышает 64 (иначе проверка не выполняется и метод
+	 * возвращает {@code true}); подклассы, вводящие
+	 * дополнительные ограничения на скрытые состояния, могут отказаться от распознавания
+	 * и в случае, когда метод возвращает {@code true}.
+	 * 
+	 * @param sequence
+	 *    строка наблюдаемых состояний
+	 * @return
+	 *    {@code false}, если алгоритм заведомо откажется от распознавания строки
+	 */
+	public boolean isFeasible(Sequence sequence) {
+		return feasible(sequence.observed, this.chain);
+	}
+	
+	/**
+	 * Проверяет существование последовательности скрытых состояний с ненулевой вероятностью
+	 * для заданной строки наблюдаемых состояний (см. {@link #isFeasible(Sequence)}).
+	 * 
+	 * @param seq
+	 *    строка наблюдаемых состояний
+	 * @param chain
+	 *    марковская цепь, которая задает начальные и переходные вероятности
+	 * @return
+	 *    {@code false}, если алгоритм заведомо откажется от распознавания строки;
+	 *    {@code true}, если цепь не задана
+	 */
+	protected boolean feasible(byte[] seq, MarkovChain chain) {
+		if (chain == null) return true;
+		if ((seq.length < chain.order()) || (seq.length > MAX_SEQ_LENGTH)) return false;
+		
+		final int order = chain.order(), 
+			depLength = chain.depLength(),
+			nHiddenStates = chain.states().nHidden();
+		int nHiddenTails = 1;
+		for (int i = 0; i < order; i++) {
+			nHiddenTails *= nHiddenStates;
+		}
+		if (nHiddenTails > MAX_SUPPORT_TAILS) {
+			// Множество достижимых цепочек не помещается в маску; проверка не выполняется
+			return true;
+		}
+		
+		final FragmentFactory factory = chain.factory();
+		final Fragment tail = factory.fragment(), window = factory.fragment();
+		final Support support = support(chain);
+		
+		long reachable = 0;
+		for (int i = 0; i < nHiddenTails; i++) {
+			factory.fragment(seq, i, 0, order, tail);
+			if (chain.getInitialP(tail) > 0) {
+				reachable |= 1L << i;
+			}
+		}
+		
+		int trimmedLength = ((seq.length - order) / depLength) * depLength + order;
+		for (int pos = order; (reachable != 0) && (pos <= trimmedLength - depLength); pos += depLength) {
+			factory.fragment(seq, 0, pos - order, order + depLength, window);
+			final long[] masks = masks(chain, support, window.observed, nHiddenTails);
+			
+			long next = 0;
+			for (long rest = reachable; rest != 0; rest &= rest - 1) {
+				next |= masks[Long.numberOfTrailingZeros(rest)];
+			}
+			reachable = next;
+		}
+		
+		return (reachable != 0);
+	}
+	
+	/**
+	 * Возвращает скомпилированный носитель переходных вероятностей для заданной цепи,
+	 * создавая его при необходимости.
+	 * 
+	 * @param chain
+	 *    марковская цепь
+	 * @return
+	 *    носитель переходных вероятностей
+	 */
+	private synchronized Support support(MarkovChain chain) {
+		if (supports == null) {
+			supports = new WeakHashMap<MarkovChain, Support>();
+		}
+		Support support = supports.get(chain);
+		if ((support == null) || (support.stamp != chain.stamp())) {
+			support = new Support(chain);
+			supports.put(chain, support);
+		}
+		return support;
+	}
+	
+	/**
+	 * Возвращает битовые маски переходов для заданной наблюдаемой цепочки, вычисляя их
+	 * при первом обращении.
+	 * 
+	 * @param chain
+	 *    марковская цепь, для которой скомпилирован носитель
+	 * @param support
+	 *    носитель переходных вероятностей
+	 * @param observed
+	 *    индекс наблюдаемой цепочки длины {@code order + depLength}
+	 * @param nHiddenTails
+	 *    количество скрытых цепочек длины {@code order}
+	 * @return
+	 *    маски переходов для всех скрытых цепочек длины {@code order}
+	 */
+	private static long[] masks(MarkovChain chain, Support support, int observed, int nHiddenTails) {
+		long[] masks = support.masks.get(observed);
+		if (masks != null) return masks;
+		
+		final int order = chain.order(), depLength = chain.depLength();
+		int nHiddenHeads = 1;
+		for (int i = 0; i < depLength; i++) {
+			nHiddenHeads *= chain.states().nHidden();
+		}
+		
+		final FragmentFactory factory = chain.factory();
+		final byte[] seq = Fragment.sequence(observed, chain.states().nObserved(), order + depLength);
+		final Fragment tail = factory.fragment(), head = factory.fragment(), shifted = factory.fragment();
+		
+		masks = new long[nHiddenTails];
+		for (int i = 0; i < nHiddenHeads; i++) {
+			factory.fragment(seq, i, order, depLength, head);
+			for (int j = 0; j < nHiddenTails; j++) {
+				factory.fragment(seq, j, 0, order, tail);
+				if (chain.getTransP(tail, head) > 0) {
+					tail.append(head, shifted);
+					shifted.suffix(tail.length, shifted);
+					masks[j] |= 1L << shifted.hidden;
+				}
+			}
+		}
+		
+		support.masks.put(observed, masks);
+		return masks;
+	}
+	
+	/**
+	 * Превращает индекс последовательности скрытых состояний в саму эту последовательность
+	 * и вставляет ее в заданное место массива.
+	 * 
+	 * @param array
+	 *    массив, куда следует вставлять скрытые состояния
+	 * @param nStates
+	 *    размер множества скрытых состояний
+	 * @param idx
+	 *    индекс последовательности скрытых состояний среди всех последовательностей 
+	 *    фиксированной длины
+	 * @param start
+	 *    начальная позиция для вставки
+	 * @param length
+	 *    длина последовательности
+	 */
+	protected static void insertStates(byte[] array, int nStates, int idx, int start, int length) {
+		for (int i = 0; i < length; i++) {
+			array[start + length - 1 - i] = (byte)(idx % nStates);
+			idx /= nStates;
+		}
+	}
+	
+	@Override
+	public ViterbiAlgorithm clearClone() {
+		ViterbiAlgorithm other = (ViterbiAlgorithm) super.clone();
+		other.supports = null;
+		if (other.chain != null) {
+			other.chain = (MarkovChain) other.chain.clearClone();
+		}
+		return other;
+	}
+	
+	@Override
+	public String repr() {
+		String repr = super.repr() + "\n";
+		repr += Messages.format("alg.chain", this.depLength, this.order);
+		return repr;
+	}
+	
+	@Override
+	public String toString() {
+		if (chain != null) {
+			return String.format("<%s(%s)>", this.getClass().getSimpleName(), chain);
+		} else {
+			return String.format("<%s(%d, %d)>", this.getClass().getSimpleName(), this.depLength, this.order);
+		}
+	}
+	
+	@Override
+	protected Object allocateMemory() {
+		return new Memory();
+	}
+}
@@ -0,0 +1,112 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import ua.kiev.icyb.bio.res.Messages;
+
+/**
+ * EM-алгоритм для построения взвешенной смеси марковских цепей с 
+ * последовательным удалением компонент.
+ */
+public class DecrementalEMAlgorithm extends EMAlgorithm {
+
+	private static final long serialVersionUID = 1L;
+	
+	/** Окончательное количество вероятностных моделей в композиции. */
+	public int minModels = 3;
+	
+	/**
+	 * Максимальное число итераций EM-алгоритма после удаления компоненты из смеси.
+	 */
+	public int refineIterations = 5;
+	
+	/** Была ли удалена хотя бы одна компонента смеси. */
+	private boolean warmStart = false;
+	
+	/**
+	 * Создает алгоритм с {@linkplain #cacheLikelihoods кэшированием} правдоподобий: 
+	 * после удаления компоненты правдоподобия остальных моделей не вычисляются повторно.
+	 */
+	public DecrementalEMAlgorithm() {
+		cacheLikelihoods = true;
+	}
+
+	/**
+	 * Выполняет EM-алгоритм с последовательным удалением компонент.
+	 * 
+	 * После оптимизации весов и параметров моделей взвешенной композиции 
+	 * с фиксированным количеством компонент удаляется модель с наименьшим весом.
+	 * Так продолжается до тех пор, пока количество моделей не станет меньше заданного полем 
+	 * {@link #minModels}.
+	 * 
+	 * <p>Апостериорные вероятности оставшихся компонент после удаления получаются 
+	 * из вероятностей последнего шага ожидания исключением удаленной компоненты
+	 * и нормализацией (см. {@link MixtureWeights#without(int, MarkovMixture)}), без повторного
+	 * вычисления правдоподобий; после этого выполняется не более {@link #refineIterations} 
+	 * итераций EM-алгоритма для уточнения смеси.
+	 */
+	protected void decrementalRun() {
+		while (mixture.size() >= minModels) {
+			ordinaryRun(warmStart ? refineIterations : nIterations);
+			resetIteration();
+			
+			if (mixture.size() == minModels) {
+				break;
+			}
+			
+			// Убрать компоненту с наименьшим весом
+			double[] weights = mixture.weights(); 
+			int minModel = -1;
+			double minWeight = 1.0; 
+			
+			for (int i = 0; i < weights.length; i++) {
+				if (weights[i] < minWeight) {
+					minWeight = weights[i];
+					minModel = i;
+				}
+			}
+			getEnv().debug(1, Messages.format("em.remove", minModel + 1, minWeight));
+			mixture.delete(minModel);
+			redistribute(minModel);
+			warmStart = true;
+			
+			saveMixture();
+			save();
+		}
+	}
+	
+	/**
+	 * Распределяет апостериорную вероятность удаленной компоненты между оставшимися 
+	 * компонентами и выполняет шаг максимизации для уменьшенной смеси. Вероятности 
+	 * берутся из последнего шага ожидания, т.е. соответствуют смеси до последнего шага
+	 * максимизации; если шаг ожидания выполнялся не для смеси с удаленной компонентой, 
+	 * выполняется полный шаг ожидания.
+	 * 
+	 * @param removed
+	 *    индекс удаленной компоненты
+	 */
+	private void redistribute(int removed) {
+		MixtureWeights last = lastExpectation();
+		MixtureWeights weights;
+		if ((last != null) && (last.count() == mixture.size() + 1) && (last.size() == set.size())) {
+			weights = last.without(removed, mixture);
+		} else {
+			weights = new MixtureWeights(mixture, set, truncation, logLikelihoods());
+			weights.run(getEnv());
+		}
+		getEnv().debug(1, Messages.format("em.redistribute", weights.logLikelihood));
+		maximizationStep(weights);
+	}
+	
+	@Override
+	protected void doRun() {
+		getEnv().debug(1, repr());
+		decrementalRun();
+	}
+	
+	@Override
+	protected String reprOptions() {
+		String repr = super.reprOptions() + "\n";
+		repr += Messages.format("em.min_models", minModels) + "\n";
+		repr += Messages.format("em.refine_iterations", refineIterations) + "\n";
+		return repr;
+	}
+}
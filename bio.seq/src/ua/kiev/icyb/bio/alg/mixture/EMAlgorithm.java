@@ -0,0 +1,667 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.AbstractLaunchable;
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.alg.MarkovChain;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Класс, реализующий EM-алгоритм для разделения смесей вероятностных распределений,
+ * задаваемых цепями Маркова произвольного порядка 
+ * (<a href="http://ru.wikipedia.org/wiki/EM-алгоритм">википедия</a>).
+ */
+public class EMAlgorithm extends AbstractLaunchable implements Representable {
+	
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Минимальная апостериорная вероятность, при которой прецедент учитывается
+	 * при обучении компоненты смеси на шаге максимизации. Нулевое значение означает, что
+	 * пропускаются только прецеденты с нулевой вероятностью (например, вследствие 
+	 * потери значимости); даже малые веса существенно влияют на вероятности переходов 
+	 * для редких фрагментов.
+	 */
+	private static final double MIN_SAMPLE_WEIGHT = 0.0;
+	
+	/**
+	 * Минимальное число строк выборки, обрабатываемых одним заданием на шаге максимизации.
+	 */
+	private static final int MIN_SHARD_SIZE = 256;
+
+	/**
+	 * Задание, собирающее статистику для всех компонент смеси на непрерывном
+	 * диапазоне строк выборки.
+	 */
+	private static class MaximizationTask implements Callable<Void> {
+
+		private final SequenceSet set;
+		private final MarkovChain[] chains;
+		private final MixtureWeights weights;
+		private final int from, to;
+		private final Random random;
+		
+		public MaximizationTask(SequenceSet set, MarkovMixture shard, MixtureWeights weights, 
+				int from, int to, Random random) {
+			
+			this.set = set;
+			this.chains = new MarkovChain[shard.size()];
+			for (int k = 0; k < chains.length; k++) {
+				this.chains[k] = shard.model(k);
+			}
+			this.weights = weights;
+			this.from = from;
+			this.to = to;
+			this.random = random;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			if (weights.isSparse()) {
+				sparseCall();
+				return null;
+			}
+			
+			final double[] sampleWeights = new double[chains.length];
+			
+			for (int i = from; i < to; i++) {
+				weights.get(i, sampleWeights);
+				if (random != null) {
+					sample(sampleWeights);
+				}
+				MarkovChain.train(chains, set.get(i), sampleWeights, MIN_SAMPLE_WEIGHT);
+			}
+			return null;
+		}
+		
+		/**
+		 * Собирает статистику для усеченных апостериорных вероятностей; каждая строка
+		 * выборки используется для обучения только тех компонент смеси, вероятности для
+		 * которых не были отброшены. Как и при полных вероятностях, строка учитывается
+		 * в общем числе обучающих строк всех компонент, так что отбрасывание малых
+		 * вероятностей не влияет на нормировку начальных вероятностей.
+		 */
+		private void sparseCall() {
+			final int[] skipped = new int[chains.length];
+			
+			for (int i = from; i < to; i++) {
+				final Sequence sequence = set.get(i);
+				final int[] models = weights.models(i);
+				final double[] sampleWeights = weights.values(i).clone();
+				
+				MarkovChain[] activeChains = new MarkovChain[models.length];
+				for (int pos = 0; pos < models.length; pos++) {
+					activeChains[pos] = chains[models[pos]];
+				}
+				if (random != null) {
+					sample(sampleWeights);
+				} else {
+					int pos = 0;
+					for (int k = 0; k < chains.length; k++) {
+						if ((pos < models.length) && (models[pos] == k)) {
+							pos++;
+						} else if (sequence.length() >= chains[k].order()) {
+							skipped[k]++;
+						}
+					}
+				}
+				MarkovChain.train(activeChains, sequence, sampleWeights, MIN_SAMPLE_WEIGHT);
+			}
+			
+			for (int k = 0; k < chains.length; k++) {
+				chains[k].countSkipped(skipped[k]);
+			}
+		}
+		
+		/**
+		 * Преобразует веса (т.е. апостериорные вероятности) к множеству {0, 1}
+		 * для стохастической модификации алгоритма.
+		 * 
+		 * @param sampleWeights
+		 *    веса, которые преобразуются на месте
+		 */
+		private void sample(double[] sampleWeights) {
+			for (int k = 0; k < sampleWeights.length; k++) {
+				sampleWeights[k] = (random.nextDouble() < sampleWeights[k]) ? 1 : 0;
+			}
+		}
+	}
+	
+	/**
+	 * Значения порога достоверности, испольуемые при отображении смеси с помощью
+	 * метода {@link #reprDistribution(double[][])}.
+	 */
+	private static final double[] ALIGNMENT_THRESHOLDS = { 0.99, 0.95, 0.9, 0.5 };
+
+	/**
+	 * Печатает сводку по распеределению прецедентов выборки по вероятностым моделям
+	 * из взвешенной смеси.
+	 * 
+	 * @param weights
+	 *    апостериорные вероятности, вычисленные с помощью класса {@link MixtureWeights}
+	 * @param threshold 
+	 *    порог достоверности, т.е. минимальная апостериорная вероятность, досатачная, чтобы 
+	 *    отнести прецедент к некоторой вероятностной модели
+	 * @return
+	 *    число прецедентов, принадлежащих каждой модели из смеси
+	 */
+	private static int[] getAlignments(MixtureWeights weights, double threshold) {
+		final int count = weights.count();
+		final double[] row = new double[count];
+		
+		int[] counts = new int[count];
+		for (int i = 0; i < weights.size(); i++) {
+			weights.get(i, row);
+			for (int alg = 0; alg < count; alg++)
+				if (row[alg] > threshold) {
+					counts[alg]++;
+				}
+		}
+		
+		return counts;
+	}
+
+	/**
+	 * Печатает сводку по распеределению прецедентов выборки по вероятностым моделям
+	 * из взвешенной композиции.
+	 * 
+	 * @param weights
+	 *    апостериорные вероятности, вычисленные с помощью класса {@link MixtureWeights}
+	 * @return
+	 *    сводка по распределению
+	 */
+	private static String reprDistribution(MixtureWeights weights) {
+		String repr = ""; 
+		
+		for (double thres : ALIGNMENT_THRESHOLDS) {
+			repr += Messages.format("em.alignments", thres, 
+					Arrays.toString(getAlignments(weights, thres))) + "\n";
+		}
+		
+		return repr;
+	}
+
+	/** 
+	 * Использовать ли стохастическую модификацию EM-алгоритма.
+	 * <p> 
+	 * В стохастическом EM-алгоритме на этапе ожидания вместо решения задач максимизации 
+	 * взвешенного правдоподобия решаются задачи максимизации обычного правдоподобия 
+	 * для подмножеств выборки, вероятность входжения в которые для каждого образца выборки
+	 * равна соответствующей апостериорной вероятности его генерации соответствующей 
+	 * вероятностной моделью. Это делается, чтобы "выбить" алгоритм из точек локальных максимумов.
+	 */
+	public boolean stochastic = false;
+	
+	/** Максимальное число итераций EM-алгоритма. */
+	public int nIterations = 10;
+	
+	/**
+	 * Порог относительного прироста логарифмического правдоподобия выборки. Если после
+	 * очередной итерации правдоподобие выросло менее чем на эту долю, алгоритм прекращает 
+	 * работу, не дожидаясь исчерпания {@link #nIterations} итераций. Нулевое (по умолчанию) или
+	 * отрицательное значение отключает проверку. Проверки сходимости не используются
+	 * в {@linkplain #stochastic стохастической модификации} алгоритма.
+	 */
+	public double tolerance = 0.0;
+	
+	/**
+	 * Порог изменения апостериорных вероятностей. Если ни одна из апостериорных вероятностей
+	 * не изменилась между итерациями больше, чем на эту величину, алгоритм прекращает работу.
+	 * Нулевое (по умолчанию) или отрицательное значение отключает проверку.
+	 */
+	public double weightTolerance = 0.0;
+	
+	/**
+	 * Порог усечения апостериорных вероятностей. Если значение положительно, на шаге ожидания
+	 * сохраняются только вероятности, не меньшие порога (см. {@link MixtureWeights}), и 
+	 * на шаге максимизации каждая строка выборки используется для обучения лишь соответствующих
+	 * компонент смеси. Это уменьшает затраты памяти и времени для смесей с большим числом
+	 * компонент ценой небольшой погрешности, которая выводится в журнал.
+	 */
+	public double truncation = 0.0;
+	
+	/**
+	 * Следует ли кэшировать логарифмические правдоподобия строк выборки для компонент смеси
+	 * (см. {@link LikelihoodCache}). Кэш позволяет не вычислять правдоподобия повторно 
+	 * для компонент, не изменившихся с предыдущего шага ожидания (например, после добавления
+	 * или удаления компоненты), ценой хранения матрицы правдоподобий в памяти.
+	 * 
+	 * <p>В обычном EM-алгоритме все компоненты смеси изменяются на каждой итерации,
+	 * поэтому по умолчанию кэширование выключено; оно включается в алгоритмах
+	 * {@link IncrementalEMAlgorithm} и {@link DecrementalEMAlgorithm}.
+	 */
+	public boolean cacheLikelihoods = false;
+	
+	/** 
+	 * Шаблон названия файлов для сохранения композиций, полученных после каждой итерации алгоритма.
+	 * Заменяемые символы:
+	 * <table>
+	 * <tr><th>{n}</th>
+	 * <td>количество марковских моделей в композиции;</td></tr>
+	 * <tr><th>{i}</th>
+	 * <td>номер итерации с отсчетом от нуля.</td>
+	 * </table> 
+	 */
+	public String saveTemplate = null;
+
+	/**
+	 * Выборка, с помощью которой производится построение смеси распределений.
+	 */
+	public SequenceSet set;
+	
+	/**
+	 * Текущая смесь распределений.
+	 */
+	public MarkovMixture mixture;
+	
+	private Random random = null;
+
+	/**
+	 * Текущий номер итерации алгоритма (с отсчетом от нуля).
+	 */
+	protected int iteration;
+	
+	/**
+	 * Логарифмическое правдоподобие выборки, вычисленное на последней итерации, 
+	 * или <code>null</code>, если итераций еще не было.
+	 */
+	private Double logLikelihood = null;
+	
+	/**
+	 * Апостериорные вероятности, вычисленные на предыдущей итерации; используются 
+	 * для проверки сходимости.
+	 */
+	private transient MixtureWeights prevWeights = null;
+	
+	/** Апостериорные вероятности, вычисленные на последнем шаге ожидания. */
+	private transient MixtureWeights lastWeights = null;
+	
+	/** Кэш логарифмических правдоподобий строк выборки для компонент смеси. */
+	private transient LikelihoodCache cache = null;
+	
+	/** Смесь, полученная на последнем шаге максимизации. */
+	private transient MarkovMixture produced = null;
+	
+	/** 
+	 * Смесь, статистика которой может быть обнулена и использована повторно на следующем шаге
+	 * максимизации (см. {@link #recycle(MarkovMixture)}).
+	 */
+	private transient MarkovMixture spare = null;
+	
+	/** Смеси для сбора статистики на частях выборки, кроме первой. */
+	private transient MarkovMixture[] shardBuffers = null;
+	
+	/**
+	 * Создает новую копию алгоритма.
+	 */
+	public EMAlgorithm() {
+	}
+	
+	/**
+	 * Оптимизирует правдоподобие для взвешенной композиции марковских цепей,
+	 * используя EM-алгоритм.
+	 */
+	public void ordinaryRun() {
+		ordinaryRun(nIterations);
+	}
+	
+	/**
+	 * Оптимизирует правдоподобие для взвешенной композиции марковских цепей,
+	 * используя EM-алгоритм с заданным максимальным числом итераций.
+	 * 
+	 * @param maxIterations
+	 *    максимальное число итераций (с учетом уже выполненных)
+	 */
+	protected void ordinaryRun(int maxIterations) {
+		if (random == null)
+			random = new Random();
+		
+		prevWeights = null;
+		for (int t = this.iteration; t < maxIterations; this.iteration = ++t) {
+			if (iterate()) break;
+			
+			saveMixture();
+			save();
+		}
+	}
+	
+	/**
+	 * Выполняет одну итерацию EM-алгоритма, т.е. шаг ожидания и (если алгоритм не сошелся)
+	 * шаг максимизации. Счетчик итераций при этом не изменяется.
+	 * 
+	 * @return
+	 *    {@code true}, если после шага ожидания было обнаружено, что алгоритм сошелся;
+	 *    в этом случае шаг максимизации не выполняется
+	 */
+	protected boolean iterate() {
+		final int t = this.iteration;
+		
+		// Шаг ожидания
+		getEnv().debug(1, "\n" + Messages.format("em.e_step", t + 1));
+		
+		MixtureWeights weights = expectation();
+		lastWeights = weights;
+		getEnv().debug(1, reprDistribution(weights));
+		reprTruncation(weights);
+		
+		if (hasConverged(weights.logLikelihood, prevWeights, weights) && !stochastic) {
+			getEnv().debug(1, Messages.format("em.converged", t));
+			return true;
+		}
+		prevWeights = weights;
+		
+		// Шаг максимизации			
+		getEnv().debug(1, Messages.format("em.m_step", t + 1));
+		maximizationStep(weights);
+		
+		getEnv().debug(1, mixture.repr());
+		return false;
+	}
+	
+	/**
+	 * Выполняет шаг ожидания EM-алгоритма для текущей смеси.
+	 * 
+	 * @return
+	 *    апостериорные вероятности для строк выборки
+	 */
+	protected MixtureWeights expectation() {
+		double[][] logLikelihoods = cacheLikelihoods ? logLikelihoods() : null;
+		MixtureWeights weights = new MixtureWeights(mixture, set, truncation, logLikelihoods);
+		weights.run(getEnv());
+		return weights;
+	}
+	
+	/**
+	 * Возвращает апостериорные вероятности, вычисленные на последнем шаге ожидания
+	 * EM-алгоритма. Если после этого шага был выполнен шаг максимизации, вероятности 
+	 * соответствуют смеси до максимизации; при сходимости алгоритма они соответствуют 
+	 * текущей смеси.
+	 * 
+	 * @return
+	 *    апостериорные вероятности или {@code null}, если шаг ожидания еще не выполнялся
+	 *    или выполнялся для другой выборки
+	 */
+	protected MixtureWeights lastExpectation() {
+		if ((lastWeights != null) && (lastWeights.set() != set)) {
+			return null;
+		}
+		return lastWeights;
+	}
+	
+	/**
+	 * Возвращает логарифмические правдоподобия строк выборки для компонент текущей смеси.
+	 * Если включено {@linkplain #cacheLikelihoods кэширование}, правдоподобия вычисляются
+	 * только для компонент, изменившихся с момента предыдущего вызова.
+	 * 
+	 * @return
+	 *    логарифмические правдоподобия; строки массива соответствуют компонентам смеси,
+	 *    столбцы - прецедентам выборки. Массив не должен изменяться
+	 */
+	protected double[][] logLikelihoods() {
+		if (!cacheLikelihoods) {
+			return new LikelihoodCache(set).get(mixture, getEnv());
+		}
+		
+		if ((cache == null) || (cache.set() != set)) {
+			cache = new LikelihoodCache(set);
+		}
+		return cache.get(mixture, getEnv());
+	}
+	
+	/**
+	 * Проверяет условия сходимости алгоритма и запоминает логарифмическое правдоподобие
+	 * текущей смеси.
+	 * 
+	 * @param newLogLikelihood
+	 *    логарифмическое правдоподобие выборки для текущей смеси
+	 * @param prevWeights
+	 *    апостериорные вероятности на предыдущей итерации (может быть {@code null})
+	 * @param weights
+	 *    апостериорные вероятности на текущей итерации
+	 * @return
+	 *    {@code true}, если алгоритм сошелся
+	 */
+	private boolean hasConverged(double newLogLikelihood, MixtureWeights prevWeights, 
+			MixtureWeights weights) {
+		
+		Double prevLogLikelihood = this.logLikelihood;
+		this.logLikelihood = newLogLikelihood;
+		
+		if (prevLogLikelihood == null) {
+			getEnv().debug(1, Messages.format("em.log_likelihood", newLogLikelihood));
+			return false;
+		}
+		
+		double improvement = (newLogLikelihood - prevLogLikelihood) / Math.abs(prevLogLikelihood);
+		getEnv().debug(1, Messages.format("em.log_likelihood", newLogLikelihood));
+		getEnv().debug(1, Messages.format("em.improvement", improvement));
+		if ((tolerance > 0) && (improvement < tolerance)) {
+			return true;
+		}
+		
+		if ((weightTolerance > 0) && (prevWeights != null)
+				&& (prevWeights.count() == weights.count())) {
+			
+			final double[] row = new double[weights.count()], prevRow = new double[weights.count()];
+			for (int i = 0; i < weights.size(); i++) {
+				weights.get(i, row);
+				prevWeights.get(i, prevRow);
+				for (int alg = 0; alg < row.length; alg++) {
+					if (Math.abs(row[alg] - prevRow[alg]) > weightTolerance) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Выводит в журнал погрешность, вызванную усечением апостериорных вероятностей.
+	 * 
+	 * @param weights
+	 *    апостериорные вероятности, вычисленные на шаге ожидания
+	 */
+	protected void reprTruncation(MixtureWeights weights) {
+		if (weights.isSparse()) {
+			getEnv().debug(1, Messages.format("em.truncation", weights.truncatedMass, 
+					weights.truncatedMass / weights.size(), weights.maxTruncatedMass));
+		}
+	}
+	
+	/**
+	 * Выполняет шаг максимизации EM-алгоритма и заменяет им текущую смесь. Если текущая смесь 
+	 * была получена на предыдущем шаге максимизации, ее память используется повторно на
+	 * следующем шаге, так что алгоритм попеременно работает с двумя смесями.
+	 * 
+	 * @param weights
+	 *    апостериорные вероятности, вычисленные на шаге ожидания
+	 */
+	protected void maximizationStep(MixtureWeights weights) {
+		final MarkovMixture previous = mixture;
+		final boolean owned = (previous == produced);
+		
+		mixture = maximize(weights);
+		if (owned) {
+			recycle(previous);
+		}
+	}
+	
+	/**
+	 * Передает смесь, которая больше не используется, для повторного использования ее памяти
+	 * на следующем шаге максимизации. После вызова смесь не должна использоваться вызывающим
+	 * кодом.
+	 * 
+	 * @param unused
+	 *    смесь, полученная ранее с помощью метода {@link #maximize(MixtureWeights)}
+	 */
+	protected void recycle(MarkovMixture unused) {
+		spare = unused;
+	}
+	
+	/**
+	 * Возвращает смесь с такой же структурой, как у текущей, и нулевой статистикой. 
+	 * Если задана подходящая смесь для повторного использования, ее статистика обнуляется
+	 * без освобождения памяти; в противном случае создается новая смесь.
+	 * 
+	 * @param buffer
+	 *    смесь для повторного использования (может быть {@code null})
+	 * @return
+	 *    смесь с нулевой статистикой
+	 */
+	private MarkovMixture emptyMixture(MarkovMixture buffer) {
+		if ((buffer != null) && (buffer != mixture) && (buffer.size() == mixture.size())) {
+			buffer.clearStats();
+			return buffer;
+		}
+		return (MarkovMixture) mixture.clearClone();
+	}
+	
+	/**
+	 * Выполняет шаг максимизации EM-алгоритма. Выборка делится на непрерывные части,
+	 * для каждой из которых в отдельном потоке за один проход собирается статистика
+	 * для всех компонент смеси; затем статистика частей объединяется.
+	 * 
+	 * @param weights
+	 *    апостериорные вероятности, вычисленные на шаге ожидания
+	 * @return
+	 *    смесь с обученными компонентами и обновленными весами
+	 */
+	protected MarkovMixture maximize(MixtureWeights weights) {
+		final ExecutorService executor = getEnv().executor();
+		final int count = mixture.size(), size = set.size();
+		if (stochastic && (random == null))
+			random = new Random();
+		
+		int nShards = Math.min(getEnv().threadCount(), (size + MIN_SHARD_SIZE - 1) / MIN_SHARD_SIZE);
+		for (int alg = 0; alg < count; alg++) {
+			if (!mixture.model(alg).isMergeable()) nShards = 1;
+		}
+		nShards = Math.max(nShards, 1);
+		final int shardSize = (size + nShards - 1) / nShards;
+		
+		if ((shardBuffers == null) || (shardBuffers.length != nShards)) {
+			shardBuffers = new MarkovMixture[nShards];
+		}
+		
+		MarkovMixture[] shards = new MarkovMixture[nShards];
+		List<MaximizationTask> tasks = new ArrayList<MaximizationTask>();
+		for (int s = 0; s < nShards; s++) {
+			if (s == 0) {
+				shards[s] = emptyMixture(spare);
+				spare = null;
+			} else {
+				shards[s] = shardBuffers[s] = emptyMixture(shardBuffers[s]);
+			}
+			Random shardRandom = stochastic ? new Random(random.nextLong()) : null;
+			tasks.add(new MaximizationTask(set, shards[s], weights, 
+					Math.min(s * shardSize, size), Math.min((s + 1) * shardSize, size), shardRandom));
+		}
+		
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			getEnv().exception(e);
+		} catch (ExecutionException e) {
+			getEnv().exception(e);
+		}
+		
+		MarkovMixture newMixture = shards[0];
+		for (int s = 1; s < nShards; s++) {
+			for (int alg = 0; alg < count; alg++) {
+				newMixture.model(alg).merge(shards[s].model(alg));
+			}
+		}
+		
+		newMixture.setWeights(weights.sums());
+		
+		produced = newMixture;
+		return newMixture;
+	}
+	
+	/**
+	 * Сохраняет смесь распределений в файл, имя которого
+	 * получается из шаблона {@link #saveTemplate}.
+	 */
+	protected void saveMixture() {
+		if (saveTemplate != null) {
+			String filename = saveTemplate
+					.replaceAll("\\{n\\}", "" + mixture.size())
+					.replaceAll("\\{i\\}", "" + (iteration + 1));
+			getEnv().debug(2, Messages.format("em.save_comp", filename));
+			
+			try {
+				getEnv().save(mixture, filename);
+			} catch (IOException e) {
+				getEnv().error(0, Messages.format("em.save_comp_error", e));
+			}
+		}
+	}
+	
+	/**
+	 * Обнуляет счетчик числа итераций, выполненных алгоритмом.
+	 */
+	protected void resetIteration() {
+		this.iteration = 0;
+		this.logLikelihood = null;
+		this.prevWeights = null;
+	}
+	
+	/**
+	 * Возвращает логарифмическое правдоподобие выборки, вычисленное на последней итерации 
+	 * алгоритма.
+	 * 
+	 * @return
+	 *    логарифмическое правдоподобие или {@code Double.NaN}, если итераций еще не было
+	 */
+	public double logLikelihood() {
+		return (logLikelihood == null) ? Double.NaN : logLikelihood;
+	}
+
+	public String repr() {
+		String repr = "";
+		repr += reprOptions();
+		if (mixture != null) {
+			repr += "\n" + Messages.format("misc.mixture", mixture.repr());
+		}
+		
+		return repr;
+	}
+	
+	/**
+	 * Печатает сводку по параметрам алгоритма.
+	 */
+	protected String reprOptions() {
+		String repr = "";
+		repr += Messages.format("em.stochastic", stochastic) + "\n";
+		repr += Messages.format("em.iterations", nIterations) + "\n";
+		repr += Messages.format("em.tolerance", tolerance, weightTolerance) + "\n";
+		if (truncation > 0) {
+			repr += Messages.format("em.truncation_threshold", truncation) + "\n";
+		}
+		repr += Messages.format("em.template", saveTemplate) + "\n";
+		return repr;
+	}
+
+	@Override
+	protected void doRun() {
+		getEnv().debug(1, repr());
+		ordinaryRun();
+	}
+}
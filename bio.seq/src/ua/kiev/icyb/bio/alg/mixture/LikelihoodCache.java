@@ -0,0 +1,221 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.alg.MarkovChain;
+import ua.kiev.icyb.bio.res.Messages;
+
+/**
+ * Кэш логарифмических правдоподобий строк выборки для компонент смеси марковских цепей.
+ * 
+ * <p>Для каждой марковской цепи запоминаются правдоподобия всех строк выборки и отметка
+ * версии цепи (см. {@link MarkovChain#stamp()}) на момент их вычисления. При запросе
+ * правдоподобий для смеси заново вычисляются только строки, относящиеся к новым или
+ * изменившимся цепям; например, после удаления или добавления компоненты правдоподобия
+ * для остальных компонент берутся из кэша. Вычисления распараллеливаются с помощью
+ * стандартного пула потоков {@link Env#executor()}.
+ * 
+ * <p>Класс не является потокобезопасным.
+ */
+public class LikelihoodCache {
+	
+	/**
+	 * Минимальное число строк выборки, обрабатываемых одним заданием.
+	 */
+	private static final int MIN_CHUNK_SIZE = 64;
+	
+	/**
+	 * Сохраненные правдоподобия для одной марковской цепи.
+	 */
+	private static class Row {
+		public final long stamp;
+		public final double[] values;
+		
+		public Row(long stamp, double[] values) {
+			this.stamp = stamp;
+			this.values = values;
+		}
+	}
+	
+	/**
+	 * Задание, вычисляющее правдоподобия устаревших компонент смеси для непрерывного
+	 * диапазона строк выборки.
+	 */
+	private static class ScoreTask implements Callable<Void> {
+		
+		private final SequenceSet set;
+		private final MarkovMixture mixture;
+		private final boolean[] stale;
+		private final double[][] output;
+		private final int from, to;
+		
+		public ScoreTask(SequenceSet set, MarkovMixture mixture, boolean[] stale,
+				double[][] output, int from, int to) {
+			
+			this.set = set;
+			this.mixture = mixture;
+			this.stale = stale;
+			this.output = output;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			final int count = mixture.size();
+			int nStale = 0;
+			for (int alg = 0; alg < count; alg++) {
+				if (stale[alg]) nStale++;
+			}
+			
+			if (nStale == count) {
+				// Все компоненты оцениваются за один проход по строке
+				final double[] logP = new double[count];
+				for (int i = from; i < to; i++) {
+					mixture.logLikelihoods(set.observed(i), set.hidden(i), logP);
+					for (int alg = 0; alg < count; alg++) {
+						output[alg][i] = logP[alg];
+					}
+				}
+			} else {
+				for (int i = from; i < to; i++) {
+					final Sequence sequence = set.get(i);
+					for (int alg = 0; alg < count; alg++) {
+						if (stale[alg]) {
+							output[alg][i] = mixture.model(alg).estimate(sequence);
+						}
+					}
+				}
+			}
+			
+			return null;
+		}
+	}
+	
+	/** Выборка, для строк которой вычисляются правдоподобия. */
+	private final SequenceSet set;
+	
+	/** Сохраненные правдоподобия, индексированные марковскими цепями. */
+	private Map<MarkovChain, Row> rows = new IdentityHashMap<MarkovChain, Row>();
+	
+	/**
+	 * Создает пустой кэш для заданной выборки.
+	 * 
+	 * @param set
+	 *    выборка, для строк которой вычисляются правдоподобия
+	 */
+	public LikelihoodCache(SequenceSet set) {
+		this.set = set;
+	}
+	
+	/**
+	 * Возвращает выборку, для строк которой вычисляются правдоподобия.
+	 * 
+	 * @return
+	 *    выборка
+	 */
+	public SequenceSet set() {
+		return set;
+	}
+	
+	/**
+	 * Возвращает логарифмические правдоподобия строк выборки для всех компонент смеси
+	 * (без учета весов компонент), вычисляя их для компонент, отсутствующих в кэше
+	 * или изменившихся с момента вычисления. После вызова в кэше остаются только компоненты
+	 * заданной смеси.
+	 * 
+	 * <p>Возвращаемые массивы используются кэшем и не должны изменяться.
+	 * 
+	 * @param mixture
+	 *    смесь марковских цепей
+	 * @param env
+	 *    окружение, пул потоков которого используется для вычислений
+	 * @return
+	 *    логарифмические правдоподобия; строки массива соответствуют компонентам смеси,
+	 *    столбцы - прецедентам выборки
+	 */
+	public double[][] get(MarkovMixture mixture, Env env) {
+		final int count = mixture.size(), size = set.size();
+		
+		double[][] logLikelihoods = new double[count][];
+		boolean[] stale = new boolean[count];
+		int nStale = 0;
+		for (int alg = 0; alg < count; alg++) {
+			final MarkovChain chain = mixture.model(alg);
+			final Row row = rows.get(chain);
+			if ((row != null) && (row.stamp == chain.stamp())) {
+				logLikelihoods[alg] = row.values;
+			} else {
+				logLikelihoods[alg] = new double[size];
+				stale[alg] = true;
+				nStale++;
+			}
+		}
+		env.debug(2, Messages.format("em.cache", count - nStale, count));
+		
+		if (nStale > 0) {
+			compute(mixture, stale, logLikelihoods, env);
+		}
+		
+		Map<MarkovChain, Row> newRows = new IdentityHashMap<MarkovChain, Row>();
+		for (int alg = 0; alg < count; alg++) {
+			final MarkovChain chain = mixture.model(alg);
+			newRows.put(chain, new Row(chain.stamp(), logLikelihoods[alg]));
+		}
+		rows = newRows;
+		
+		return logLikelihoods;
+	}
+	
+	/**
+	 * Очищает кэш.
+	 */
+	public void clear() {
+		rows.clear();
+	}
+	
+	/**
+	 * Вычисляет правдоподобия строк выборки для устаревших компонент смеси.
+	 * 
+	 * @param mixture
+	 *    смесь марковских цепей
+	 * @param stale
+	 *    флаги, определяющие, для каких компонент следует вычислить правдоподобия
+	 * @param output
+	 *    массив, в который записываются правдоподобия
+	 * @param env
+	 *    окружение, пул потоков которого используется для вычислений
+	 */
+	private void compute(MarkovMixture mixture, boolean[] stale, double[][] output, Env env) {
+		final int size = set.size();
+		
+		// Несколько заданий на поток для балансировки нагрузки
+		int chunkSize = (size + 4 * env.threadCount() - 1) / (4 * env.threadCount());
+		chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+		
+		List<ScoreTask> tasks = new ArrayList<ScoreTask>();
+		for (int from = 0; from < size; from += chunkSize) {
+			tasks.add(new ScoreTask(set, mixture, stale, output,
+					from, Math.min(from + chunkSize, size)));
+		}
+		
+		try {
+			for (Future<Void> future : env.executor().invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			env.exception(e);
+		} catch (ExecutionException e) {
+			env.exception(e);
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.StatesDescription;
+import ua.kiev.icyb.bio.alg.Fragment;
+import ua.kiev.icyb.bio.alg.FragmentFactory;
+import ua.kiev.icyb.bio.alg.MarkovChain;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Взвешенная композиция марковских цепей.
+ * 
+ * <p>Под взвешенной композицией подразумевается вероятностное распределение с функцией
+ * правдоподобия
+ * <blockquote>
+ * <code>P(x) = ∑<sub>i</sub> w<sub>i</sub>P<sub>i</sub>(x),</code>
+ * </blockquote>
+ * где сумма неотрицательных весов <code>w<sub>i</sub></code> равна единице, а составные
+ * распределения имеют вид {@linkplain MarkovChain марковских цепей}.
+ */
+public class MarkovMixture extends Mixture<Sequence> implements Representable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/** 
+	 * Число вероятностей переходов, перемножаемых перед взятием логарифма
+	 * при вычислении правдоподобия.
+	 */
+	private static final int LOG_BLOCK_SIZE = 32;
+	
+	/**
+	 * Создает пустую композицию.
+	 */
+	public MarkovMixture() {
+		super();
+	}
+	
+	/**
+	 * Создает новую взвешенную композицию с заданным количеством марковских цепей.
+	 * 
+	 * @param size
+	 *    число марковских цепей в композиции
+	 * @param order
+	 *    порядок марковских цепей в композиции
+	 * @param states
+	 *    конфигурация состояний вероятностной модели
+	 */
+	public MarkovMixture(int size, int order, StatesDescription states) {
+		super();
+		for (int i = 0; i < size; i++) {
+			MarkovChain chain = new MarkovChain(1, order, states);
+			this.add(chain, 1.0);
+		}
+		
+		double[] weights = new double[size];
+		Arrays.fill(weights, 1.0 / size);
+		this.setWeights(weights);
+	}
+	
+	@Override
+	public MarkovChain model(int index) {
+		return (MarkovChain) super.model(index);
+	}
+	
+	/**
+	 * Обучает параметры цепей, входящих в композицию, на случайных подмножествах
+	 * выборки. Выборка случайным образом делится на приблизительно равные непересекающиеся 
+	 * части, количество которых равно числу марковских цепей в композиции.
+	 * Все цепи в композиции сбрасываются с помощью метода {@link MarkovChain#reset()}
+	 * и затем обучаются на соответствующей части выборки.
+	 * 
+	 * @param set
+	 *    набор полных состояний, используемый для обучения марковских цепей в композиции
+	 */
+	public void randomFill(SequenceSet set) { 
+		randomFill(set, new Random());
+	}
+	
+	/**
+	 * Обучает параметры цепей, входящих в композицию, на случайных подмножествах
+	 * выборки, используя заданный генератор случайных чисел. 
+	 * 
+	 * @param set
+	 *    набор полных состояний, используемый для обучения марковских цепей в композиции
+	 * @param random
+	 *    генератор случайных чисел, определяющий разбиение выборки
+	 * 
+	 * @see #randomFill(SequenceSet)
+	 */
+	public void randomFill(SequenceSet set, Random random) { 
+		for (int i = 0; i < this.size(); i++) {
+			this.model(i).reset();
+		}
+		
+		double[] counts = new double[size()];
+		for (Sequence sequence : set) {
+			int idx = random.nextInt(size());
+			this.model(idx).train(sequence);
+			counts[idx] += 1.0;
+		}
+		
+		this.setWeights(counts);
+	}
+
+	/**
+	 * Обнуляет статистику всех цепей в композиции, сохраняя выделенную под нее память
+	 * (см. {@link MarkovChain#clearStats()}). Веса цепей не изменяются.
+	 */
+	public void clearStats() {
+		for (int i = 0; i < this.size(); i++) {
+			this.model(i).clearStats();
+		}
+	}
+	
+	/**
+	 * Проверяет, могут ли все цепи в композиции использовать общие фрагменты
+	 * при вычислении правдоподобия, т.е. совпадают ли у них порядок, длина зависимой
+	 * цепочки состояний и описание состояний.
+	 * 
+	 * @return
+	 *    <code>true</code>, если цепи в композиции однородны
+	 */
+	private boolean isHomogeneous() {
+		final MarkovChain first = this.model(0);
+		for (int k = 1; k < this.size(); k++) {
+			final MarkovChain chain = this.model(k);
+			if ((chain.order() != first.order()) || (chain.depLength() != first.depLength())
+					|| !chain.states().equals(first.states())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Если все цепи в композиции имеют одинаковые порядок и длину зависимой цепочки,
+	 * каждый фрагмент строки кодируется лишь один раз, после чего используется для вычисления
+	 * правдоподобия всех компонент. Результат совпадает (с точностью до погрешности округления)
+	 * с вызовом метода {@link MarkovChain#estimate(Sequence)} для каждой из цепей.
+	 */
+	@Override
+	public double[] logLikelihoods(Sequence sample) {
+		double[] logP = new double[this.size()];
+		logLikelihoods(sample.observed, sample.hidden, logP);
+		return logP;
+	}
+	
+	/**
+	 * Вычисляет логарифмическое правдоподобие строки полных состояний для каждой из цепей
+	 * в композиции за один проход по строке.
+	 * 
+	 * @param observed
+	 *    цепочка наблюдаемых состояний
+	 * @param hidden
+	 *    цепочка скрытых состояний, отвечающих наблюдаемым
+	 * @param output
+	 *    массив длины {@link #size()}, в который записываются логарифмические правдоподобия
+	 */
+	public void logLikelihoods(byte[] observed, byte[] hidden, double[] output) {
+		final int count = this.size();
+		if (count == 0) return;
+		
+		final MarkovChain first = this.model(0);
+		final int order = first.order(), depLength = first.depLength();
+		
+		if ((observed.length < order) || !isHomogeneous()) {
+			final Sequence sequence = new Sequence(observed, hidden);
+			for (int k = 0; k < count; k++) {
+				output[k] = this.model(k).estimate(sequence);
+			}
+			return;
+		}
+		
+		final MarkovChain[] chains = new MarkovChain[count];
+		for (int k = 0; k < count; k++) {
+			chains[k] = this.model(k);
+		}
+		
+		final FragmentFactory factory = first.factory();
+		Fragment tail = factory.fragment(), head = factory.fragment();
+		
+		factory.fragment(observed, hidden, 0, order, tail);
+		for (int k = 0; k < count; k++) {
+			output[k] = Math.log(Math.max(1e-4, chains[k].getInitialP(tail)));
+		}
+		
+		// Вероятности переходов перемножаются блоками, чтобы сократить число вызовов логарифма;
+		// каждый множитель не меньше 1e-4, поэтому произведение блока не обращается в нуль
+		final double[] products = new double[count];
+		Arrays.fill(products, 1.0);
+		int blockSize = 0;
+		
+		for (int i = order; i + depLength <= observed.length; i += depLength) {
+			factory.fragment(observed, hidden, i - order, order, tail);
+			factory.fragment(observed, hidden, i, depLength, head);
+			
+			for (int k = 0; k < count; k++) {
+				products[k] *= Math.max(1e-4, chains[k].getTransP(tail, head));
+			}
+			
+			if (++blockSize == LOG_BLOCK_SIZE) {
+				for (int k = 0; k < count; k++) {
+					output[k] += Math.log(products[k]);
+					products[k] = 1.0;
+				}
+				blockSize = 0;
+			}
+		}
+		
+		if (blockSize > 0) {
+			for (int k = 0; k < count; k++) {
+				output[k] += Math.log(products[k]);
+			}
+		}
+	}
+
+	@Override
+	public String repr() {
+		String repr = Messages.format("em.n_models", size());
+		if (size() > 0) {
+			repr += "\n" + Messages.format("em.weights", Arrays.toString(this.weights())) + "\n";
+			repr += Messages.format("em.chain", this.model(0).repr());
+		}
+		return repr;
+	}
+}
\ No newline at end of file
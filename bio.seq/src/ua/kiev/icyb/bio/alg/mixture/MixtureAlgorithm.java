@@ -0,0 +1,577 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.alg.Fragment;
+import ua.kiev.icyb.bio.alg.GeneViterbiAlgorithm;
+import ua.kiev.icyb.bio.alg.MarkovChain;
+
+/**
+ * Алгоритм поиска наиболее вероятной последовательности скрытых состояний
+ * для смеси скрытых марковских моделей. Находит последовательность скрытых состояний
+ * при помощи итеративного двухфазного алгоритма оптимизации, напоминающего
+ * EM-алгоритм.
+ */
+public class MixtureAlgorithm extends GeneViterbiAlgorithm {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Максимальное количество итераций в алгоритме нахождения наиболее вероятной последовательности
+	 * скрытых состояний.
+	 */
+	private static final int MAX_ITERATIONS = 10;
+	
+	/**
+	 * Граничное расстояние между оценками апостериорных вероятностей составляющих распределений в смеси,
+	 * которое используется в алгоритме нахождения наиболее вероятной последовательности
+	 * скрытых состояний.
+	 * 
+	 * Если растояние между оценками, полученными в результате двух последовательных итераций
+	 * алгоритма оптимизации, меньше граничного расстояния, алгоритм прекращает свою работу.
+	 */
+	private static final double MIN_WEIGHT_DISTANCE = 1e-4;
+	
+	/**
+	 * Нижняя граница для логарифмов вероятностей отдельных моделей, входящих в смесь.
+	 * Используется, чтобы нулевые вероятности одной из моделей не обращали в ноль 
+	 * взвешенную вероятность.
+	 */
+	private static final double MIN_LOG_P = -1000.0;
+	
+	/**
+	 * Граница, ниже которой взвешенный логарифм вероятности считается равным минус 
+	 * бесконечности (экспонента от меньших величин не представима числом двойной точности).
+	 */
+	private static final double LOG_ZERO = Math.log(Double.MIN_VALUE);
+	
+	/**
+	 * Таблицы логарифмов начальных и переходных вероятностей для всех моделей, 
+	 * входящих в смесь. Значения для различных моделей хранятся подряд, так что 
+	 * взвешенная сумма логарифмов вычисляется за один проход по непрерывному участку массива.
+	 */
+	private static class LogTables {
+		
+		/** Количество моделей в смеси. */
+		public final int size;
+		
+		/** Количество возможных зависимых цепочек полных состояний. */
+		public final int nHeads;
+		
+		/**
+		 * Логарифмы начальных вероятностей; элемент с индексом {@code state * size + k}
+		 * соответствует модели {@code k} и фрагменту с индексом {@code state}.
+		 */
+		public final double[] initial;
+		
+		/**
+		 * Логарифмы переходных вероятностей; элемент с индексом
+		 * {@code (tail * nHeads + head) * size + k} соответствует модели {@code k}
+		 * и переходу между фрагментами с индексами {@code tail} и {@code head}.
+		 */
+		public final double[] transitions;
+		
+		public LogTables(MarkovMixture mixture) {
+			final MarkovChain first = mixture.model(0);
+			final int nComplete = first.states().nComplete();
+			int nTails = 1;
+			for (int i = 0; i < first.order(); i++) {
+				nTails *= nComplete;
+			}
+			int nHeads = 1;
+			for (int i = 0; i < first.depLength(); i++) {
+				nHeads *= nComplete;
+			}
+			
+			this.size = mixture.size();
+			this.nHeads = nHeads;
+			this.initial = new double[nTails * size];
+			this.transitions = new double[nTails * nHeads * size];
+			
+			// Вероятности вычисляются для всех пар фрагментов, а не только для присутствующих
+			// в таблицах цепей, так как модели (например, FallthruChain) могут приближать
+			// вероятности, не наблюдавшиеся при обучении
+			final List<Fragment> tails = first.factory().allFragments(first.order());
+			final List<Fragment> heads = first.factory().allFragments(first.depLength());
+			for (int k = 0; k < size; k++) {
+				final MarkovChain chain = mixture.model(k);
+				for (Fragment tail : tails) {
+					initial[tail.index() * size + k] = clamp(chain.getLogInitialP(tail));
+					
+					final int offset = tail.index() * nHeads;
+					for (Fragment head : heads) {
+						transitions[(offset + head.index()) * size + k] = 
+								clamp(chain.getLogTransP(tail, head));
+					}
+				}
+			}
+		}
+		
+		private static double clamp(double logP) {
+			return Math.max(MIN_LOG_P, logP);
+		}
+	}
+	
+	/**
+	 * Марковская модель, применяемая для нахождения промежуточных 
+	 * решений при поиске наиболее вероятной последовательности скрытых состояний.
+	 * Логарифмы начальных и переходных вероятностей в этой модели равны 
+	 * взвешенной сумме соответствущих логарифмов вероятностей для моделей, 
+	 * входящих в смесь; логарифмы вероятностей моделей берутся из заранее вычисленных таблиц.
+	 */
+	private static class MixtureMarkovChain extends MarkovChain {
+		
+		private static final long serialVersionUID = 1L;
+		
+		
+		private final LogTables tables;
+		private double[] weights;
+		
+		public MixtureMarkovChain(MarkovMixture mixture, LogTables tables) {
+			super(mixture.model(0));
+			this.tables = tables;
+		}
+		
+		public void setWeights(double[] weights) {
+			this.weights = weights;
+		}
+		
+		public double getWeight(int index) {
+			return weights[index];
+		}
+		
+		/**
+		 * Вычисляет взвешенную сумму логарифмов вероятностей моделей смеси.
+		 * 
+		 * @param table
+		 *    таблица логарифмов вероятностей
+		 * @param offset
+		 *    индекс в таблице, соответствующий первой модели смеси
+		 * @return
+		 *    взвешенный логарифм вероятности
+		 */
+		private double weightedSum(double[] table, int offset) {
+			double logP = 0;
+			for (int k = 0; k < weights.length; k++) {
+				logP += weights[k] * table[offset + k];
+			}
+			return (logP < LOG_ZERO) ? Double.NEGATIVE_INFINITY : logP;
+		}
+		
+		@Override
+		public double getLogInitialP(Fragment state) {
+			return weightedSum(tables.initial, state.index() * tables.size);
+		}
+		
+		@Override
+		public double getLogTransP(Fragment tail, Fragment head) {
+			return weightedSum(tables.transitions, 
+					(tail.index() * tables.nHeads + head.index()) * tables.size);
+		}
+		
+		@Override
+		public double getInitialP(Fragment state) {
+			return Math.exp(getLogInitialP(state));
+		}
+		
+		@Override
+		public double getTransP(Fragment tail, Fragment head) {
+			return Math.exp(getLogTransP(tail, head));
+		}
+	}
+	
+	/**
+	 * Последовательность скрытых состояний, полученная при переборе начальных приближений;
+	 * используется в качестве ключа хэш-таблицы.
+	 */
+	private static class Path {
+		
+		private final byte[] hidden;
+		private final int hash;
+		
+		public Path(byte[] hidden) {
+			this.hidden = hidden;
+			this.hash = Arrays.hashCode(hidden);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof Path) && Arrays.equals(hidden, ((Path) obj).hidden);
+		}
+	}
+	
+	/**
+	 * Состояние поиска из одного начального приближения.
+	 */
+	private class Start {
+		
+		/** Индекс начального приближения. */
+		public final int index;
+		
+		/** Текущие апостериорные вероятности моделей смеси. */
+		private final double[] aposterioriP;
+		
+		private final double[] logP;
+		
+		private final MixtureMarkovChain chain;
+		
+		/**
+		 * Последовательность скрытых состояний, полученная на последней итерации;
+		 * {@code null}, если распознавание невозможно или приближение было отброшено.
+		 */
+		public byte[] hidden = null;
+		
+		/** Логарифмическое правдоподобие последовательности {@link #hidden}. */
+		public double logLikelihood = Double.NEGATIVE_INFINITY;
+		
+		/** Следует ли продолжать итерации из этого приближения. */
+		public boolean active = true;
+		
+		private int nIterations = 0;
+		
+		public Start(int index, double[] initialWeights) {
+			this.index = index;
+			this.aposterioriP = initialWeights.clone();
+			this.logP = new double[currentMixture.size()];
+			this.chain = new MixtureMarkovChain(currentMixture, tables);
+		}
+		
+		/**
+		 * Выполняет одну итерацию алгоритма: находит наиболее вероятную последовательность
+		 * скрытых состояний для текущих апостериорных вероятностей и пересчитывает эти вероятности.
+		 * 
+		 * @param observed
+		 *    последовательность наблюдаемых состояний
+		 */
+		public void step(byte[] observed) {
+			final double[] oldAposterioriP = aposterioriP.clone();
+			chain.setWeights(oldAposterioriP);
+			
+			hidden = MixtureAlgorithm.super.run(observed, chain);
+			if (hidden == null) {
+				active = false;
+				return;
+			}
+			
+			currentMixture.logLikelihoods(observed, hidden, logP);
+			double maxLogP = Double.NEGATIVE_INFINITY;
+			for (int k = 0; k < currentMixture.size(); k++) {
+				aposterioriP[k] = logP[k] + Math.log(currentMixture.weight(k));
+				if (aposterioriP[k] > maxLogP) {
+					maxLogP = aposterioriP[k];
+				}
+			}
+			
+			double sum = 0;
+			for (int k = 0; k < currentMixture.size(); k++) {
+				aposterioriP[k] -= maxLogP;
+				aposterioriP[k] = Math.exp(aposterioriP[k]);
+				sum += aposterioriP[k];
+			}
+			for (int k = 0; k < currentMixture.size(); k++) {
+				aposterioriP[k] /= sum;
+			}
+			
+			logLikelihood = maxLogP + Math.log(sum);
+			nIterations++;
+			active = (distance(aposterioriP, oldAposterioriP) > MIN_WEIGHT_DISTANCE) 
+					&& (nIterations < MAX_ITERATIONS);
+		}
+		
+		/**
+		 * Отбрасывает это начальное приближение.
+		 */
+		public void drop() {
+			hidden = null;
+			logLikelihood = Double.NEGATIVE_INFINITY;
+			active = false;
+		}
+	}
+	
+	/**
+	 * Задание, выполняющее одну итерацию поиска из начального приближения. Задание выполняется
+	 * не более одного раза, даже если его запускают несколько потоков.
+	 */
+	private static class StepTask implements Callable<Void> {
+		
+		private final Start start;
+		private final byte[] observed;
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+		
+		public StepTask(Start start, byte[] observed) {
+			this.start = start;
+			this.observed = observed;
+		}
+		
+		/**
+		 * Выполняет задание, если оно еще не было начато другим потоком.
+		 * 
+		 * @return
+		 *    {@code true}, если задание было выполнено вызывающим потоком
+		 */
+		public boolean claimAndRun() {
+			if (!claimed.compareAndSet(false, true)) return false;
+			
+			start.step(observed);
+			return true;
+		}
+		
+		@Override
+		public Void call() {
+			claimAndRun();
+			return null;
+		}
+	}
+	
+	private static double distance(double[] x, double[] y) {
+		double dist = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			dist = Math.max(dist, Math.abs(x[i] - y[i]));
+		}
+		return dist;
+	}
+	
+	/** Начальное приближение для используемых смесей распределений. */
+	private final MarkovMixture baseMixture;
+	
+	/**
+	 * Текущая смесь распределений, полученная в результате подгонки базовой смеси
+	 * на обучающей выборке.
+	 */
+	private transient MarkovMixture currentMixture;
+	
+	/**
+	 * Таблицы логарифмов вероятностей для моделей текущей смеси распределений.
+	 * Вычисляются один раз после обучения.
+	 */
+	private transient LogTables tables;
+	
+	/**
+	 * Окружение, пул потоков которого используется для параллельного перебора начальных
+	 * приближений; {@code null}, если приближения перебираются последовательно.
+	 */
+	private transient Env env;
+	
+	/**
+	 * Создает новый алгоритм распознавания, использующий смесь марковских моделей.
+	 * Предоставленная смесь служит начальным приближением; 
+	 * она уточняется с помощью EM-алгоритма при обучении на определенной выборке. 
+	 * 
+	 * @param mixture
+	 * 		начальное приближение для используемых смесей распределений
+	 */
+	public MixtureAlgorithm(MarkovMixture mixture) {
+		super(mixture.model(0).order(), false);
+		this.baseMixture = mixture;
+	}
+	
+	/**
+	 * Создает новый алгоритм распознавания, использующий смесь марковских моделей,
+	 * который перебирает начальные приближения параллельно.
+	 * 
+	 * @param mixture
+	 * 		начальное приближение для используемых смесей распределений
+	 * @param env
+	 * 		окружение, пул потоков которого используется для вычислений
+	 */
+	public MixtureAlgorithm(MarkovMixture mixture, Env env) {
+		this(mixture);
+		this.env = env;
+	}
+	
+	@Override
+	public void train(Sequence sequence) {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public void train(Collection<? extends Sequence> set) {
+		this.currentMixture = (MarkovMixture) this.baseMixture.clone();
+		
+		// TODO брать параметры откуда-то
+		EMAlgorithm emAlgorithm = new EMAlgorithm();
+		emAlgorithm.mixture = this.currentMixture;
+		emAlgorithm.set = (SequenceSet) set;
+		emAlgorithm.saveTemplate = null;
+		emAlgorithm.nIterations = 5;
+		emAlgorithm.stochastic = true;
+		if (env != null) {
+			emAlgorithm.run(env);
+		} else {
+			emAlgorithm.ordinaryRun();
+		}
+		
+		this.currentMixture = emAlgorithm.mixture;
+		this.tables = new LogTables(this.currentMixture);
+	}
+	
+	@Override
+	public void reset() {
+		this.currentMixture = null;
+		this.tables = null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Чтобы избежать попадания в локальные максимумы, поиск выполняется из нескольких
+	 * начальных приближений, в каждом из которых единичный вес имеет одна из моделей смеси.
+	 * Итерации для всех приближений выполняются синхронно; если задано окружение, 
+	 * приближения в пределах одной итерации обрабатываются параллельно. Приближение 
+	 * отбрасывается, если оно приводит к последовательности скрытых состояний, уже полученной 
+	 * из другого приближения на одной из предыдущих итераций или из приближения с меньшим 
+	 * индексом на той же итерации (апостериорные вероятности моделей, а значит, и дальнейшие 
+	 * итерации определяются этой последовательностью). Результат не зависит от порядка 
+	 * выполнения заданий.
+	 * 
+	 * <p>Остальные приближения выполняются до сходимости (или до исчерпания числа итераций): 
+	 * досрочная остановка приближения невозможна без верхней оценки правдоподобия, которое 
+	 * оно может достичь. Оценка по наиболее вероятным последовательностям для отдельных 
+	 * моделей смеси требует дополнительного прохода алгоритма Витерби для каждой модели
+	 * и не является точной, так как правдоподобия последовательностей вычисляются с другим 
+	 * ограничением снизу на вероятности переходов, чем при поиске (см. {@code MIN_LOG_P}).
+	 */
+	@Override
+	public byte[] run(Sequence sequence) {
+		final byte[] observed = sequence.observed;
+		final int nStarts = this.currentMixture.size();
+		
+		List<Start> starts = new ArrayList<Start>();
+		for (int k = 0; k < nStarts; k++) {
+			double[] weights = new double[nStarts];
+			weights[k] = 1.0;
+			starts.add(new Start(k, weights));
+		}
+		
+		final Map<Path, Integer> paths = new HashMap<Path, Integer>();
+		List<Start> active = new ArrayList<Start>(starts);
+		while (!active.isEmpty()) {
+			List<StepTask> tasks = new ArrayList<StepTask>();
+			for (Start start : active) {
+				tasks.add(new StepTask(start, observed));
+			}
+			if ((env != null) && (tasks.size() > 1)) {
+				runParallel(tasks);
+			} else {
+				for (StepTask task : tasks) {
+					task.claimAndRun();
+				}
+			}
+			
+			// Приближения просматриваются в порядке возрастания индексов
+			List<Start> nextActive = new ArrayList<Start>();
+			for (Start start : active) {
+				if (start.hidden == null) continue;
+				
+				final Path path = new Path(start.hidden);
+				Integer owner = paths.get(path);
+				if ((owner != null) && (owner != start.index)) {
+					// Дальнейшие итерации повторяют поиск из другого приближения
+					start.drop();
+					continue;
+				}
+				paths.put(path, start.index);
+				if (start.active) {
+					nextActive.add(start);
+				}
+			}
+			active = nextActive;
+		}
+		
+		double maxP = Double.NEGATIVE_INFINITY;
+		byte[] best = null;
+		for (Start start : starts) {
+			if ((start.hidden != null) && (start.logLikelihood > maxP)) {
+				maxP = start.logLikelihood;
+				best = start.hidden;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Первая итерация поиска из каждого начального приближения использует единственную
+	 * модель смеси, поэтому строка распознается только в том случае, если ее может распознать
+	 * хотя бы одна из моделей. Если алгоритм не обучен, метод возвращает {@code true}.
+	 */
+	@Override
+	public boolean isFeasible(Sequence sequence) {
+		if (this.currentMixture == null) return true;
+		
+		for (int k = 0; k < this.currentMixture.size(); k++) {
+			if (feasible(sequence.observed, this.currentMixture.model(k))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Выполняет задания поиска из начальных приближений в пуле потоков окружения.
+	 * Задания, которые не были начаты пулом, выполняются вызывающим потоком; это исключает
+	 * взаимную блокировку, если метод вызывается из потока того же пула (например, при 
+	 * распознавании выборки с помощью {@link ua.kiev.icyb.bio.alg.ThreadedAlgorithm}).
+	 * 
+	 * @param tasks
+	 *    задания для выполнения
+	 */
+	private void runParallel(List<StepTask> tasks) {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (StepTask task : tasks) {
+			futures.add(env.executor().submit(task));
+		}
+		
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				if (tasks.get(i).claimAndRun()) {
+					futures.get(i).cancel(false);
+				} else {
+					// Задание выполняется одним из потоков пула
+					futures.get(i).get();
+				}
+			}
+		} catch (InterruptedException e) {
+			env.exception(e);
+		} catch (ExecutionException e) {
+			env.exception(e);
+		}
+	}
+	
+	/**
+	 * Выполняет алгоритм с заданными начальными значениями апостериорных вероятностей марковских моделей,
+	 * входящих в смесь.
+	 * 
+	 * @param observed
+	 * 		последовательность наблюдаемых состояний
+	 * @param initialWeights
+	 * 		массив апостериорных вероятностей; сумма вероятностей должна быть равна единице
+	 * @return
+	 * 		наиболее вероятная последовательность скрытых состояний, соответствующих наблюдаемой цепочке
+	 */
+	public byte[] run(byte[] observed, double[] initialWeights) {
+		Start start = new Start(-1, initialWeights);
+		while (start.active) {
+			start.step(observed);
+		}
+		return start.hidden;
+	}
+}
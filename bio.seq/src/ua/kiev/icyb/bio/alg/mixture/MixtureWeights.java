@@ -0,0 +1,611 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.Launchable;
+import ua.kiev.icyb.bio.SequenceSet;
+
+
+/**
+ * Вычисляет апостериорные вероятности для каждой пары из марковской цепи
+ * и строки полных состояний из выборки. Для вычисления используется
+ * стандартный пул вычислительных потоков {@link Env#executor()}; выборка разбивается
+ * на непрерывные диапазоны строк, каждый из которых обрабатывается отдельным заданием.
+ * 
+ * <p>Если задан положительный порог усечения, вероятности хранятся в разреженном виде:
+ * для каждой строки запоминаются только вероятности, не меньшие порога (а также 
+ * вероятность наиболее вероятной модели), которые затем нормируются к единице. 
+ * Отброшенная вероятностная масса характеризует погрешность такого приближения 
+ * (см. {@link #truncatedMass}, {@link #maxTruncatedMass}).
+ * 
+ * <p>Если логарифмические правдоподобия строк для отдельных моделей смеси уже вычислены
+ * (например, с помощью {@link LikelihoodCache}), их можно передать в конструктор
+ * {@link #MixtureWeights(MarkovMixture, SequenceSet, double, double[][])}; тогда
+ * вероятностные модели не используются.
+ */
+public class MixtureWeights implements Launchable {
+
+	private static final long serialVersionUID = 1L;
+	
+
+	/**
+	 * Минимальное число строк выборки, обрабатываемых одним заданием.
+	 */
+	private static final int MIN_CHUNK_SIZE = 64;
+	
+	/**
+	 * Минимальная вероятность оставшихся моделей для строки выборки, при которой 
+	 * вероятности после удаления модели из смеси вычисляются нормализацией 
+	 * (см. {@link #without(int, MarkovMixture)}).
+	 */
+	private static final double MIN_REST_MASS = 1e-6;
+	
+	/**
+	 * Задание, вычисляющее апостериорные вероятности для непрерывного диапазона
+	 * строк выборки.
+	 */
+	private static class WeightTask implements Callable<Void> {
+
+		private final SequenceSet set;
+		private final MarkovMixture mixture;
+		private final double[] logWeights;
+		private final double[][] outWeights;
+		private final int[][] outModels;
+		private final double[][] outValues;
+		private final double threshold;
+		private final double[][] logLikelihoods;
+		private final int[] outLabels;
+		private final double[] outRowLikelihoods;
+		private final int from, to;
+		
+		/** Логарифмическое правдоподобие смеси на диапазоне строк. */
+		private double logLikelihood = 0.0;
+		/** Суммарная отброшенная вероятностная масса на диапазоне строк. */
+		private double truncatedMass = 0.0;
+		/** Максимальная отброшенная вероятностная масса для одной строки. */
+		private double maxTruncatedMass = 0.0;
+		
+		public WeightTask(SequenceSet set, MarkovMixture mixture, double[] logWeights, 
+				MixtureWeights output, int[] outLabels, int from, int to) {
+			
+			this.set = set;
+			this.mixture = mixture;
+			this.logWeights = logWeights;
+			this.outWeights = output.weights;
+			this.outModels = output.models;
+			this.outValues = output.values;
+			this.threshold = output.threshold;
+			this.logLikelihoods = output.logLikelihoods;
+			this.outLabels = outLabels;
+			this.outRowLikelihoods = output.rowLogLikelihoods;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			final int count = logWeights.length;
+			final double[] logP = new double[count];
+			
+			for (int index = from; index < to; index++) {
+				if (logLikelihoods != null) {
+					for (int alg = 0; alg < count; alg++) {
+						logP[alg] = logLikelihoods[alg][index];
+					}
+				} else {
+					mixture.logLikelihoods(set.observed(index), set.hidden(index), logP);
+				}
+				
+				store(index, logP, normalize(logP));
+			}
+			
+			return null;
+		}
+		
+		/**
+		 * Преобразует логарифмические правдоподобия строки выборки для моделей смеси 
+		 * в апостериорные вероятности моделей.
+		 * 
+		 * @param logP
+		 *    логарифмические правдоподобия; заменяются апостериорными вероятностями
+		 * @return
+		 *    логарифмическое правдоподобие строки для смеси
+		 */
+		private double normalize(double[] logP) {
+			final int count = logWeights.length;
+			double maxP = Double.NEGATIVE_INFINITY;
+			for (int alg = 0; alg < count; alg++) {
+				logP[alg] += logWeights[alg];
+				maxP = Math.max(maxP, logP[alg]);
+			}
+			
+			double sum = 0.0;
+			for (int alg = 0; alg < count; alg++) {
+				logP[alg] = Math.exp(logP[alg] - maxP);
+				sum += logP[alg];
+			}
+			
+			for (int alg = 0; alg < count; alg++) {
+				logP[alg] /= sum;
+				if (Double.isNaN(logP[alg])) {
+					throw new IllegalStateException("Invalid mixture (not trained?)");
+				}
+			}
+			return maxP + Math.log(sum);
+		}
+		
+		/**
+		 * Сохраняет апостериорные вероятности моделей смеси для одной строки выборки.
+		 * 
+		 * @param index
+		 *    индекс строки в выборке
+		 * @param posteriors
+		 *    апостериорные вероятности для всех моделей смеси
+		 * @param rowLogLikelihood
+		 *    логарифмическое правдоподобие строки для смеси
+		 */
+		private void store(int index, double[] posteriors, double rowLogLikelihood) {
+			int maxChain = 0;
+			for (int alg = 1; alg < posteriors.length; alg++) {
+				if (posteriors[alg] > posteriors[maxChain]) {
+					maxChain = alg;
+				}
+			}
+			
+			if (outWeights != null) {
+				for (int alg = 0; alg < posteriors.length; alg++) {
+					outWeights[alg][index] = posteriors[alg];
+				}
+			} else {
+				truncate(index, posteriors);
+			}
+			outLabels[index] = maxChain;
+			outRowLikelihoods[index] = rowLogLikelihood;
+			logLikelihood += rowLogLikelihood;
+		}
+		
+		/**
+		 * Сохраняет в разреженном виде апостериорные вероятности для одной строки выборки.
+		 * Вероятность наиболее вероятной модели сохраняется всегда, даже если она меньше 
+		 * порога, так что каждая строка используется для обучения хотя бы одной модели.
+		 * Сохраненные вероятности нормируются к единице.
+		 * 
+		 * @param index
+		 *    индекс строки в выборке
+		 * @param posteriors
+		 *    апостериорные вероятности для всех моделей смеси
+		 */
+		private void truncate(int index, double[] posteriors) {
+			int maxAlg = 0;
+			for (int alg = 1; alg < posteriors.length; alg++) {
+				if (posteriors[alg] > posteriors[maxAlg]) {
+					maxAlg = alg;
+				}
+			}
+			
+			int nKept = 0;
+			double keptMass = 0.0;
+			for (int alg = 0; alg < posteriors.length; alg++) {
+				if ((posteriors[alg] >= threshold) || (alg == maxAlg)) {
+					nKept++;
+					keptMass += posteriors[alg];
+				}
+			}
+			
+			int[] models = new int[nKept];
+			double[] values = new double[nKept];
+			int pos = 0;
+			for (int alg = 0; alg < posteriors.length; alg++) {
+				if ((posteriors[alg] >= threshold) || (alg == maxAlg)) {
+					models[pos] = alg;
+					values[pos] = posteriors[alg] / keptMass;
+					pos++;
+				}
+			}
+			outModels[index] = models;
+			outValues[index] = values;
+			
+			double lostMass = Math.max(0.0, 1.0 - keptMass);
+			truncatedMass += lostMass;
+			maxTruncatedMass = Math.max(maxTruncatedMass, lostMass);
+		}
+	}
+	
+	private final MarkovMixture mixture;
+	
+	private final SequenceSet set;
+	
+	/** Порог усечения апостериорных вероятностей. */
+	private final double threshold;
+	
+	/** Количество моделей в смеси на момент создания объекта. */
+	private final int count;
+	
+	/**
+	 * Вычисленные апостериорные вероятности.
+	 * Строки массива соответствуют моделям смеси, столбцы - прецедентам выборки.
+	 * Равно {@code null}, если вероятности хранятся в разреженном виде.
+	 */
+	public final double[][] weights;
+	
+	/** Индексы моделей с ненулевыми вероятностями для каждой строки (в разреженном виде). */
+	private final int[][] models;
+	/** Ненулевые вероятности для каждой строки (в разреженном виде). */
+	private final double[][] values;
+	
+	/**
+	 * Логарифмические правдоподобия строк выборки для отдельных моделей смеси (без учета весов),
+	 * переданные в конструктор, или {@code null}, если их нужно вычислить.
+	 */
+	private final double[][] logLikelihoods;
+	
+	/** Логарифмические правдоподобия отдельных строк выборки для смеси. */
+	private final double[] rowLogLikelihoods;
+	
+	/** Веса моделей смеси, использованные при вычислении вероятностей. */
+	private double[] mixtureWeights;
+	
+	/**
+	 * Хэш-таблица, сопоставляющая идентификатору каждой строки из выборки
+	 * номер модели из смеси, имеющеей максимальную апостериорную вероятность на этой строке.
+	 */
+	public final Map<String, Integer> labels = new HashMap<String, Integer>();
+	
+	/**
+	 * Логарифмическое правдоподобие выборки для смеси, вычисляемое попутно
+	 * с апостериорными вероятностями.
+	 */
+	public double logLikelihood;
+	
+	/**
+	 * Суммарная по всем строкам выборки вероятностная масса, отброшенная при усечении
+	 * апостериорных вероятностей.
+	 */
+	public double truncatedMass;
+	
+	/**
+	 * Максимальная вероятностная масса, отброшенная при усечении апостериорных вероятностей
+	 * для одной строки выборки.
+	 */
+	public double maxTruncatedMass;
+	
+	/**
+	 * Создает новое задание.
+	 * 
+	 * @param mixture
+	 *    смесь марковских моделей
+	 * @param set
+	 *    выборка, для которой вычисляются вероятности
+	 */
+	public MixtureWeights(MarkovMixture mixture, SequenceSet set) {
+		this(mixture, set, 0.0);
+	}
+	
+	/**
+	 * Создает новое задание с усечением апостериорных вероятностей.
+	 * 
+	 * @param mixture
+	 *    смесь марковских моделей
+	 * @param set
+	 *    выборка, для которой вычисляются вероятности
+	 * @param threshold
+	 *    порог усечения (не больше единицы); вероятности, меньшие порога, полагаются равными 
+	 *    нулю. Если порог не положителен, вероятности хранятся в полном виде в массиве 
+	 *    {@link #weights}
+	 * @throws IllegalArgumentException
+	 *    если порог усечения больше единицы
+	 */
+	public MixtureWeights(MarkovMixture mixture, SequenceSet set, double threshold) {
+		this(mixture, set, threshold, null);
+	}
+	
+	/**
+	 * Создает новое задание, использующее ранее вычисленные логарифмические правдоподобия
+	 * строк выборки для моделей смеси. Вероятностные модели при этом не используются, 
+	 * поэтому вычисление апостериорных вероятностей сводится к их нормировке с учетом
+	 * весов смеси.
+	 * 
+	 * @param mixture
+	 *    смесь марковских моделей
+	 * @param set
+	 *    выборка, для которой вычисляются вероятности
+	 * @param threshold
+	 *    порог усечения апостериорных вероятностей (не больше единицы)
+	 * @param logLikelihoods
+	 *    логарифмические правдоподобия строк выборки для моделей смеси (без учета весов;
+	 *    строки массива соответствуют моделям смеси, столбцы - прецедентам выборки)
+	 *    или {@code null}, если их нужно вычислить
+	 * @throws IllegalArgumentException
+	 *    если порог усечения больше единицы или правдоподобия не соответствуют смеси
+	 */
+	public MixtureWeights(MarkovMixture mixture, SequenceSet set, double threshold, 
+			double[][] logLikelihoods) {
+		
+		if (Double.isNaN(threshold) || (threshold > 1.0)) {
+			throw new IllegalArgumentException("Invalid truncation threshold: " + threshold);
+		}
+		if ((logLikelihoods != null) && (logLikelihoods.length != mixture.size())) {
+			throw new IllegalArgumentException("Log-likelihoods do not match the mixture");
+		}
+		
+		this.mixture = mixture;
+		this.set = set;
+		this.threshold = threshold;
+		this.count = mixture.size();
+		this.logLikelihoods = logLikelihoods;
+		this.rowLogLikelihoods = new double[set.size()];
+		if (threshold > 0) {
+			this.weights = null;
+			this.models = new int[set.size()][];
+			this.values = new double[set.size()][];
+		} else {
+			this.weights = new double[mixture.size()][set.size()];
+			this.models = null;
+			this.values = null;
+		}
+	}
+	
+	/**
+	 * Проверяет, хранятся ли апостериорные вероятности в разреженном виде.
+	 * 
+	 * @return
+	 *    {@code true}, если вероятности были усечены
+	 */
+	public boolean isSparse() {
+		return (weights == null);
+	}
+	
+	/**
+	 * Возвращает количество моделей в смеси.
+	 * 
+	 * @return
+	 *    число моделей
+	 */
+	public int count() {
+		return count;
+	}
+	
+	/**
+	 * Возвращает логарифмические правдоподобия строк выборки для моделей смеси, 
+	 * по которым вычислялись апостериорные вероятности.
+	 * 
+	 * @return
+	 *    логарифмические правдоподобия (строки массива соответствуют моделям смеси) или
+	 *    {@code null}, если они вычислялись без сохранения. Массив не должен изменяться
+	 */
+	public double[][] logLikelihoods() {
+		return logLikelihoods;
+	}
+	
+	/**
+	 * Возвращает выборку, для строк которой вычислены вероятности.
+	 * 
+	 * @return
+	 *    выборка
+	 */
+	SequenceSet set() {
+		return set;
+	}
+	
+	/**
+	 * Возвращает количество строк выборки, для которых вычислены вероятности.
+	 * 
+	 * @return
+	 *    размер выборки
+	 */
+	public int size() {
+		return set.size();
+	}
+	
+	/**
+	 * Записывает апостериорные вероятности всех моделей смеси для заданной строки выборки.
+	 * 
+	 * @param index
+	 *    индекс строки в выборке
+	 * @param output
+	 *    массив длины, равной числу моделей в смеси, в который записываются вероятности
+	 */
+	public void get(int index, double[] output) {
+		if (weights != null) {
+			for (int alg = 0; alg < output.length; alg++) {
+				output[alg] = weights[alg][index];
+			}
+		} else {
+			Arrays.fill(output, 0.0);
+			for (int pos = 0; pos < models[index].length; pos++) {
+				output[models[index][pos]] = values[index][pos];
+			}
+		}
+	}
+	
+	/**
+	 * Возвращает индексы моделей смеси, вероятности для которых не были отброшены при усечении.
+	 * Метод применим только к вероятностям, хранящимся в разреженном виде.
+	 * 
+	 * @param index
+	 *    индекс строки в выборке
+	 * @return
+	 *    индексы моделей в порядке возрастания
+	 */
+	public int[] models(int index) {
+		return models[index];
+	}
+	
+	/**
+	 * Возвращает апостериорные вероятности, не отброшенные при усечении, для заданной 
+	 * строки выборки; порядок соответствует массиву, возвращаемому методом {@link #models(int)}.
+	 * Метод применим только к вероятностям, хранящимся в разреженном виде.
+	 * 
+	 * @param index
+	 *    индекс строки в выборке
+	 * @return
+	 *    нормированные вероятности
+	 */
+	public double[] values(int index) {
+		return values[index];
+	}
+	
+	/**
+	 * Вычисляет суммы апостериорных вероятностей по всем строкам выборки для каждой
+	 * модели смеси.
+	 * 
+	 * @return
+	 *    массив сумм, индексированный моделями смеси
+	 */
+	public double[] sums() {
+		double[] sums = new double[count];
+		if (weights != null) {
+			for (int alg = 0; alg < sums.length; alg++) {
+				for (int i = 0; i < weights[alg].length; i++) {
+					sums[alg] += weights[alg][i];
+				}
+			}
+		} else {
+			for (int i = 0; i < models.length; i++) {
+				for (int pos = 0; pos < models[i].length; pos++) {
+					sums[models[i][pos]] += values[i][pos];
+				}
+			}
+		}
+		return sums;
+	}
+	
+	/**
+	 * Вычисляет апостериорные вероятности для смеси, из которой удалена одна из моделей,
+	 * без повторного вычисления правдоподобий. Для каждой строки выборки вероятности остальных
+	 * моделей делятся на {@code 1 - p}, где {@code p} — вероятность удаленной модели; 
+	 * результат совпадает с вероятностями для смеси, из которой удалена модель, а веса
+	 * остальных моделей пропорционально увеличены. Для строк, вероятность которых почти
+	 * целиком приходилась на удаленную модель, вероятности вычисляются по правдоподобиям.
+	 * 
+	 * <p>Вероятности должны быть предварительно вычислены методом {@link #run(Env)}.
+	 * 
+	 * @param removed
+	 *    индекс удаленной модели
+	 * @param reduced
+	 *    смесь, полученная удалением модели
+	 * @return
+	 *    апостериорные вероятности для уменьшенной смеси
+	 * @throws IllegalArgumentException
+	 *    если размер уменьшенной смеси не соответствует этой смеси
+	 */
+	public MixtureWeights without(int removed, MarkovMixture reduced) {
+		if (mixtureWeights == null) {
+			throw new IllegalStateException("Posteriors have not been computed");
+		}
+		if ((reduced.size() != count - 1) || (removed < 0) || (removed >= count)) {
+			throw new IllegalArgumentException("Reduced mixture does not match the posteriors");
+		}
+		
+		double[][] reducedLikelihoods = null;
+		if (logLikelihoods != null) {
+			reducedLikelihoods = new double[count - 1][];
+			for (int alg = 0; alg < reducedLikelihoods.length; alg++) {
+				reducedLikelihoods[alg] = logLikelihoods[(alg < removed) ? alg : alg + 1];
+			}
+		}
+		
+		MixtureWeights result = new MixtureWeights(reduced, set, threshold, reducedLikelihoods);
+		result.mixtureWeights = reduced.weights();
+		double[] logWeights = new double[count - 1];
+		for (int alg = 0; alg < logWeights.length; alg++) {
+			logWeights[alg] = Math.log(result.mixtureWeights[alg]);
+		}
+		
+		final int size = set.size();
+		int[] maxChains = new int[size];
+		WeightTask task = new WeightTask(set, reduced, logWeights, result, maxChains, 0, size);
+		
+		final double logRest = Math.log(1.0 - mixtureWeights[removed]);
+		final double[] row = new double[count], newRow = new double[count - 1];
+		for (int i = 0; i < size; i++) {
+			get(i, row);
+			final double rest = 1.0 - row[removed];
+			
+			if (rest >= MIN_REST_MASS) {
+				for (int alg = 0; alg < newRow.length; alg++) {
+					newRow[alg] = row[(alg < removed) ? alg : alg + 1] / rest;
+				}
+				task.store(i, newRow, rowLogLikelihoods[i] + Math.log(rest) - logRest);
+			} else {
+				if (reducedLikelihoods != null) {
+					for (int alg = 0; alg < newRow.length; alg++) {
+						newRow[alg] = reducedLikelihoods[alg][i];
+					}
+				} else {
+					reduced.logLikelihoods(set.observed(i), set.hidden(i), newRow);
+				}
+				task.store(i, newRow, task.normalize(newRow));
+			}
+		}
+		
+		result.logLikelihood = task.logLikelihood;
+		result.truncatedMass = task.truncatedMass;
+		result.maxTruncatedMass = task.maxTruncatedMass;
+		for (int i = 0; i < size; i++) {
+			result.labels.put(set.id(i), maxChains[i]);
+		}
+		return result;
+	}
+	
+	@Override
+	public void run(Env env) {
+		final ExecutorService executor = env.executor();
+		final int size = set.size();
+		
+		mixtureWeights = mixture.weights();
+		double[] logWeights = new double[mixtureWeights.length];
+		for (int alg = 0; alg < logWeights.length; alg++) {
+			logWeights[alg] = Math.log(mixtureWeights[alg]);
+		}
+		int[] maxChains = new int[size];
+		
+		// Несколько заданий на поток для балансировки нагрузки
+		int chunkSize = (size + 4 * env.threadCount() - 1) / (4 * env.threadCount());
+		chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+		
+		List<WeightTask> tasks = new ArrayList<WeightTask>(); 
+		for (int from = 0; from < size; from += chunkSize) {
+			tasks.add(new WeightTask(set, mixture, logWeights, this, maxChains,
+					from, Math.min(from + chunkSize, size)));
+		}
+		
+		try {
+			for (Future<Void> future: executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			env.exception(e);
+		} catch (ExecutionException e) {
+			env.exception(e);
+		}
+		
+		logLikelihood = 0.0;
+		truncatedMass = 0.0;
+		maxTruncatedMass = 0.0;
+		for (WeightTask task : tasks) {
+			logLikelihood += task.logLikelihood;
+			truncatedMass += task.truncatedMass;
+			maxTruncatedMass = Math.max(maxTruncatedMass, task.maxTruncatedMass);
+		}
+		
+		labels.clear();
+		for (int i = 0; i < size; i++) {
+			labels.put(set.id(i), maxChains[i]);
+		}
+	}
+	
+	@Override
+	public Env getEnv() {
+		return null;
+	}
+}
@@ -0,0 +1,422 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.res.Messages;
+
+/**
+ * EM-алгоритм с несколькими случайными начальными приближениями.
+ * 
+ * <p>Начальные смеси строятся с помощью метода {@link MarkovMixture#randomFill(ua.kiev.icyb.bio.SequenceSet, Random)}
+ * с различными зернами генератора случайных чисел; структура смесей (количество компонент,
+ * порядок цепей и т.п.) копируется из смеси {@link #mixture}. Все запуски используют общую
+ * выборку {@link #set}. Запуски выполняются раундами по одной итерации; итерации различных
+ * запусков в пределах раунда выполняются параллельно в стандартном пуле потоков
+ * {@link Env#executor()}, который используется также для распараллеливания шагов ожидания
+ * и максимизации внутри запусков. Запуски, логарифмическое правдоподобие которых после
+ * {@link #warmupIterations} итераций отстает от лучшего более чем на {@link #abandonMargin},
+ * прекращаются. Промежуточные результаты сохраняются один раз за раунд. По окончании работы
+ * в поле {@link #mixture} записывается смесь с наибольшим правдоподобием.
+ */
+public class MultiStartEMAlgorithm extends EMAlgorithm {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Пул потоков, задания которого выполняются в общем пуле окружения. Метод 
+	 * {@link #invokeAll(Collection)} выполняет в вызывающем потоке задания, которые еще не были 
+	 * начаты общим пулом, поэтому пул может использоваться из потоков общего пула 
+	 * без взаимной блокировки.
+	 */
+	private static class SharedExecutor extends AbstractExecutorService {
+		
+		private final ExecutorService pool;
+		
+		public SharedExecutor(ExecutorService pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) 
+				throws InterruptedException {
+			
+			List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>();
+			for (Callable<T> task : tasks) {
+				FutureTask<T> future = new FutureTask<T>(task);
+				futures.add(future);
+				pool.execute(future);
+			}
+			
+			for (FutureTask<T> future : futures) {
+				// Ничего не делает, если задание уже выполняется одним из потоков пула
+				future.run();
+			}
+			for (FutureTask<T> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					// Исключение будет получено вызывающим кодом
+				}
+			}
+			return new ArrayList<Future<T>>(futures);
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			pool.execute(command);
+		}
+
+		@Override
+		public void shutdown() {
+			pool.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return pool.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return pool.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return pool.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return pool.awaitTermination(timeout, unit);
+		}
+	}
+	
+	/**
+	 * Окружение для отдельного запуска EM-алгоритма. Сообщения и параметры передаются
+	 * окружению основного алгоритма; параллельные вычисления выполняются в его пуле потоков
+	 * с помощью {@link SharedExecutor}.
+	 */
+	private static class StartEnv extends Env {
+		
+		private final Env parent;
+		
+		private final ExecutorService executor;
+		
+		public StartEnv(Env parent) {
+			this.parent = parent;
+			this.executor = new SharedExecutor(parent.executor());
+		}
+		
+		@Override
+		public int debugLevel() {
+			return parent.debugLevel();
+		}
+		
+		@Override
+		public int threadCount() {
+			return parent.threadCount();
+		}
+		
+		@Override
+		public ExecutorService executor() {
+			return executor;
+		}
+		
+		@Override
+		public void exception(Exception e) throws RuntimeException {
+			parent.exception(e);
+		}
+	}
+	
+	/**
+	 * Отдельный запуск EM-алгоритма.
+	 */
+	private static class Start extends EMAlgorithm {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Зерно генератора случайных чисел для начальной смеси. */
+		public final long seed;
+		
+		/** Был ли запуск прекращен из-за низкого правдоподобия. */
+		public boolean abandoned = false;
+		
+		/** Сошелся ли EM-алгоритм для этого запуска. */
+		public boolean converged = false;
+		
+		private transient Env env;
+		
+		public Start(long seed) {
+			this.seed = seed;
+		}
+		
+		/**
+		 * Проверяет, следует ли продолжать итерации для этого запуска.
+		 * 
+		 * @return
+		 *    {@code true}, если запуск не сошелся и не был прекращен
+		 */
+		public boolean isActive() {
+			return !abandoned && !converged && (iteration < nIterations);
+		}
+		
+		/**
+		 * Выполняет одну итерацию EM-алгоритма для этого запуска.
+		 */
+		public void step() {
+			converged = iterate();
+			if (!converged) {
+				iteration++;
+			}
+		}
+		
+		@Override
+		public Env getEnv() {
+			return env;
+		}
+		
+		@Override
+		protected void doRun() {
+		}
+	}
+	
+	/**
+	 * Задание, выполняющее итерацию отдельного запуска.
+	 */
+	private static class StepTask implements Callable<Void> {
+		
+		private final Start start;
+		
+		public StepTask(Start start) {
+			this.start = start;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			start.step();
+			return null;
+		}
+	}
+	
+	/** Количество запусков EM-алгоритма. */
+	public int nStarts = 4;
+	
+	/**
+	 * Количество итераций, после которого запуски с низким правдоподобием начинают
+	 * прекращаться.
+	 */
+	public int warmupIterations = 3;
+	
+	/**
+	 * Относительное отставание логарифмического правдоподобия запуска от лучшего запуска,
+	 * при котором запуск прекращается. Нулевое или отрицательное значение отключает
+	 * прекращение запусков.
+	 */
+	public double abandonMargin = 1e-3;
+	
+	/** Запуски EM-алгоритма. */
+	private List<Start> starts = null;
+	
+	/**
+	 * Создает новую копию алгоритма.
+	 */
+	public MultiStartEMAlgorithm() {
+	}
+	
+	/**
+	 * Создает запуски EM-алгоритма со случайными начальными смесями.
+	 */
+	private void createStarts() {
+		final Random seeds = new Random();
+		starts = new ArrayList<Start>();
+		
+		for (int s = 0; s < nStarts; s++) {
+			Start start = new Start(seeds.nextLong());
+			start.set = set;
+			start.mixture = (MarkovMixture) mixture.clearClone();
+			start.mixture.randomFill(set, new Random(start.seed));
+			
+			start.stochastic = stochastic;
+			start.nIterations = nIterations;
+			start.tolerance = tolerance;
+			start.weightTolerance = weightTolerance;
+			start.truncation = truncation;
+			starts.add(start);
+		}
+	}
+	
+	/**
+	 * Прекращает запуски, логарифмическое правдоподобие которых существенно отстает
+	 * от лучшего запуска.
+	 */
+	private void abandonTrailing() {
+		double best = Double.NEGATIVE_INFINITY;
+		for (Start start : starts) {
+			if (!start.abandoned) {
+				best = Math.max(best, start.logLikelihood());
+			}
+		}
+		
+		for (int s = 0; s < starts.size(); s++) {
+			Start start = starts.get(s);
+			if (start.abandoned) continue;
+			
+			double lag = (best - start.logLikelihood()) / Math.abs(best);
+			if (lag > abandonMargin) {
+				start.abandoned = true;
+				start.mixture = null;
+				getEnv().debug(1, Messages.format("em.multi.abandon", s + 1,
+						start.logLikelihood(), best));
+			}
+		}
+	}
+	
+	/**
+	 * Выбирает запуск с наибольшим логарифмическим правдоподобием итоговой смеси.
+	 * 
+	 * @return
+	 *    индекс лучшего запуска
+	 */
+	private int selectBest() {
+		int bestStart = -1;
+		double best = Double.NEGATIVE_INFINITY;
+		
+		for (int s = 0; s < starts.size(); s++) {
+			Start start = starts.get(s);
+			if (start.abandoned) continue;
+			
+			MixtureWeights weights = new MixtureWeights(start.mixture, set, truncation);
+			weights.run(getEnv());
+			if (weights.logLikelihood > best) {
+				best = weights.logLikelihood;
+				bestStart = s;
+			}
+		}
+		
+		getEnv().debug(1, Messages.format("em.multi.best", bestStart + 1,
+				starts.get(bestStart).seed, best));
+		return bestStart;
+	}
+	
+	/**
+	 * Выполняет EM-алгоритм с несколькими начальными приближениями.
+	 */
+	protected void multiStartRun() {
+		if (starts == null) {
+			createStarts();
+			save();
+		}
+		
+		final StartEnv startEnv = new StartEnv(getEnv());
+		for (int t = this.iteration; t < nIterations; this.iteration = ++t) {
+			List<StepTask> tasks = new ArrayList<StepTask>();
+			for (int s = 0; s < starts.size(); s++) {
+				Start start = starts.get(s);
+				if (!start.isActive()) continue;
+				
+				start.env = startEnv;
+				getEnv().debug(1, Messages.format("em.multi.start", s + 1, start.seed));
+				tasks.add(new StepTask(start));
+			}
+			
+			try {
+				for (Future<Void> future : startEnv.executor().invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				getEnv().exception(e);
+			} catch (ExecutionException e) {
+				getEnv().exception(e);
+			}
+			
+			if ((abandonMargin > 0) && (t + 1 >= warmupIterations)) {
+				abandonTrailing();
+			}
+			save();
+			
+			boolean active = false;
+			for (Start start : starts) {
+				active = active || start.isActive();
+			}
+			if (!active) break;
+		}
+		
+		Start best = starts.get(selectBest());
+		mixture = best.mixture;
+		saveMixture();
+	}
+	
+	/**
+	 * Сохраняет алгоритм, не записывая выборку отдельно для каждого запуска.
+	 * 
+	 * @param stream
+	 *    поток для записи объекта
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream stream) throws IOException {
+		if (starts == null) {
+			stream.defaultWriteObject();
+			return;
+		}
+		
+		List<SequenceSet> sets = new ArrayList<SequenceSet>();
+		for (Start start : starts) {
+			sets.add(start.set);
+			start.set = null;
+		}
+		try {
+			stream.defaultWriteObject();
+		} finally {
+			for (int s = 0; s < starts.size(); s++) {
+				starts.get(s).set = sets.get(s);
+			}
+		}
+	}
+	
+	/**
+	 * Восстанавливает выборку для запусков EM-алгоритма.
+	 * 
+	 * @param stream
+	 *    поток для считывания объекта
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+		stream.defaultReadObject();
+		if (starts != null) {
+			for (Start start : starts) {
+				start.set = set;
+			}
+		}
+	}
+	
+	@Override
+	protected String reprOptions() {
+		String repr = super.reprOptions();
+		repr += Messages.format("em.multi.starts", nStarts) + "\n";
+		repr += Messages.format("em.multi.margin", warmupIterations, abandonMargin) + "\n";
+		return repr;
+	}
+	
+	@Override
+	protected void doRun() {
+		getEnv().debug(1, repr());
+		multiStartRun();
+	}
+}
@@ -0,0 +1,173 @@
+package ua.kiev.icyb.bio.alg.mixture;
+
+import java.io.IOException;
+
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceReader;
+import ua.kiev.icyb.bio.SimpleSequenceSet;
+import ua.kiev.icyb.bio.res.Messages;
+
+/**
+ * Пошаговый (онлайн) EM-алгоритм для разделения смесей марковских цепей на выборках,
+ * не помещающихся в оперативную память.
+ * 
+ * <p>Выборка читается из файла последовательно, небольшими частями (пакетами) размера
+ * {@link #batchSize}. Для каждого пакета выполняются шаги ожидания и максимизации, после чего
+ * статистика компонент смеси смещается в сторону статистики, полученной на пакете:
+ * <blockquote>
+ * <code>s ← (1 - η<sub>t</sub>) s + η<sub>t</sub> s<sub>batch</sub>,
+ * η<sub>t</sub> = (t + t<sub>0</sub>)<sup>-α</sup></code>,
+ * </blockquote>
+ * где <code>t</code> — порядковый номер пакета (с отсчетом от нуля). Веса компонент смеси
+ * обновляются аналогичным образом. После обработки каждого пакета состояние алгоритма
+ * сохраняется, что позволяет возобновить его работу с того же места.
+ * 
+ * <p>Начальная смесь {@link #mixture} должна быть обучена, например, с помощью метода
+ * {@link MarkovMixture#randomFill(ua.kiev.icyb.bio.SequenceSet)} на небольшой части выборки.
+ */
+public class OnlineEMAlgorithm extends EMAlgorithm {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Имя выборки или файла, из которого читаются строки
+	 * (см. {@link ua.kiev.icyb.bio.Env#resolveDataset(String)}).
+	 */
+	public String dataset;
+
+	/** Количество строк в одном пакете. */
+	public int batchSize = 1000;
+
+	/** Количество проходов по выборке. */
+	public int nPasses = 1;
+
+	/**
+	 * Показатель степени <code>α</code> в формуле для величины шага. Для сходимости алгоритма
+	 * значение должно лежать в промежутке <code>(0.5, 1]</code>.
+	 */
+	public double stepExponent = 0.7;
+
+	/**
+	 * Сдвиг <code>t<sub>0</sub></code> в формуле для величины шага. Большие значения
+	 * уменьшают влияние первых пакетов.
+	 */
+	public double stepOffset = 2.0;
+
+	/** Номер текущего прохода по выборке (с отсчетом от нуля). */
+	private int pass = 0;
+
+	/** Количество пакетов, обработанных во время текущего прохода. */
+	private int batch = 0;
+
+	/** Общее количество обработанных пакетов. */
+	private int nUpdates = 0;
+
+	/**
+	 * Создает новую копию алгоритма.
+	 */
+	public OnlineEMAlgorithm() {
+	}
+
+	/**
+	 * Читает очередной пакет строк из файла выборки.
+	 * 
+	 * @param reader
+	 *    автомат для чтения строк
+	 * @return
+	 *    пакет строк; пустой, если достигнут конец файла
+	 * @throws IOException
+	 *    если при чтении произошла ошибка ввода/вывода
+	 */
+	private SimpleSequenceSet readBatch(SequenceReader reader) throws IOException {
+		SimpleSequenceSet batchSet = new SimpleSequenceSet(reader.observedStates(),
+				reader.hiddenStates(), reader.completeStates());
+
+		Sequence sequence;
+		while ((batchSet.size() < batchSize) && ((sequence = reader.next()) != null)) {
+			if (sequence.id == null) {
+				sequence = new Sequence(dataset + ":" + (reader.count() - 1),
+						sequence.observed, sequence.hidden);
+			}
+			batchSet.add(sequence);
+		}
+
+		return batchSet;
+	}
+
+	/**
+	 * Обновляет смесь распределений на основе очередного пакета строк.
+	 * 
+	 * @param batchSet
+	 *    пакет строк
+	 */
+	private void update(SimpleSequenceSet batchSet) {
+		final double step = Math.min(1.0, Math.pow(nUpdates + stepOffset, -stepExponent));
+		getEnv().debug(1, "\n" + Messages.format("em.online.batch",
+				pass + 1, batch + 1, batchSet.size(), step));
+
+		this.set = batchSet;
+
+		MixtureWeights mw = new MixtureWeights(mixture, set, truncation);
+		mw.run(getEnv());
+		getEnv().debug(1, Messages.format("em.online.log_likelihood", mw.logLikelihood / set.size()));
+		reprTruncation(mw);
+
+		MarkovMixture batchMixture = maximize(mw);
+
+		double[] weights = mixture.weights();
+		for (int alg = 0; alg < mixture.size(); alg++) {
+			mixture.model(alg).interpolate(batchMixture.model(alg), step);
+			weights[alg] = (1 - step) * weights[alg] + step * batchMixture.weight(alg);
+		}
+		mixture.setWeights(weights);
+		recycle(batchMixture);
+		getEnv().debug(2, mixture.repr());
+
+		this.set = null;
+		nUpdates++;
+	}
+
+	/**
+	 * Выполняет пошаговый EM-алгоритм.
+	 */
+	protected void onlineRun() {
+		for (; pass < nPasses; pass++) {
+			try {
+				SequenceReader reader = new SequenceReader(getEnv().resolveDataset(dataset));
+				reader.skip(batch * batchSize);
+
+				SimpleSequenceSet batchSet;
+				while ((batchSet = readBatch(reader)).size() > 0) {
+					update(batchSet);
+					batch++;
+					save();
+				}
+				reader.close();
+			} catch (IOException e) {
+				getEnv().exception(e);
+			}
+
+			this.iteration = pass;
+			saveMixture();
+			batch = 0;
+		}
+	}
+
+	@Override
+	protected String reprOptions() {
+		String repr = "";
+		repr += Messages.format("em.stochastic", stochastic) + "\n";
+		repr += Messages.format("em.template", saveTemplate) + "\n";
+		repr += Messages.format("em.online.dataset", dataset) + "\n";
+		repr += Messages.format("em.online.batch_size", batchSize) + "\n";
+		repr += Messages.format("em.online.passes", nPasses) + "\n";
+		repr += Messages.format("em.online.step", stepOffset, stepExponent) + "\n";
+		return repr;
+	}
+
+	@Override
+	protected void doRun() {
+		getEnv().debug(1, repr());
+		onlineRun();
+	}
+}
@@ -0,0 +1,265 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.util.Arrays;
+
+import ua.kiev.icyb.bio.SequenceSet;
+
+
+/**
+ * Индекс вхождений цепочек наблюдаемых состояний фиксированной длины в строки выборки.
+ * Для каждой строки выборки хранится гистограмма — количество вхождений каждой из цепочек
+ * заданной длины. Концентрация цепочек из произвольного множества {@link FragmentSet}
+ * в строке вычисляется как сумма нескольких столбцов гистограммы, без повторного
+ * просмотра строки.
+ * 
+ * <p>Индекс неизменяем после создания и может использоваться несколькими потоками.
+ * 
+ * <p><b>Пример.</b>
+ * <pre>
+ * FragmentIndex index = new FragmentIndex(set, 2);
+ * FragmentSet fragments = new FragmentSet("ACGT", Arrays.asList("AC", "CG"));
+ * double[] content = index.content(fragments);
+ * // content[i] == fragments.content(set.observed(i))
+ * </pre>
+ */
+public class FragmentIndex {
+	
+	/** Размер алфавита наблюдаемых состояний. */
+	private final int alphabetLength;
+	
+	/** Длина цепочек, вхождения которых подсчитываются. */
+	private final int fragmentLength;
+	
+	/** Количество различных цепочек заданной длины. */
+	private final int nFragments;
+	
+	/** Количество строк в индексе. */
+	private final int size;
+	
+	/**
+	 * Гистограммы вхождений цепочек; элемент с индексом {@code i * nFragments + f}
+	 * равен количеству вхождений цепочки {@code f} в строку {@code i}.
+	 */
+	private final int[] counts;
+	
+	/**
+	 * Количество позиций, с которых может начинаться цепочка, для каждой из строк
+	 * (т.е. знаменатель при вычислении концентрации).
+	 */
+	private final int[] windows;
+	
+	/**
+	 * Строит индекс вхождений цепочек заданной длины в строки наблюдаемых состояний выборки.
+	 * 
+	 * @param set
+	 *    выборка
+	 * @param length
+	 *    длина цепочек
+	 */
+	public FragmentIndex(SequenceSet set, int length) {
+		this.alphabetLength = set.observedStates().length();
+		this.fragmentLength = length;
+		
+		int nFragments = 1;
+		for (int i = 0; i < length; i++) {
+			nFragments *= alphabetLength;
+		}
+		this.nFragments = nFragments;
+		this.size = set.size();
+		this.counts = new int[size * nFragments];
+		this.windows = new int[size];
+		
+		byte[] seq = new byte[0];
+		for (int i = 0; i < size; i++) {
+			final int seqLength = set.length(i);
+			if (seq.length < seqLength) {
+				seq = new byte[seqLength];
+			}
+			set.observed(i, 0, seqLength, seq);
+			final int offset = i * nFragments;
+			windows[i] = seqLength - length + 1;
+			
+			// Индекс цепочки, оканчивающейся в текущей позиции, вычисляется скользящим окном
+			int hash = 0;
+			for (int pos = 0; pos < seqLength; pos++) {
+				hash = (hash * alphabetLength + seq[pos]) % nFragments;
+				if (pos >= length - 1) {
+					counts[offset + hash]++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Возвращает количество строк в индексе.
+	 * 
+	 * @return
+	 *    количество строк
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Возвращает длину цепочек, вхождения которых подсчитываются.
+	 * 
+	 * @return
+	 *    длина цепочек
+	 */
+	public int getFragmentLength() {
+		return fragmentLength;
+	}
+	
+	/**
+	 * Возвращает количество вхождений цепочки в строку выборки.
+	 * 
+	 * @param index
+	 *    индекс строки (с отсчетом от нуля)
+	 * @param fragment
+	 *    целочисленное представление цепочки (см. {@link FragmentSet})
+	 * @return
+	 *    количество вхождений
+	 */
+	public int count(int index, int fragment) {
+		return counts[index * nFragments + fragment];
+	}
+	
+	/**
+	 * Возвращает номера столбцов гистограммы, соответствующих цепочкам из множества.
+	 * 
+	 * @param fragments
+	 *    множество цепочек
+	 * @return
+	 *    целочисленные представления цепочек из множества
+	 * @throws IllegalArgumentException
+	 *    если длина цепочек или алфавит множества не совпадают с параметрами индекса
+	 */
+	private int[] columns(FragmentSet fragments) {
+		if ((fragments.getFragmentLength() != fragmentLength)
+				|| (fragments.getStates().length() != alphabetLength)) {
+			
+			throw new IllegalArgumentException("Fragment set is incompatible with index: " + fragments);
+		}
+		
+		int[] columns = new int[fragments.size()];
+		int i = 0;
+		for (int fragment : fragments) {
+			columns[i++] = fragment;
+		}
+		return columns;
+	}
+	
+	/**
+	 * Вычисляет суммарную концентрацию цепочек из множества в заданной строке. Результат
+	 * совпадает с результатом метода {@link FragmentSet#content(byte[])}.
+	 * 
+	 * @param index
+	 *    индекс строки (с отсчетом от нуля)
+	 * @param fragments
+	 *    множество цепочек
+	 * @return
+	 *    концентрация цепочек из множества (вещественное число
+	 *    от <code>0.0</code> до <code>1.0</code>)
+	 */
+	public double content(int index, FragmentSet fragments) {
+		return content(index, columns(fragments));
+	}
+	
+	private double content(int index, int[] columns) {
+		final int offset = index * nFragments;
+		int count = 0;
+		for (int c = 0; c < columns.length; c++) {
+			count += counts[offset + columns[c]];
+		}
+		return 1.0 * count / windows[index];
+	}
+	
+	/**
+	 * Вычисляет суммарную концентрацию цепочек из множества во всех строках индекса.
+	 * 
+	 * @param fragments
+	 *    множество цепочек
+	 * @return
+	 *    концентрации цепочек для всех строк
+	 */
+	public double[] content(FragmentSet fragments) {
+		final int[] columns = columns(fragments);
+		double[] content = new double[size];
+		for (int i = 0; i < size; i++) {
+			content[i] = content(i, columns);
+		}
+		return content;
+	}
+	
+	/**
+	 * Подсчитывает суммарное количество вхождений цепочек из множества в каждую строку индекса.
+	 * 
+	 * @param fragments
+	 *    множество цепочек
+	 * @return
+	 *    количества вхождений для всех строк
+	 */
+	public int[] occurrences(FragmentSet fragments) {
+		final int[] columns = columns(fragments);
+		int[] occurrences = new int[size];
+		for (int i = 0; i < size; i++) {
+			final int offset = i * nFragments;
+			for (int c = 0; c < columns.length; c++) {
+				occurrences[i] += counts[offset + columns[c]];
+			}
+		}
+		return occurrences;
+	}
+	
+	/**
+	 * Подсчитывает количество вхождений цепочек из множества, полученного добавлением
+	 * одной цепочки к другому множеству, по количеству вхождений для исходного множества.
+	 * 
+	 * @param occurrences
+	 *    количества вхождений цепочек исходного множества для всех строк 
+	 *    (см. {@link #occurrences(FragmentSet)})
+	 * @param fragment
+	 *    целочисленное представление добавляемой цепочки, не входящей в исходное множество
+	 * @return
+	 *    количества вхождений для всех строк
+	 */
+	public int[] occurrences(int[] occurrences, int fragment) {
+		int[] result = new int[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = occurrences[i] + counts[i * nFragments + fragment];
+		}
+		return result;
+	}
+	
+	/**
+	 * Вычисляет концентрации цепочек в строках индекса по количествам их вхождений.
+	 * 
+	 * @param occurrences
+	 *    количества вхождений цепочек для всех строк (см. {@link #occurrences(FragmentSet)})
+	 * @return
+	 *    концентрации цепочек для всех строк
+	 */
+	public double[] content(int[] occurrences) {
+		double[] content = new double[size];
+		for (int i = 0; i < size; i++) {
+			content[i] = 1.0 * occurrences[i] / windows[i];
+		}
+		return content;
+	}
+	
+	/**
+	 * Подсчитывает медианную концентрацию цепочек из множества в строках индекса.
+	 * Результат совпадает с результатом метода {@link FragmentSet#medianContent(SequenceSet)}.
+	 * 
+	 * @param fragments
+	 *    множество цепочек
+	 * @return
+	 *    медианная концентрация (вещественное число
+	 *    от <code>0.0</code> до <code>1.0</code>)
+	 */
+	public double medianContent(FragmentSet fragments) {
+		double[] vars = content(fragments);
+		Arrays.sort(vars);
+		return vars[vars.length / 2];
+	}
+}
@@ -0,0 +1,750 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import ua.kiev.icyb.bio.SequenceSet;
+
+
+/**
+ * Множество из цепочек состояний фиксированной длины.
+ * Цепочки представляются в виде целых чисел, соответствующих их индексам (с отсчетом от нуля)
+ * в упорядоченном в алфавитном порядке множестве всех цепочек фиксированной длины.
+ * 
+ * <p>Множество хранится в виде битовой маски над всеми цепочками фиксированной длины
+ * (массив {@code long}, по одному биту на цепочку). Поэтому хэш-код множества поддерживается
+ * при его изменении, сравнение и вычисление расстояния между множествами сводятся к побитовым 
+ * операциям, а маска используется как таблица поиска при вычислении концентрации цепочек.
+ * 
+ * <p><b>Пример.</b>
+ * <pre>
+ * FragmentSet set = new FragmentSet("ACGT", 2);
+ * set.add(1);
+ * System.out.println(set); // Выводит AC
+ * set.add(6);
+ * System.out.println(set); // Выводит AC,CG
+ * </pre>
+ */
+public class FragmentSet extends AbstractSet<Integer> implements Serializable {
+	
+	
+	private static final long serialVersionUID = 2L;
+	
+	/**
+	 * Максимальное количество элементов множества, для которого можно перебрать подмножества
+	 * (см. {@link #subsets()}); подмножества кодируются битами числа типа {@code long}.
+	 */
+	private static final int MAX_SUBSET_BASES = 62;
+	
+	/**
+	 * Сериализованная форма множества фрагментов, которая использовалась в предыдущих версиях
+	 * класса (до перехода к битовой маске класс наследовал {@link HashSet}). Используется
+	 * только для чтения ранее сохраненных объектов: при загрузке объектов с помощью 
+	 * {@link ua.kiev.icyb.bio.Env#load(String)} дескриптор старой формы класса 
+	 * {@link FragmentSet} заменяется дескриптором этого класса, а после чтения объект
+	 * преобразуется в {@link FragmentSet}.
+	 */
+	private static class LegacyForm extends HashSet<Integer> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private String alphabet;
+		
+		private int fragmentLength;
+		
+		/**
+		 * Преобразует считанный объект к текущей форме.
+		 * 
+		 * @return
+		 *    множество фрагментов с теми же элементами
+		 */
+		private Object readResolve() {
+			FragmentSet set = new FragmentSet(alphabet, fragmentLength);
+			set.addAll(this);
+			return set;
+		}
+	}
+	
+	/**
+	 * Коллекция подмножеств множества цепочек, элементы которой строятся по мере перебора.
+	 * Подмножества перебираются в порядке кода Грея, так что каждое следующее подмножество
+	 * отличается от предыдущего одной цепочкой.
+	 */
+	private static class Subsets extends AbstractCollection<FragmentSet> implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Исходное множество. */
+		private final FragmentSet parent;
+		
+		/** Элементы исходного множества. */
+		private final int[] bases;
+		
+		/**
+		 * Содержит ли исходное множество все цепочки фиксированной длины. В этом случае
+		 * из каждой пары взаимно дополняющих подмножеств перебирается только одно.
+		 */
+		private final boolean complete;
+		
+		public Subsets(FragmentSet parent) {
+			if (parent.size() > MAX_SUBSET_BASES) {
+				throw new IllegalArgumentException("Too many fragments to enumerate subsets: " 
+						+ parent.size());
+			}
+			
+			this.parent = new FragmentSet(parent);
+			this.bases = new int[parent.size()];
+			int i = 0;
+			for (int fragment : parent) {
+				bases[i++] = fragment;
+			}
+			this.complete = (parent.size() == parent.maxSize());
+		}
+		
+		/**
+		 * Проверяет, следует ли включать подмножество в коллекцию.
+		 * 
+		 * @param code
+		 *    битовое представление подмножества относительно массива {@link #bases}
+		 * @return
+		 *    {@code true}, если подмножество включается в коллекцию
+		 */
+		private boolean accept(long code) {
+			if (!complete) return true;
+			
+			// Из двух дополняющих друг друга подмножеств выбирается меньшее; при равенстве
+			// размеров — подмножество, не содержащее последний элемент
+			int count = Long.bitCount(code);
+			return (2 * count < bases.length) 
+					|| ((2 * count == bases.length) && ((code >>> (bases.length - 1)) == 0));
+		}
+		
+		@Override
+		public Iterator<FragmentSet> iterator() {
+			return new Iterator<FragmentSet>() {
+				
+				/** Текущее подмножество. */
+				private final FragmentSet current = new FragmentSet(parent.alphabet, parent.fragmentLength);
+				
+				/** Номер текущего подмножества в коде Грея. */
+				private long x = 0;
+				
+				/** Битовое представление текущего подмножества. */
+				private long code = 0;
+				
+				/** Битовое представление следующего возвращаемого подмножества. */
+				private long next = advance();
+				
+				/**
+				 * Переходит к следующему подмножеству, которое следует включить в коллекцию.
+				 * 
+				 * @return
+				 *    битовое представление подмножества или {@code -1}, если подмножества
+				 *    закончились
+				 */
+				private long advance() {
+					final long full = (1L << bases.length) - 1;
+					while (++x <= full) {
+						int bit = Long.numberOfTrailingZeros(x);
+						code ^= (1L << bit);
+						current.flip(bases[bit]);
+						
+						if ((code != full) && accept(code)) return code;
+					}
+					return -1;
+				}
+				
+				@Override
+				public boolean hasNext() {
+					return (next >= 0);
+				}
+				
+				@Override
+				public FragmentSet next() {
+					if (next < 0) {
+						throw new NoSuchElementException();
+					}
+					FragmentSet subset = new FragmentSet(current);
+					next = advance();
+					return subset;
+				}
+				
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+		
+		@Override
+		public int size() {
+			if (bases.length == 0) return 0;
+			
+			long count = (1L << bases.length) - 2;
+			if (complete) count /= 2;
+			return (int) Math.min(count, Integer.MAX_VALUE);
+		}
+	}
+	
+	/**
+	 * Генерирует множество, содержащее все цепочки состояний определенной
+	 * длины.
+	 * 
+	 * @param alphabet 
+	 *    алфавит цепочек состояний
+	 * @param length 
+	 *    длина генерируемых цепочек
+	 * @return
+	 *    множество цепочек состояний
+	 */
+	public static FragmentSet getSequences(String alphabet, int length) {
+		FragmentSet bases = new FragmentSet(alphabet, length);
+		
+		int power = 1;
+		for (int i = 0; i < length; i++)
+			power *= alphabet.length();
+		
+		for (int x = 0; x < power; x++) {
+			bases.add(x);
+		}
+		
+		return bases;
+	}
+	
+	/**
+	 * Удаляет из коллекции множеств цепочек близкие множества. Расстояние
+	 * между множествами вычисляется по Хэммингу. После выполнения метода
+	 * для любых двух элементов <code>x</code> и <code>y</code> коллекции <code>set</code> 
+	 * справедливо неравенство
+	 * <pre>
+	 * x.distance(y) > distance
+	 * </pre>
+	 * 
+	 * @see #distance(FragmentSet)
+	 * 
+	 * @param sets
+	 *    коллекция множеств, из которой необходимо удалить близкие множества 
+	 * @param distance
+	 *    граничное расстояние между множествами
+	 */
+	public static void trim(Collection<FragmentSet> sets, int distance) {
+		List<FragmentSet> newSets = new ArrayList<FragmentSet>(sets);
+		for (int i = 0; i < newSets.size(); i++) {
+			FragmentSet set = newSets.get(i);
+			
+			for (int j = newSets.size() - 1; j > i; j--)
+				if (newSets.get(j).distance(set) <= distance)
+					newSets.remove(j);
+		}
+		sets.clear();
+		sets.addAll(newSets);
+	}
+	
+	/**
+	 * Алфавит состояний, используемый в этом множестве. Алфавит состоит из 
+	 * уникальных символов, каждый из которых соответствует отдельному состоянию.
+	 */
+	private final String alphabet;
+	
+	/**
+	 * Длина фрагментов, содержащихся во множестве.
+	 */
+	private final int fragmentLength;
+	
+	/** Количество различных фрагментов заданной длины. */
+	private final int maxSize;
+	
+	/**
+	 * Битовая маска множества; бит с номером {@code f} установлен тогда и только тогда, 
+	 * когда фрагмент {@code f} входит в множество.
+	 */
+	private final long[] bits;
+	
+	/** Количество элементов множества. */
+	private int size = 0;
+	
+	/** Хэш-код множества (сумма его элементов, как и для прочих реализаций {@link java.util.Set}). */
+	private int hashCode = 0;
+	
+	/**
+	 * Создает пустое множество, которое может содержать фрагменты состояний указанной длины.
+	 * 
+	 * @param alphabet
+	 *    используемый алфавит состояний
+	 * @param length
+	 *    длина фрагментов, которые может содержать множество
+	 */
+	public FragmentSet(String alphabet, int length) {
+		super();
+		this.alphabet = alphabet;
+		this.fragmentLength = length;
+		
+		int maxSize = 1;
+		for (int i = 0; i < length; i++) {
+			maxSize *= alphabet.length();
+		}
+		this.maxSize = maxSize;
+		this.bits = new long[(maxSize + 63) / 64];
+	}
+	
+	/**
+	 * Создает множество фрагментов по битовой маске.
+	 * 
+	 * @param alphabet
+	 *    используемый алфавит состояний
+	 * @param length
+	 *    длина фрагментов, которые может содержать множество
+	 * @param bits
+	 *    битовая маска множества (см. {@link #getBits()}); биты, не соответствующие 
+	 *    фрагментам заданной длины, игнорируются
+	 */
+	protected FragmentSet(String alphabet, int length, long[] bits) {
+		this(alphabet, length);
+		for (int i = 0; i < this.bits.length; i++) {
+			this.bits[i] = (i < bits.length) ? bits[i] & mask(i) : 0L;
+			size += Long.bitCount(this.bits[i]);
+		}
+		for (int fragment : this) {
+			hashCode += fragment;
+		}
+	}
+	
+	/**
+	 * Создает множество фрагментов с заданными элементами.
+	 * 
+	 * @param alphabet
+	 *    используемый алфавит состояний
+	 * @param fragments
+	 *    коллекция фрагментов
+	 * 
+	 * @throws IllegalArgumentException
+	 *    если выполнено хотя бы одно из условий:
+	 *    <ul>
+	 *    <li>коллекция фрагментов пуста;
+	 *    <li>существуют фрагменты различной длины;
+	 *    <li>в какой-либо из фрагментов входит символ, отстутствующий в алфавите.
+	 *    </ul>
+	 */
+	public FragmentSet(String alphabet, Collection<String> fragments) {
+		this(alphabet, length(fragments));
+		
+		for (String fragmentStr : fragments) {
+			if (fragmentLength != fragmentStr.length()) {
+				throw new IllegalArgumentException("All fragments should have same length");
+			}
+			
+			int val = encode(fragmentStr);
+			if (val < 0) throw new IllegalArgumentException("Invalid fragment: " + fragmentStr);
+			this.add(val);
+		}
+	}
+	
+	public FragmentSet(String alphabet, String fragment) {
+		this(alphabet, Collections.singleton(fragment));
+	}
+	
+	/**
+	 * Копирующий конструктор.
+	 * 
+	 * @param other
+	 *    множество фргментов
+	 */
+	public FragmentSet(FragmentSet other) {
+		super();
+		this.alphabet = other.alphabet;
+		this.fragmentLength = other.fragmentLength;
+		this.maxSize = other.maxSize;
+		this.bits = other.bits.clone();
+		this.size = other.size;
+		this.hashCode = other.hashCode;
+	}
+	
+	/**
+	 * Определяет длину фрагментов в непустой коллекции.
+	 * 
+	 * @param fragments
+	 *    коллекция фрагментов
+	 * @return
+	 *    длина первого фрагмента в коллекции
+	 * @throws IllegalArgumentException
+	 *    если коллекция фрагментов пуста
+	 */
+	private static int length(Collection<String> fragments) {
+		if (fragments.isEmpty()) {
+			throw new IllegalArgumentException("At least 1 fragment needed to initialize set");
+		}
+		return fragments.iterator().next().length();
+	}
+	
+	/**
+	 * Возвращает маску допустимых битов для элемента массива {@link #bits}.
+	 * 
+	 * @param word
+	 *    индекс элемента массива
+	 * @return
+	 *    битовая маска, в которой установлены биты, соответствующие фрагментам фиксированной длины
+	 */
+	private long mask(int word) {
+		final int rest = maxSize - 64 * word;
+		return (rest >= 64) ? -1L : (1L << rest) - 1;
+	}
+	
+	/**
+	 * Переводит фрагмент из текстового вида в целое число.
+	 * 
+	 * @param str
+	 *    фрагмент
+	 * @return
+	 *    целочисленное представление фрагмента или {@code -1}, если в фрагменте есть символ, 
+	 *    отсутствующий в алфавите состояний {@link #getStates()} 
+	 */
+	private int encode(String str) {
+		int index = 0;
+		for (int i = 0; i < str.length(); i++) {
+			int pos = alphabet.indexOf(str.charAt(i));
+			if (pos < 0) return -1;
+			
+			index = index * alphabet.length() + pos;
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Переводит отдельный элемент множества в текстовый вид.
+	 * 
+	 * @param index
+	 *    элемент, который надо перевести
+	 * @return
+	 *    текстовое представление элемента
+	 */
+	private String decode(int index) {
+		String repr = "";
+		int val = index;
+		for (int i = 0; i < fragmentLength; i++) {
+			repr = alphabet.charAt(val % alphabet.length()) + repr;
+			val /= alphabet.length();
+		}
+		return repr;
+	}
+	
+	/**
+	 * Возвращает битовую маску множества, позволяющую идентифицировать его среди всех
+	 * множеств фрагментов с фиксированной длиной. Фрагмент {@code f} входит в множество
+	 * тогда и только тогда, когда установлен бит {@code f % 64} в элементе маски 
+	 * с индексом {@code f / 64}.
+	 * 
+	 * @return
+	 *    копия битовой маски
+	 */
+	protected long[] getBits() {
+		return bits.clone();
+	}
+	
+	/**
+	 * Возвращает количество различных фрагментов фиксированной длины, т.е. максимальный
+	 * размер множества.
+	 * 
+	 * @return
+	 *    максимальный размер множества
+	 */
+	public int maxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Добавляет фрагмент в множество или удаляет его из множества.
+	 * 
+	 * @param fragment
+	 *    целочисленное представление фрагмента
+	 */
+	private void flip(int fragment) {
+		final long bit = 1L << (fragment & 63);
+		bits[fragment >>> 6] ^= bit;
+		if ((bits[fragment >>> 6] & bit) != 0) {
+			size++;
+			hashCode += fragment;
+		} else {
+			size--;
+			hashCode -= fragment;
+		}
+	}
+	
+	/**
+	 * Проверяет, является ли объект допустимым элементом множества.
+	 * 
+	 * @param o
+	 *    объект
+	 * @return
+	 *    {@code true}, если объект является целочисленным представлением фрагмента фиксированной длины
+	 */
+	private boolean isFragment(Object o) {
+		if (!(o instanceof Integer)) return false;
+		final int fragment = (Integer) o;
+		return (fragment >= 0) && (fragment < maxSize);
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		if (!isFragment(o)) return false;
+		final int fragment = (Integer) o;
+		return (bits[fragment >>> 6] & (1L << (fragment & 63))) != 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalArgumentException
+	 *    если элемент не является целочисленным представлением фрагмента фиксированной длины
+	 */
+	@Override
+	public boolean add(Integer fragment) {
+		if (!isFragment(fragment)) {
+			throw new IllegalArgumentException("Invalid fragment: " + fragment);
+		}
+		if (contains(fragment)) return false;
+		flip(fragment);
+		return true;
+	}
+	
+	@Override
+	public boolean remove(Object o) {
+		if (!contains(o)) return false;
+		flip((Integer) o);
+		return true;
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(bits, 0L);
+		size = 0;
+		hashCode = 0;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			
+			/** Следующий элемент множества. */
+			private int next = nextFragment(0);
+			
+			/** Последний возвращенный элемент. */
+			private int last = -1;
+			
+			@Override
+			public boolean hasNext() {
+				return (next >= 0);
+			}
+			
+			@Override
+			public Integer next() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = nextFragment(next + 1);
+				return last;
+			}
+			
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				flip(last);
+				last = -1;
+			}
+		};
+	}
+	
+	/**
+	 * Возвращает наименьший элемент множества, не меньший заданного.
+	 * 
+	 * @param from
+	 *    нижняя граница
+	 * @return
+	 *    элемент множества или {@code -1}, если такого элемента нет
+	 */
+	private int nextFragment(int from) {
+		int word = from >>> 6;
+		if (word >= bits.length) return -1;
+		
+		long w = bits[word] & (-1L << (from & 63));
+		while (w == 0) {
+			if (++word >= bits.length) return -1;
+			w = bits[word];
+		}
+		return 64 * word + Long.numberOfTrailingZeros(w);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Два множества фрагментов равны, если они содержат фрагменты одинаковой длины 
+	 * из одного алфавита и их битовые маски совпадают.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof FragmentSet)) return super.equals(o);
+		
+		FragmentSet other = (FragmentSet) o;
+		return (hashCode == other.hashCode) && (size == other.size) 
+				&& (fragmentLength == other.fragmentLength) && alphabet.equals(other.alphabet)
+				&& Arrays.equals(bits, other.bits);
+	}
+	
+	/**
+	 * Возвращает алфавит состояний, используемый в этом множестве. Алфавит состоит из 
+	 * уникальных символов, каждый из которых соответствует отдельному состоянию.
+	 * 
+	 * @return
+	 *    алфавит состояний
+	 */
+	public String getStates() {
+		return alphabet;
+	}
+	
+	/**
+	 * Возвращает длину фрагментов, содержащихся во множестве.
+	 * 
+	 * @return
+	 *    длина фрагментов
+	 */
+	public int getFragmentLength() {
+		return fragmentLength;
+	}
+	
+	/**
+	 * Вычисляет суммарную концентрацию цепочек из этого множества в заданной
+	 * строке состояний.
+	 * 
+	 * @param seq
+	 *    строка состояний
+	 * @return
+	 *    концентрация цепочек из множества (вещественное число 
+	 *    от <code>0.0</code> до <code>1.0</code>) 
+	 */
+	public double content(byte[] seq) {
+		final int patternLength = getFragmentLength();
+		final int alphabetLength = getStates().length();
+		
+		int count = 0;
+		// Индекс подстроки, оканчивающейся в позиции pos, вычисляется скользящим окном;
+		// битовая маска множества используется как таблица поиска
+		int hash = 0;
+		for (int pos = 0; pos < seq.length; pos++) {
+			hash = (hash * alphabetLength + seq[pos]) % maxSize;
+			if ((pos >= patternLength - 1) && ((bits[hash >>> 6] & (1L << (hash & 63))) != 0))
+				count++;
+		}
+		
+		return 1.0 * count/(seq.length - patternLength + 1);
+	}
+	
+	/**
+	 * Подсчитывает медианную концентрацию цепочек из этого множества
+	 * в строках из определенной выборки.
+	 * 
+	 * @param set
+	 *    выборка строк наблюдаемых состояний
+	 * @return 
+	 *    медианная концентрация (вещественное число 
+	 *    от <code>0.0</code> до <code>1.0</code>)
+	 */
+	public double medianContent(SequenceSet set) {
+		double[] vars = new double[set.size()];
+		for (int i = 0; i < set.size(); i++)
+			vars[i] = content(set.observed(i));
+		Arrays.sort(vars);
+		return vars[vars.length / 2];
+	}
+	
+	/**
+	 * Возвращает коллекцию всех непустых собственных подмножеств заданного множества 
+	 * цепочек состояний. Если множество содержит все цепочки фиксированной длины, то из каждой
+	 * пары подмножеств, дополняющих друг друга, в коллекцию входит только одно.
+	 * 
+	 * <p>Подмножества не хранятся в памяти, а строятся при переборе элементов коллекции;
+	 * коллекция не изменяется при изменении этого множества.
+	 * 
+	 * @return
+	 *    коллекция подмножеств множества
+	 * @throws IllegalArgumentException
+	 *    если множество содержит больше 62 элементов
+	 */
+	public Collection<FragmentSet> subsets() {
+		return new Subsets(this);
+	}
+	
+	/**
+	 * Вычисляет расстояние Хэмминга между двумя множествами цепочек.
+	 * Расстояние Хэмминга равно числу элементов в симметрической разнице между
+	 * двумя множествами:
+	 * <pre>
+	 * FragmentSet x, y;
+	 * FragmentSet diff = new FragmentSet(x).removeAll(y);
+	 * diff.addAll(new FragmentSet(y).removeAll(x));
+	 * int distance = diff.size();
+	 * </pre>
+	 * 
+	 * @param other
+	 *    множество цепочек, расстояние для которого надо определить
+	 * @return
+	 *    расстояние Хэмминга между этой цепочкой и другой
+	 */
+	public int distance(FragmentSet other) {
+		final int length = Math.max(bits.length, other.bits.length);
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			long x = (i < bits.length) ? bits[i] : 0L;
+			long y = (i < other.bits.length) ? other.bits[i] : 0L;
+			count += Long.bitCount(x ^ y);
+		}
+		return count;
+	}
+	
+	/**
+	 * Возвращает дополнение к этому множеству относительно множества
+	 * содержащего все цепочки состояний фиксированной длины из {@link #getStates()}.
+	 * 
+	 * @return
+	 *    дополнение к этому множеству
+	 */
+	public FragmentSet complmentary() {
+		long[] complementary = new long[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			complementary[i] = ~bits[i];
+		}
+		return new FragmentSet(getStates(), getFragmentLength(), complementary);
+	}
+		
+	@Override
+	public String toString() {
+		String result = "";
+		for (int elem: this)
+			result += (decode(elem) + ",");
+		if (result.length() > 0)
+			result = result.substring(0, result.length() - 1);
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import ua.kiev.icyb.bio.alg.FitnessCache;
+import ua.kiev.icyb.bio.alg.Organism;
+
+/**
+ * Оболочка для множества цепочек состояний, позволяющая использовать его
+ * в генетическом алгоритме оптимизации. 
+ */
+public class FragmentSetWrapper extends FragmentSet implements Organism {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Генерирует случайный набор цепочек состояний.
+	 * 
+	 * @param entropy
+	 *    объект, использующийся для вычисления функционала качества набора
+	 * @param seqLength
+	 *    длина цепочек в наборе
+	 * @return
+	 *    случайное множество цепочек состояний
+	 */
+	public static FragmentSetWrapper random(RuleEntropy entropy, int seqLength) {
+		return random(entropy, seqLength, ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Генерирует случайный набор цепочек состояний с помощью заданного генератора
+	 * случайных чисел.
+	 * 
+	 * @param entropy
+	 *    объект, использующийся для вычисления функционала качества набора
+	 * @param seqLength
+	 *    длина цепочек в наборе
+	 * @param random
+	 *    генератор случайных чисел
+	 * @return
+	 *    случайное множество цепочек состояний
+	 */
+	public static FragmentSetWrapper random(RuleEntropy entropy, int seqLength, Random random) {
+		return new FragmentSetWrapper(entropy, seqLength, new long[0], random);
+	}
+	
+	/**
+	 * Объект, использующийся для вычисления функционала качества набора.
+	 */
+	private final RuleEntropy entropy;
+	
+	/**
+	 * Предикат, соответствующий набору. Вычисляется при первом обращении, поскольку
+	 * требует нахождения медианной концентрации цепочек на всей выборке.
+	 */
+	private transient volatile ContentPartitionRule rule;
+	
+	public FragmentSetWrapper(FragmentSetWrapper other) {
+		super(other);
+		this.entropy = other.entropy;
+	}
+	
+	/**
+	 * Создает набор строк по заданной битовой маске.
+	 * 
+	 * @param entropy
+	 *    объект, использующийся для вычисления функционала качества набора
+	 * @param seqLength
+	 *    длина строк, входящих в набор
+	 * @param bits
+	 *    битовая маска набора среди всех цепочек той же длины из того же алфавита (см. {@link #getBits()});
+	 *    если маска пуста, набор выбирается случайным образом
+	 * @param random
+	 *    генератор случайных чисел, используемый для выбора случайного набора
+	 */
+	private FragmentSetWrapper(RuleEntropy entropy, int seqLength, long[] bits, Random random) {
+		super(entropy.getSet().observedStates(), seqLength, bits);
+		this.entropy = entropy;
+		
+		while (isEmpty()) {
+			// Пустой набор нас не устраивает; выбираем произвольный другой
+			for (int i = 0; i < maxSize(); i++)
+				if (random.nextDouble() < 0.5) {
+					this.add(i);
+				}
+		}
+	}
+	
+	@Override
+	public Organism mutate(double p) {
+		return mutate(p, ThreadLocalRandom.current());
+	}
+	
+	@Override
+	public Organism mutate(double p, Random random) {
+		long[] bits = getBits();
+		for (int i = 0; i < maxSize(); i++)
+			if (random.nextDouble() < p) {
+				bits[i >>> 6] ^= (1L << (i & 63)); // добавить строку в набор или убрать ее
+			}
+			
+		return new FragmentSetWrapper(entropy, getFragmentLength(), bits, random);
+	}
+	
+	@Override
+	public Organism crossover(Organism other) {
+		return crossover(other, ThreadLocalRandom.current());
+	}
+	
+	@Override
+	public Organism crossover(Organism other, Random random) {
+		FragmentSetWrapper otherWrapper = (FragmentSetWrapper)other;
+		long[] bits = getBits(), otherBits = otherWrapper.getBits();
+		
+		for (int word = 0; word < bits.length; word++) {
+			// Каждый бит с вероятностью 0.5 берется из другого набора
+			long mask = random.nextLong();
+			bits[word] = (bits[word] & ~mask) | (otherBits[word] & mask);
+		}
+		return new FragmentSetWrapper(entropy, getFragmentLength(), bits, random);
+	}
+	
+	/**
+	 * Возвращает предикат, сравнивающий концентрацию цепочек из этого набора
+	 * с ее медианным значением на выборке. Предикат строится один раз; набор
+	 * не должен изменяться после первого вызова метода.
+	 * 
+	 * @return
+	 *    предикат, функционал качества которого является функционалом качества набора
+	 */
+	private ContentPartitionRule rule() {
+		ContentPartitionRule rule = this.rule;
+		if (rule == null) {
+			rule = new ContentPartitionRule(this, 0.0);
+			rule.setThreshold(entropy.medianContent(this));
+			this.rule = rule;
+		}
+		return rule;
+	}
+	
+	/**
+	 * Возвращает ключ для кэширования функционала качества набора. Ключ не зависит
+	 * от объекта, вычисляющего функционал, и совпадает с ключами предикатов
+	 * в других алгоритмах построения предикатов.
+	 * 
+	 * @return
+	 *    ключ для кэша значений функционала качества
+	 */
+	public FitnessCache.Key cacheKey() {
+		return new FitnessCache.Key(entropy.fingerprint(), entropy.getOrder(), rule());
+	}
+	
+	@Override
+	public double fitness() {
+		double fitness = entropy.fitness(rule());
+		return fitness;
+	}
+
+}
@@ -0,0 +1,424 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Бинарное дерево предикатов, которое может использоваться для построения
+ * областей компетентности для композиций алгоритмов распознавания.
+ */
+public class PartitionRuleTree implements Serializable, Representable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Максимальное число правил в дереве.
+	 */
+	private static final int MAX_RULES = 20;
+	
+	/**
+	 * Минимальное число строк выборки, обрабатываемых одним заданием при разбиении выборки.
+	 */
+	private static final int MIN_CHUNK_SIZE = 256;
+	
+	/**
+	 * Дерево предикатов, скомпилированное в плоскую таблицу переходов. Для каждого правила
+	 * хранятся индексы правил, которые следует проверить следующими в зависимости от значения
+	 * предиката; таким образом, для строки проверяются только правила на пути от корня дерева
+	 * к листу.
+	 */
+	private static class DecisionTable {
+		
+		/** Правила дерева. */
+		private final PartitionRule[] rules;
+		
+		/** Индекс первого проверяемого правила или {@code -1}, если дерево пустое. */
+		private final int first;
+		
+		/** Индексы правил, проверяемых после истинного значения предиката ({@code -1} — лист). */
+		private final int[] onTrue;
+		
+		/** Индексы правил, проверяемых после ложного значения предиката ({@code -1} — лист). */
+		private final int[] onFalse;
+		
+		public DecisionTable(PartitionRule[] rules, int[] parts, int nRules) {
+			this.rules = Arrays.copyOf(rules, nRules);
+			this.onTrue = new int[nRules];
+			this.onFalse = new int[nRules];
+			
+			this.first = next(parts, nRules, 0, -1);
+			for (int r = 0; r < nRules; r++) {
+				// Правило r разбивает часть parts[r] на части parts[r] и r + 1
+				onTrue[r] = next(parts, nRules, r + 1, r);
+				onFalse[r] = next(parts, nRules, parts[r], r);
+			}
+		}
+		
+		/**
+		 * Находит первое правило после заданного, разбивающее определенную часть.
+		 */
+		private static int next(int[] parts, int nRules, int part, int after) {
+			for (int r = after + 1; r < nRules; r++) {
+				if (parts[r] == part) return r;
+			}
+			return -1;
+		}
+		
+		/**
+		 * Определяет часть разбиения, содержащую строку наблюдаемых состояний.
+		 * 
+		 * @param seq
+		 *    строка наблюдаемых состояний
+		 * @return
+		 *    индекс части разбиения
+		 */
+		public int route(byte[] seq) {
+			int part = 0;
+			for (int r = first; r >= 0; ) {
+				if (rules[r].test(seq)) {
+					part = r + 1;
+					r = onTrue[r];
+				} else {
+					r = onFalse[r];
+				}
+			}
+			return part;
+		}
+	}
+	
+	/**
+	 * Задание для определения частей разбиения, содержащих строки из непрерывного
+	 * диапазона выборки.
+	 */
+	private static class RouteTask implements Callable<Void> {
+		
+		private final DecisionTable table;
+		private final SequenceSet set;
+		private final int[] output;
+		private final int from, to;
+		
+		public RouteTask(DecisionTable table, SequenceSet set, int[] output, int from, int to) {
+			this.table = table;
+			this.set = set;
+			this.output = output;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Void call() {
+			for (int i = from; i < to; i++) {
+				output[i] = table.route(set.observed(i));
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Массив правил в порядке построения дерева.
+	 */
+	private final PartitionRule[] rules = new PartitionRule[MAX_RULES];
+	/**
+	 * Массив, <code>i</code>-й элемент которого равен номеру части выборки, которую разбивает
+	 * <code>i</code>-е правило.
+	 */
+	private final int[] parts = new int[MAX_RULES];
+	
+	/**
+	 * Число правил в этом дереве.
+	 */
+	private int nRules = 0;
+	
+	/** Таблица переходов; строится при первом обращении после изменения дерева. */
+	private transient DecisionTable table = null;
+	
+	/** Терминальные вершины дерева разбиения, упорядоченные по индексам. */
+	private transient List<Partition> leaves = null;
+	
+	/**
+	 * Создает пустое дерево предикатов.
+	 */
+	public PartitionRuleTree() {
+	}
+	
+	/**
+	 * Возвращает число частей, на которые это дерево делит пространство
+	 * строк наблюдаемых состояний. Это число на единицу больше количество правил
+	 * в дереве.
+	 * 
+	 * @return
+	 *    число частей разбиения
+	 */
+	public int size() {
+		return nRules + 1;
+	}
+	
+	/**
+	 * Возвращает правило, входящее в это дерево.
+	 * 
+	 * @param index
+	 *    индекс правила (с отсчетом от нуля)
+	 * @return
+	 *    правило с заданным индексом
+	 */
+	public PartitionRule rule(int index) {
+		if (index >= size()) {
+			throw new IndexOutOfBoundsException("Invalid index: " + index);
+		}
+		return this.rules[index];
+	}
+	
+	/**
+	 * Возовращает корневую вершину этого дерева разбиения. При каждом вызове
+	 * дерево разбиения строится заново, так что его изменение не затрагивает
+	 * это дерево предикатов.
+	 * 
+	 * @return
+	 *    корень дерева разбиения
+	 */
+	public synchronized Partition root() {
+		Partition root = new Partition();
+		
+		for (int i = 0; i < this.size() - 1; i++) {
+			for (Partition part : root.leaves()) {
+				if (part.index() == this.parts[i]) {
+					part.split(this.rule(i));
+					break;
+				}
+			}
+		}
+		
+		return root;
+	}
+	
+	/**
+	 * Возвращает терминальные вершины дерева разбиения.
+	 * 
+	 * @return
+	 *    список терминальных вершин. Порядок перечисления вершин соответствует их индексам.
+	 */
+	public synchronized List<Partition> leaves() {
+		if (leaves == null) {
+			leaves = this.root().leaves();
+			Collections.sort(leaves, Partition.INDEX_SORTER);
+		}
+		return new ArrayList<Partition>(leaves);
+	}
+	
+	/**
+	 * Возвращает таблицу переходов для этого дерева, при необходимости строя ее.
+	 * 
+	 * @return
+	 *    таблица переходов
+	 */
+	private synchronized DecisionTable table() {
+		if (table == null) {
+			table = new DecisionTable(rules, parts, nRules);
+		}
+		return table;
+	}
+	
+	/**
+	 * Сбрасывает структуры, построенные на основе правил дерева.
+	 */
+	private synchronized void invalidate() {
+		table = null;
+		leaves = null;
+	}
+	
+	/**
+	 * Добавляет в дерево новое решающее правило.
+	 * 
+	 * @param rule 
+	 *    добавляемое правило
+	 * @param part
+	 *    индекс (с отсчетом от нуля) части выборки, которое правило разбивает
+	 */
+	public void add(PartitionRule rule, int part) {
+		if (part > nRules) {
+			throw new IndexOutOfBoundsException("Invalid number of part to split: " + part);
+		}
+		
+		parts[nRules] = part;
+		rules[nRules] = rule;
+		nRules++;
+		invalidate();
+	}
+	
+	/**
+	 * Возвращает часть разбиения, порождаемого этим деревом, которая содержит
+	 * заданную строку состояний.
+	 * 
+	 * @param seq
+	 *    строка наблюдаемых состояний
+	 * @return
+	 *    индекс (с отсчетом от нуля) части разбиения, содержащей строку
+	 */
+	public int getPart(byte[] seq) {
+		return table().route(seq);
+	}
+	
+	/**
+	 * Определяет части разбиения, содержащие строки выборки, за один проход по выборке.
+	 * 
+	 * @param set
+	 *    выборка для разбиения
+	 * @return
+	 *    индексы (с отсчетом от нуля) частей разбиения для всех строк выборки
+	 */
+	public int[] getParts(SequenceSet set) {
+		int[] result = new int[set.size()];
+		new RouteTask(table(), set, result, 0, set.size()).call();
+		return result;
+	}
+	
+	/**
+	 * Определяет части разбиения, содержащие строки выборки, за один проход по выборке.
+	 * Строки выборки обрабатываются параллельно с помощью стандартного пула потоков.
+	 * 
+	 * @param set
+	 *    выборка для разбиения
+	 * @param env
+	 *    окружение, пул потоков которого используется для вычислений
+	 * @return
+	 *    индексы (с отсчетом от нуля) частей разбиения для всех строк выборки
+	 */
+	public int[] getParts(SequenceSet set, Env env) {
+		final int size = set.size();
+		final DecisionTable table = table();
+		int[] result = new int[size];
+		
+		// Несколько заданий на поток для балансировки нагрузки
+		int chunkSize = (size + 4 * env.threadCount() - 1) / (4 * env.threadCount());
+		chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+		
+		List<RouteTask> tasks = new ArrayList<RouteTask>();
+		for (int from = 0; from < size; from += chunkSize) {
+			tasks.add(new RouteTask(table, set, result, from, Math.min(from + chunkSize, size)));
+		}
+		
+		try {
+			for (Future<Void> future : env.executor().invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			env.exception(e);
+		} catch (ExecutionException e) {
+			env.exception(e);
+		}
+		return result;
+	}
+	
+	/**
+	 * Разбивает выборку на части согласно этому дереву разбиения.
+	 * 
+	 * @param set
+	 *    выборка для разбиения
+	 * @return
+	 *    части выборки; {@code i}-й элемент массива содержит строки, попадающие
+	 *    в {@code i}-ю часть разбиения
+	 */
+	public SequenceSet[] split(SequenceSet set) {
+		return split(set, getParts(set));
+	}
+	
+	/**
+	 * Разбивает выборку на части согласно этому дереву разбиения. Части разбиения
+	 * для строк выборки определяются параллельно с помощью стандартного пула потоков.
+	 * 
+	 * @param set
+	 *    выборка для разбиения
+	 * @param env
+	 *    окружение, пул потоков которого используется для вычислений
+	 * @return
+	 *    части выборки; {@code i}-й элемент массива содержит строки, попадающие
+	 *    в {@code i}-ю часть разбиения
+	 */
+	public SequenceSet[] split(SequenceSet set, Env env) {
+		return split(set, getParts(set, env));
+	}
+	
+	/**
+	 * Разбивает выборку на части согласно заданным индексам частей.
+	 * 
+	 * @param set
+	 *    выборка для разбиения
+	 * @param parts
+	 *    индексы частей разбиения для всех строк выборки
+	 * @return
+	 *    части выборки
+	 */
+	private SequenceSet[] split(SequenceSet set, int[] parts) {
+		boolean[][] selectors = new boolean[this.size()][parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			selectors[parts[i]][i] = true;
+		}
+		
+		SequenceSet[] subsets = new SequenceSet[this.size()];
+		for (int i = 0; i < subsets.length; i++) {
+			subsets[i] = set.filter(selectors[i]);
+		}
+		return subsets;
+	}
+	
+	/**
+	 * Возвращает метки для строк выборки согласно этому дереву разбиения.
+	 * 
+	 * @param set
+	 *    выборка для разбиения
+	 * @return
+	 *    метки для всех строк выборки, соответствующие номеру части разбиения, в которую
+	 *    попадает конкретная строка
+	 */
+	public Map<String, Integer> getLabels(SequenceSet set) {
+		final int[] parts = getParts(set);
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = 0; i < parts.length; i++) {
+			labels.put(set.id(i), parts[i]);
+		}
+		
+		return labels;
+	}
+	
+	/**
+	 * Обрезает дерево, удаляя из него правила, начиная с последнего.
+	 * 
+	 * @param newSize
+	 *    новый размер дерева, то есть количество правил в нем
+	 */
+	public void trim(int newSize) {
+		if (newSize <= 0) {
+			throw new IllegalArgumentException("Tree size must be positive: " + newSize);
+		}
+		
+		for (int i = newSize; i < nRules; i++) {
+			rules[i] = null; // Освободить память
+		}
+		this.nRules = Math.min(nRules, newSize);
+		invalidate();
+	}
+	
+	public String repr() {
+		String str = "";
+		for (int i = 0; i < nRules; i++)
+			str += Messages.format("tree.repr_rule", i + 1, parts[i] + 1, rules[i]) + "\n";
+		if (nRules == 0) {
+			str += Messages.getString("tree.no_rules");
+		}
+		return str;
+	}
+}
@@ -0,0 +1,439 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.AbstractLaunchable;
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.alg.FitnessCache;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Алгоритм фильтрации наборов цепочек наблюдаемых состояний для использования в предикатах
+ * на основе последовательного наращивания размера множеств цепочек. По своей сути
+ * аналогичен алгоритму последовательного добавления признаков (ADD).
+ */
+public class RuleAddAlgorithm extends AbstractLaunchable implements Representable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Промежуточные данные для множества цепочек, позволяющие вычислять функционал качества
+	 * для множеств, полученных добавлением к нему одной цепочки, без повторного подсчета.
+	 */
+	private static class Combination {
+		
+		/** Множество цепочек, из которого получено это множество; может равняться {@code null}. */
+		public final FragmentSet parent;
+		
+		/** Цепочка, добавленная к родительскому множеству. */
+		public final int base;
+		
+		/** 
+		 * Битовая маска строк выборки, для которых концентрация цепочек из множества 
+		 * превышает медианную.
+		 */
+		public BitSet mask;
+		
+		/** 
+		 * Количества вхождений цепочек из множества в строки выборки; хранятся только
+		 * для множеств, отобранных на текущей итерации.
+		 */
+		public int[] occurrences;
+		
+		/**
+		 * Статистика для части выборки, заданной маской {@link #mask}; хранится только
+		 * для множеств, отобранных на текущей итерации.
+		 */
+		public RuleEntropy.PartStatistics statistics;
+		
+		public Combination(FragmentSet parent, int base) {
+			this.parent = parent;
+			this.base = base;
+		}
+	}
+	
+	/**
+	 * Максимальный размер множества цепочек состояний, рассматриваемый алгоритмом.
+	 */
+	public int maxSize;
+	
+	/**
+	 * Максимальное количество оптимальных множеств каждой длины, на основе которых
+	 * строятся множества большего размера.
+	 */
+	public int optCombinations;
+	
+	/**
+	 * Порядок марковских цепей, используемый при вычислении функционала качества для
+	 * множеств цепочек.
+	 */
+	public int order;
+	
+	/**
+	 * Выборка, на основании которой считаются значения функционала качества.
+	 */
+	public SequenceSet set;
+	
+	/**
+	 * Множество цепочек состояний, подмножества которого рассматриваются алгоритмом.
+	 */
+	public FragmentSet bases;
+	
+	/**
+	 * Имя файла, в который сохраняются отобранные множества цепочек. Цепочки сохраняются
+	 * после выполнения каждой итерации алгоритма.
+	 */
+	public String setsFile;
+	
+	/**
+	 * Имя файла, в котором сохраняется кэш значений функционала качества предикатов
+	 * (см. {@link FitnessCache#open(ua.kiev.icyb.bio.Env, String, int)}). Кэш может
+	 * использоваться совместно несколькими алгоритмами; если значение равно {@code null},
+	 * кэш не используется.
+	 */
+	public String cacheFile = null;
+	
+	/**
+	 * Максимальное количество значений функционала качества, хранящихся в кэше.
+	 */
+	public int cacheCapacity = 100000;
+	
+	/**
+	 * Значения функционала качества для множеств цепочек.
+	 * Множествам цепочек размером {@code i} соответствует {@code i}-й элемент массива.
+	 */
+	private Map<FragmentSet, Double>[] fitness = null;
+	
+	/**
+	 * Текущий размер множеств цепочек.
+	 */
+	private int currentSize = 1;
+	
+	/** Промежуточные данные для отобранных и оцениваемых множеств цепочек. */
+	private transient Map<FragmentSet, Combination> combinations;
+	
+	/** Кэш значений функционала качества; {@code null}, если кэш не используется. */
+	private transient FitnessCache cache;
+	
+	@SuppressWarnings("unchecked")
+	protected void doRun() {
+		getEnv().debug(1, reprHeader());
+		
+		RuleEntropy ruleEntropy = new RuleEntropy(set, order);
+		combinations = new HashMap<FragmentSet, Combination>();
+		cache = (cacheFile == null) ? null : FitnessCache.open(getEnv(), cacheFile, cacheCapacity);
+		
+		if (fitness == null) {
+			fitness = new Map[maxSize + 1];
+			for (int i = 0; i < maxSize + 1; i++) {
+				fitness[i] = new HashMap<FragmentSet, Double>();
+			}
+			fitness[0].put(new FragmentSet(set.observedStates(), bases.getFragmentLength()), 0.0);
+		}
+		
+		for (int count = currentSize; count <= maxSize; count++) {
+			this.currentSize = count;
+			
+			if (fitness[count].isEmpty()) {
+				for (FragmentSet comb: fitness[count - 1].keySet())
+					for (int base: bases) 
+						if (!comb.contains(base)) {
+							FragmentSet newComb = new FragmentSet(comb);
+							newComb.add(base);
+							fitness[count].put(newComb, Double.NaN);
+							if (!combinations.containsKey(newComb)) {
+								combinations.put(newComb, new Combination(comb, base));
+							}
+						}
+			}
+			getEnv().debug(1, Messages.format("add.process", fitness[count].size(), count));
+			
+			evaluate(fitness[count], ruleEntropy);
+			fitness[count] = trim(fitness[count], optCombinations);
+			retain(fitness[count].keySet(), ruleEntropy);
+			getEnv().debug(1, Messages.format("add.trimmed", fitness[count].keySet()));
+			
+			save();
+			saveSets();
+			if (cache != null) {
+				cache.save(getEnv(), cacheFile);
+			}
+		}
+	}
+	
+	/**
+	 * Фильтрует набор множеств цепочек, оставляя обладающие наибольшим значением
+	 * функционала качества.
+	 * 
+	 * @param data 
+	 *    отображение, связывающее множества цепочек и значения функционала качества
+	 * @param maxCount
+	 *    максимальный размер сокращенного отображения
+	 * @return 
+	 *    сокращенное отображение, содержащее не более {@code maxCount} элементов
+	 */
+	private Map<FragmentSet, Double> trim(Map<FragmentSet, Double> data, int maxCount) {
+		if (data.size() <= maxCount) 
+			return data;
+		
+		Map<FragmentSet, Double> trimmedData = new HashMap<FragmentSet, Double>();
+		Double[] values = data.values().toArray(new Double[0]);
+		Arrays.sort(values);
+		double threshold = values[values.length - maxCount];
+		for (Entry<FragmentSet, Double> entry: data.entrySet())
+			if (entry.getValue() >= threshold)
+				trimmedData.put(entry.getKey(), entry.getValue());
+		return trimmedData;
+	}
+	
+	/**
+	 * Вычисляет значения функционала качества для заданных цепочек.
+	 * 
+	 * @param entropy
+	 *    объект, используемый для вычисления функционала
+	 * @param combinations
+	 *    отображение, связывающее множества цепочек и значения функционала качества;
+	 *    множествам с невычисленным функционалом соответствуют значения {@link Double#NaN}. 
+	 */
+	private void evaluate(Map<FragmentSet, Double> combinations, RuleEntropy entropy) {
+		ExecutorService executor = getEnv().executor();
+		List<RunnableTask> tasks = new ArrayList<RunnableTask>();
+		for (Map.Entry<FragmentSet, Double> entry: combinations.entrySet()) {
+			if (entry.getValue().isNaN()) {
+				if (!this.combinations.containsKey(entry.getKey())) {
+					// Множество было сформировано до восстановления алгоритма
+					this.combinations.put(entry.getKey(), new Combination(null, -1));
+				}
+				tasks.add(new RunnableTask(entropy, entry));
+			}
+		}
+		
+		try {
+			final List<Future<Void>> futures = executor.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			getEnv().exception(e);
+		} catch (ExecutionException e) {
+			getEnv().exception(e);
+		}
+	}
+	
+	/**
+	 * Подсчитывает количества вхождений цепочек из множества в строки выборки. Если известны
+	 * количества вхождений для родительского множества, к ним добавляются вхождения
+	 * добавленной цепочки.
+	 * 
+	 * @param index
+	 *    индекс вхождений цепочек
+	 * @param comb
+	 *    множество цепочек
+	 * @param data
+	 *    промежуточные данные для множества
+	 * @return
+	 *    количества вхождений цепочек для всех строк выборки
+	 */
+	private int[] occurrences(FragmentIndex index, FragmentSet comb, Combination data) {
+		final Combination parent = (data.parent != null) ? combinations.get(data.parent) : null;
+		if ((parent != null) && (parent.occurrences != null)) {
+			return index.occurrences(parent.occurrences, data.base);
+		}
+		return index.occurrences(comb);
+	}
+	
+	/**
+	 * Возвращает статистику для родительского множества, если она известна.
+	 * 
+	 * @param data
+	 *    промежуточные данные для множества
+	 * @return
+	 *    статистика для родительского множества или {@code null}
+	 */
+	private RuleEntropy.PartStatistics parentStatistics(Combination data) {
+		final Combination parent = (data.parent != null) ? combinations.get(data.parent) : null;
+		return (parent != null) ? parent.statistics : null;
+	}
+	
+	/**
+	 * Вычисляет медианное значение концентрации.
+	 * 
+	 * @param content
+	 *    концентрации цепочек для всех строк выборки
+	 * @return
+	 *    медианная концентрация
+	 */
+	private static double median(double[] content) {
+		double[] vars = content.clone();
+		Arrays.sort(vars);
+		return vars[vars.length / 2];
+	}
+	
+	/**
+	 * Строит битовую маску строк выборки, концентрация цепочек в которых превышает порог.
+	 * 
+	 * @param content
+	 *    концентрации цепочек для всех строк выборки
+	 * @param threshold
+	 *    пороговое значение концентрации
+	 * @return
+	 *    битовая маска строк выборки
+	 */
+	private static BitSet mask(double[] content, double threshold) {
+		BitSet mask = new BitSet(content.length);
+		for (int i = 0; i < content.length; i++) {
+			if (content[i] > threshold) mask.set(i);
+		}
+		return mask;
+	}
+	
+	/**
+	 * Сохраняет промежуточные данные для отобранных множеств цепочек и удаляет данные
+	 * для остальных множеств.
+	 * 
+	 * @param survivors
+	 *    отобранные множества цепочек
+	 * @param entropy
+	 *    объект, используемый для вычисления функционала
+	 */
+	private void retain(Set<FragmentSet> survivors, RuleEntropy entropy) {
+		for (FragmentSet comb : survivors) {
+			Combination data = combinations.get(comb);
+			if (data == null) {
+				data = new Combination(null, -1);
+				combinations.put(comb, data);
+			}
+			
+			final FragmentIndex index = entropy.index(comb.getFragmentLength());
+			data.occurrences = occurrences(index, comb, data);
+			if (data.mask == null) {
+				final double[] content = index.content(data.occurrences);
+				data.mask = mask(content, median(content));
+			}
+			data.statistics = entropy.statistics(parentStatistics(data), data.mask);
+		}
+		
+		combinations.keySet().retainAll(survivors);
+	}
+	
+	/**
+	 * Возвращает текущие наборы цепочек состояний, отобранные алгоритмом.
+	 * 
+	 * @return
+	 *    список наборов цепочек
+	 */
+	public List<FragmentSet> getSets() {
+		List<FragmentSet> sets = new ArrayList<FragmentSet>();
+		for (int size = 1; size <= this.currentSize; size++) {
+			for (Map.Entry<FragmentSet, Double> entry : fitness[size].entrySet()) {
+				if (!entry.getValue().isNaN()) {
+					sets.add(entry.getKey());
+				}
+			}
+		}
+		
+		return sets;
+	}
+	
+	/**
+	 * Сохраняет текущие наборы цепочек состояний, отобранные алгоритмом в файл
+	 * {@link #setsFile}.
+	 */
+	private void saveSets() {
+		if (setsFile != null) {
+			try {
+				getEnv().debug(1, Messages.format("add.save_sets", setsFile));
+				getEnv().save((Serializable) getSets(), setsFile);
+			} catch (IOException e) {
+				getEnv().error(1, Messages.format("add.e_save_sets", e));
+			}
+		}
+	}
+	
+	private class RunnableTask implements Callable<Void> {
+		
+		private final RuleEntropy entropy;
+		private final Map.Entry<FragmentSet, Double> entry;
+		
+		public RunnableTask(RuleEntropy entropy, Map.Entry<FragmentSet, Double> entry) {
+			this.entropy = entropy;
+			this.entry = entry;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			final FragmentSet combination = entry.getKey();
+			final Combination data = combinations.get(combination);
+			final FragmentIndex index = entropy.index(combination.getFragmentLength());
+			
+			// Концентрации и статистика выводятся из данных для родительского множества
+			final double[] content = index.content(occurrences(index, combination, data));
+			ContentPartitionRule rule = new ContentPartitionRule(combination, median(content));
+			data.mask = mask(content, rule.getThreshold());
+			
+			final FitnessCache.Key key = (cache == null) ? null
+					: new FitnessCache.Key(entropy.fingerprint(), order, rule);
+			Double difference = (key == null) ? null : cache.get(key);
+			if (difference == null) {
+				difference = entropy.fitness(entropy.statistics(parentStatistics(data), data.mask));
+				if (key != null) cache.put(key, difference);
+			}
+			getEnv().debug(2, Messages.format("misc.fitness", rule, difference));
+			entry.setValue(difference);
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Печатает сводку по параметрам алгоритма.
+	 */
+	private String reprHeader() {
+		String repr = Messages.format("misc.dataset", set.repr()) + "\n";
+		repr += Messages.format("add.bases", bases) + "\n";
+		repr += Messages.format("add.order", order) + "\n";
+		repr += Messages.format("add.max_size", maxSize) + "\n";
+		repr += Messages.format("add.combs", optCombinations) + "\n";
+		repr += Messages.format("add.curr_size", currentSize) + "\n";
+		repr += Messages.format("add.sets_file", setsFile) + "\n";
+		repr += Messages.format("misc.cache_file", cacheFile, cacheCapacity);
+		
+		return repr;
+	}
+	
+	public String repr() {
+		String repr = reprHeader() + "\n";
+		
+		if (fitness != null) {
+			for (int i = 1; i <= currentSize; i++) {
+				repr += Messages.format("add.size", i) + "\n";
+				for (Map.Entry<FragmentSet, Double> entry : fitness[i].entrySet()) {
+					final FragmentSet comb = entry.getKey();
+					final Double fitness = entry.getValue();
+					
+					if (!fitness.isNaN()) {
+						repr += Messages.format("misc.fitness", comb, fitness) + "\n";
+					}
+				}
+				repr += "\n";
+			}
+		}
+		
+		return repr;
+	}
+}
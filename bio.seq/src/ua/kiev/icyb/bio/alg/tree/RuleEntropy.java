@@ -0,0 +1,922 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ua.kiev.icyb.bio.PackedStates;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.SimpleSequenceSet;
+import ua.kiev.icyb.bio.alg.Fragment;
+import ua.kiev.icyb.bio.alg.FragmentFactory;
+
+
+/**
+ * Вспомогательный класс для вычисления функционала качества разбиения
+ * пространства строк состояний.
+ * 
+ * <p><b>Функционал качества</b> бинарного разбиения выборки <code>T</code> на части
+ * <code>T<sub>1</sub></code> и <code>T<sub>2</sub></code> определяется как
+ * <blockquote>
+ * <code>H(T<sub>1</sub>) + H(T<sub>2</sub>) - H(T)</code>,
+ * </blockquote>
+ * где {@code H(T)} ― функция, приближенно равная информационной энтропии для эмпирических
+ * распределений начальных и переходных вероятностей марковской цепи, обученной на
+ * выборке <code>T</code>.
+ */
+public class RuleEntropy implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Полная выборка, для разбиений которой вычисляются функционалы качества.
+	 */
+	private final SequenceSet fullSet;
+	
+	/**
+	 * Порядок марковских цепей, используемых для подсчета функционала качества.
+	 */
+	private final int order;
+	
+	/**
+	 * Следует ли учитывать в функционале качества информационную энтропию для
+	 * распределения начальных вероятностей.
+	 */
+	private final boolean countInitials;
+	
+	/**
+	 * Статистика вхождений фрагментов строк полных состояний в отдельные строки выборки.
+	 * Статистика хранится в разреженном виде: для каждой строки перечисляются только
+	 * встречающиеся в ней фрагменты. Фрагменты нумеруются подряд в порядке первого
+	 * появления в выборке, так что статистика для любой части выборки представляется
+	 * плотным массивом, индексированным номерами фрагментов.
+	 */
+	private static class Counts {
+		
+		/** Длина фрагментов. */
+		private final int length;
+		
+		/** Учитываются ли только начальные фрагменты строк. */
+		private final boolean headsOnly;
+		
+		/**
+		 * Номера фрагментов; элемент с индексом {@link Fragment#index()} равен номеру
+		 * фрагмента или {@code -1}, если фрагмент не встречается в выборке.
+		 */
+		private final int[] keys;
+		
+		/** Количество различных фрагментов в выборке. */
+		private final int nKeys;
+		
+		/** 
+		 * Границы описаний отдельных строк: статистика для строки {@code i} хранится 
+		 * в элементах массивов {@link #ids} и {@link #counts} с индексами 
+		 * от {@code offsets[i]} (включительно) до {@code offsets[i + 1]}.
+		 */
+		private final int[] offsets;
+		
+		/** Номера фрагментов, встречающихся в строках. */
+		private final int[] ids;
+		
+		/** Количество вхождений фрагментов в строки. */
+		private final int[] counts;
+		
+		/** Количество вхождений фрагментов во всю выборку. */
+		public final int[] totals;
+		
+		/**
+		 * Подсчитывает статистику для всех строк выборки.
+		 * 
+		 * @param set
+		 *    выборка
+		 * @param factory
+		 *    фабрика фрагментов
+		 * @param length
+		 *    длина фрагментов
+		 * @param headsOnly
+		 *    следует ли учитывать только начальные фрагменты строк
+		 */
+		public Counts(SequenceSet set, FragmentFactory factory, int length, boolean headsOnly) {
+			this.length = length;
+			this.headsOnly = headsOnly;
+			
+			int nFragments = 1;
+			for (int i = 0; i < length; i++) {
+				nFragments *= set.states().nComplete();
+			}
+			keys = new int[nFragments];
+			Arrays.fill(keys, -1);
+			
+			final Fragment fragment = factory.fragment();
+			int[] ids = new int[set.size()], counts = new int[set.size()];
+			int[] local = new int[16], touched = new int[16];
+			int nKeys = 0, ptr = 0;
+			offsets = new int[set.size() + 1];
+			
+			byte[] observed = new byte[0], hidden = new byte[0];
+			for (int i = 0; i < set.size(); i++) {
+				final int seqLength = set.length(i);
+				if (observed.length < seqLength) {
+					observed = new byte[seqLength];
+					hidden = new byte[seqLength];
+				}
+				set.observed(i, 0, seqLength, observed);
+				set.hidden(i, 0, seqLength, hidden);
+				int nTouched = 0;
+				
+				for (int pos = 0; pos < positions(seqLength); pos++) {
+					factory.fragment(observed, hidden, pos, length, fragment);
+					final int key = fragment.index();
+					if (keys[key] < 0) {
+						keys[key] = nKeys++;
+						if (nKeys > local.length) {
+							local = Arrays.copyOf(local, 2 * nKeys);
+							touched = Arrays.copyOf(touched, 2 * nKeys);
+						}
+					}
+					
+					final int id = keys[key];
+					if (local[id]++ == 0) {
+						touched[nTouched++] = id;
+					}
+				}
+				
+				if (ptr + nTouched > ids.length) {
+					ids = Arrays.copyOf(ids, Math.max(2 * ids.length, ptr + nTouched));
+					counts = Arrays.copyOf(counts, ids.length);
+				}
+				for (int t = 0; t < nTouched; t++) {
+					ids[ptr] = touched[t];
+					counts[ptr] = local[touched[t]];
+					local[touched[t]] = 0;
+					ptr++;
+				}
+				offsets[i + 1] = ptr;
+			}
+			
+			this.nKeys = nKeys;
+			this.ids = Arrays.copyOf(ids, ptr);
+			this.counts = Arrays.copyOf(counts, ptr);
+			this.totals = new int[nKeys];
+			for (int j = 0; j < ptr; j++) {
+				totals[this.ids[j]] += this.counts[j];
+			}
+		}
+		
+		/**
+		 * Возвращает количество учитываемых позиций фрагментов в строке.
+		 * 
+		 * @param seqLength
+		 *    длина строки
+		 * @return
+		 *    количество позиций
+		 */
+		private int positions(int seqLength) {
+			if (seqLength < length) return 0;
+			return headsOnly ? 1 : Math.max(seqLength - length, 0);
+		}
+		
+		/**
+		 * Суммирует статистику для части строк выборки.
+		 * 
+		 * @param mask
+		 *    битовая маска, определяющая, какие строки выборки учитываются
+		 * @return
+		 *    количество вхождений фрагментов в выбранные строки
+		 */
+		public int[] sum(BitSet mask) {
+			int[] result = new int[nKeys];
+			for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+				add(i, result);
+			}
+			return result;
+		}
+		
+		/**
+		 * Добавляет статистику для одной строки выборки к заданной статистике.
+		 * 
+		 * @param row
+		 *    индекс строки выборки
+		 * @param target
+		 *    статистика, к которой добавляются вхождения фрагментов
+		 */
+		public void add(int row, int[] target) {
+			for (int j = offsets[row]; j < offsets[row + 1]; j++) {
+				target[ids[j]] += counts[j];
+			}
+		}
+		
+		/**
+		 * Вычитает статистику для одной строки выборки из заданной статистики.
+		 * 
+		 * @param row
+		 *    индекс строки выборки
+		 * @param target
+		 *    статистика, из которой вычитаются вхождения фрагментов
+		 */
+		public void remove(int row, int[] target) {
+			for (int j = offsets[row]; j < offsets[row + 1]; j++) {
+				target[ids[j]] -= counts[j];
+			}
+		}
+		
+		/**
+		 * Создает пустую статистику.
+		 * 
+		 * @return
+		 *    массив, индексированный номерами фрагментов
+		 */
+		public int[] empty() {
+			return new int[nKeys];
+		}
+		
+		/**
+		 * Подсчитывает статистику для произвольного набора строк. Фрагменты,
+		 * не встречающиеся в исходной выборке, не учитываются.
+		 * 
+		 * @param set
+		 *    набор строк
+		 * @param factory
+		 *    фабрика фрагментов
+		 * @return
+		 *    количество вхождений фрагментов в строки набора
+		 */
+		public int[] count(SequenceSet set, FragmentFactory factory) {
+			final Fragment fragment = factory.fragment();
+			int[] result = new int[nKeys];
+			byte[] observed = new byte[0], hidden = new byte[0];
+			for (int i = 0; i < set.size(); i++) {
+				final int seqLength = set.length(i);
+				if (observed.length < seqLength) {
+					observed = new byte[seqLength];
+					hidden = new byte[seqLength];
+				}
+				set.observed(i, 0, seqLength, observed);
+				set.hidden(i, 0, seqLength, hidden);
+				for (int pos = 0; pos < positions(seqLength); pos++) {
+					factory.fragment(observed, hidden, pos, length, fragment);
+					final int id = keys[fragment.index()];
+					if (id >= 0) result[id]++;
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Статистика для части бинарного разбиения полной выборки. Позволяет вычислять
+	 * функционал качества для близких разбиений, обновляя статистику только для строк,
+	 * отнесенных к другой части.
+	 * 
+	 * @see RuleEntropy#statistics(BitSet)
+	 * @see RuleEntropy#statistics(PartStatistics, BitSet)
+	 */
+	public static final class PartStatistics {
+		
+		/** Битовая маска строк полной выборки, входящих в часть разбиения. */
+		private final BitSet mask;
+		
+		/** Количество строк в части разбиения. */
+		private final int size;
+		
+		/** Статистика по фрагментам длины {@code order + 1}. */
+		private final int[] full;
+		
+		/** Статистика по фрагментам длины {@code order}. */
+		private final int[] tail;
+		
+		/** Статистика по начальным фрагментам; {@code null}, если не учитывается. */
+		private final int[] head;
+		
+		private PartStatistics(BitSet mask, int[] full, int[] tail, int[] head) {
+			this.mask = mask;
+			this.size = mask.cardinality();
+			this.full = full;
+			this.tail = tail;
+			this.head = head;
+		}
+		
+		/**
+		 * Возвращает количество строк в части разбиения.
+		 * 
+		 * @return
+		 *    количество строк
+		 */
+		public int size() {
+			return size;
+		}
+	}
+	
+	/**
+	 * Фабрика для операций над цепочками строк состояний.
+	 */
+	private transient FragmentFactory factory;
+	
+	/**
+	 * Статистика по фрагментам длины {@code order + 1} и {@code order}, а также
+	 * по начальным фрагментам длины {@code order}.
+	 */
+	private transient Counts fullCounts, tailCounts, headCounts;
+	
+	/**
+	 * Индексы строк полной выборки, определяемые по массивам наблюдаемых состояний
+	 * (части выборки, полученные с помощью {@link SequenceSet#filter(boolean[])}, 
+	 * используют те же массивы, что и полная выборка) или по упакованным строкам
+	 * для {@linkplain SimpleSequenceSet#pack() упакованных выборок}.
+	 */
+	private transient Map<Object, Integer> positions;
+	
+	/**
+	 * Значение энтропии на полной выборке.
+	 */
+	private transient double fullEntropy;
+	
+	/**
+	 * Индексы вхождений цепочек наблюдаемых состояний в строки полной выборки,
+	 * индексированные длиной цепочек.
+	 */
+	private transient Map<Integer, FragmentIndex> indices;
+	
+	/**
+	 * Отпечаток полной выборки; {@code 0} означает, что отпечаток еще не вычислен.
+	 */
+	private transient long fingerprint;
+	
+	/**
+	 * Создает объект класса для подсчета функционала качества разбиений заданной выборки.
+	 * 
+	 * @param set
+	 *    используемая выборка
+	 * @param order
+	 *    порядок марковских цепей, используемых для подсчета функционала качества
+	 * @param countInitials
+	 *    следует ли учитывать в функционале качества информационную энтропию для
+	 *    распределения начальных вероятностей
+	 */
+	public RuleEntropy(SequenceSet set, int order, boolean countInitials) {
+		this.fullSet = set;
+		this.order = order;
+		this.countInitials = countInitials;
+		
+		factory = new FragmentFactory(set.states(), order + 1);
+		this.fullEntropy = entropy();
+	}
+	
+	/**
+	 * Создает объект класса для подсчета функционала качества разбиений заданной выборки. 
+	 * Распределение начальных вероятностей принимается в расчет.
+	 * 
+	 * @param set
+	 *    используемая выборка
+	 * @param order
+	 *    порядок марковских цепей, используемых для подсчета функционала качества
+	 */
+	public RuleEntropy(SequenceSet set, int order) {
+		this(set, order, true);
+	}
+	
+	/**
+	 * Возвращает полную выборку, для разбиений которой вычисляются функционалы качества.
+	 * 
+	 * @return
+	 *    полная выборка
+	 */
+	public SequenceSet getSet() {
+		return fullSet;
+	}
+	
+	/**
+	 * Возвращает порядок марковских цепей, используемых для подсчета функционала качества.
+	 * 
+	 * @return
+	 *    порядок марковских цепей
+	 */
+	public int getOrder() {
+		return order;
+	}
+	
+	/**
+	 * Вычисляет 64-битный отпечаток полной выборки, учитывающий наблюдаемые и скрытые
+	 * состояния всех строк, а также то, учитываются ли начальные вероятности. Отпечаток
+	 * вместе с порядком марковских цепей используется в качестве ключа при кэшировании
+	 * значений функционала качества (см. {@link ua.kiev.icyb.bio.alg.FitnessCache}).
+	 * 
+	 * @return
+	 *    отпечаток выборки
+	 */
+	public synchronized long fingerprint() {
+		if (fingerprint == 0) {
+			// 64-битный вариант хэша FNV-1a
+			final long prime = 0x100000001b3L;
+			long hash = 0xcbf29ce484222325L;
+			hash = (hash ^ (countInitials ? 1 : 0)) * prime;
+			hash = (hash ^ fullSet.size()) * prime;
+			for (int i = 0; i < fullSet.size(); i++) {
+				final byte[] observed = fullSet.observed(i), hidden = fullSet.hidden(i);
+				hash = (hash ^ observed.length) * prime;
+				for (int pos = 0; pos < observed.length; pos++) {
+					hash = (hash ^ observed[pos]) * prime;
+					hash = (hash ^ hidden[pos]) * prime;
+				}
+			}
+			fingerprint = (hash == 0) ? 1 : hash;
+		}
+		return fingerprint;
+	}
+	
+	/**
+	 * Возвращает индекс вхождений цепочек наблюдаемых состояний заданной длины в строки
+	 * полной выборки. Индекс строится при первом обращении и в дальнейшем используется повторно.
+	 * 
+	 * @param length
+	 *    длина цепочек
+	 * @return
+	 *    индекс вхождений цепочек
+	 */
+	public synchronized FragmentIndex index(int length) {
+		if (indices == null) {
+			indices = new HashMap<Integer, FragmentIndex>();
+		}
+		
+		FragmentIndex index = indices.get(length);
+		if (index == null) {
+			index = new FragmentIndex(fullSet, length);
+			indices.put(length, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Вычисляет значения предиката на строках полной выборки. Для предикатов, основанных на 
+	 * концентрации цепочек, используется индекс вхождений {@link #index(int)}.
+	 * 
+	 * @param rule
+	 *    предикат
+	 * @return
+	 *    битовая маска строк полной выборки, на которых предикат истинен
+	 */
+	public BitSet mask(PartitionRule rule) {
+		if (rule instanceof ContentPartitionRule) {
+			ContentPartitionRule contentRule = (ContentPartitionRule) rule;
+			return contentRule.mask(index(contentRule.getBases().getFragmentLength()));
+		}
+		return rule.mask(fullSet);
+	}
+	
+	/**
+	 * Подсчитывает медианную концентрацию цепочек из множества в строках полной выборки
+	 * с помощью индекса вхождений {@link #index(int)}.
+	 * 
+	 * @param fragments
+	 *    множество цепочек
+	 * @return
+	 *    медианная концентрация
+	 */
+	public double medianContent(FragmentSet fragments) {
+		return index(fragments.getFragmentLength()).medianContent(fragments);
+	}
+	
+	/**
+	 * Возвращает значение величины {@code x * ln(x)}.
+	 * 
+	 * @param x
+	 *    неотрицательное число
+	 * @return
+	 *    значение функции {@code x * ln(x)}; {@code 0} при {@code x = 0} 
+	 */
+	private static double xlog(double x) {
+		return (x == 0) ? 0 : x * Math.log(x);
+	}
+	
+	/**
+	 * Вычисляет значение информационной энтропии для эмпирического распределения, заданного
+	 * статистикой. Если второй аргумент метода не равен {@code null}, то считается
+	 * суммарная энтропия для двух распрделений: частичного и дополнения к нему по отношению
+	 * к общему распределению. Статистика дополнения получается вычитанием частичной
+	 * статистики из полной.
+	 * 
+	 * @param all
+	 *    полная статистика
+	 * @param part
+	 *    частичная статистика (может равняться {@code null})
+	 * @return
+	 *    информационная энтропия для полной статистики (если {@code part == null});
+	 *    суммарная энтропия для {@code part} и {@code all \ part} (если {@code part != null}) 
+	 */
+	private static double sum(int[] all, int[] part) {
+		double result = 0;
+		
+		if (part == null) {
+			for (int i = 0; i < all.length; i++) {
+				result += xlog(all[i]);
+			}
+			return result;
+		}
+		
+		for (int i = 0; i < all.length; i++) {
+			result += xlog(part[i]) + xlog(all[i] - part[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Подсчитывает статистику и информационную энтропию {@code H} для полной выборки. 
+	 * 
+	 * @return
+	 *    информационная энтропия
+	 */
+	private double entropy() {
+		tailCounts = new Counts(fullSet, factory, order, false);
+		fullCounts = new Counts(fullSet, factory, order + 1, false);
+		double result = sum(fullCounts.totals, null) - sum(tailCounts.totals, null);
+		
+		if (countInitials) {
+			headCounts = new Counts(fullSet, factory, order, true);
+			result += sum(headCounts.totals, null) - xlog(fullSet.size());
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Определяет строки полной выборки, входящие в заданное подмножество.
+	 * 
+	 * @param subset
+	 *    подмножество полной выборки
+	 * @return
+	 *    битовая маска строк полной выборки, входящих в подмножество;
+	 *    {@code null}, если некоторые строки подмножества не удалось сопоставить
+	 *    со строками полной выборки
+	 */
+	private BitSet mask(SequenceSet subset) {
+		synchronized (this) {
+			if (positions == null) {
+				positions = new IdentityHashMap<Object, Integer>();
+				for (int i = 0; i < fullSet.size(); i++) {
+					positions.put(rowKey(fullSet, i), i);
+				}
+			}
+		}
+		
+		BitSet mask = new BitSet(fullSet.size());
+		for (int i = 0; i < subset.size(); i++) {
+			Integer pos = positions.get(rowKey(subset, i));
+			if ((pos == null) || mask.get(pos)) return null;
+			mask.set(pos);
+		}
+		return mask;
+	}
+	
+	/**
+	 * Возвращает объект, по ссылке на который строка выборки сопоставляется со строками
+	 * полной выборки.
+	 * 
+	 * @param set
+	 *    выборка
+	 * @param index
+	 *    индекс строки (с отсчетом от нуля)
+	 * @return
+	 *    упакованная строка для упакованных выборок, иначе массив наблюдаемых состояний
+	 */
+	private static Object rowKey(SequenceSet set, int index) {
+		if (set instanceof SimpleSequenceSet) {
+			PackedStates packed = ((SimpleSequenceSet) set).packed(index);
+			if (packed != null) return packed;
+		}
+		return set.observed(index);
+	}
+	
+	/**
+	 * Подсчитывает статистику для подмножества выборки.
+	 * 
+	 * @param counts
+	 *    статистика для полной выборки
+	 * @param subset
+	 *    подмножество выборки
+	 * @param mask
+	 *    битовая маска строк подмножества в полной выборке, или {@code null}
+	 * @return
+	 *    статистика для подмножества
+	 */
+	private int[] count(Counts counts, SequenceSet subset, BitSet mask) {
+		return (mask != null) ? counts.sum(mask) : counts.count(subset, factory);
+	}
+	
+	/**
+	 * Возвращает информационную энтропию {@code H} для полной выборки. 
+	 * 
+	 * @return
+	 *    информационная энтропия
+	 */
+	public double fullEntropy() {
+		return fullEntropy;
+	}
+	
+	/**
+	 * Вычисляет функционал качества для бинарного разбиения, заданного
+	 * подмножеством выборки.
+	 * 
+	 * @param subset
+	 *        подмножество полной выборки, указанной при создании объекта
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(SequenceSet subset) {
+		return fitness(subset, mask(subset), subset.size());
+	}
+	
+	/**
+	 * Вычисляет функционал качества для бинарного разбиения, заданного
+	 * набором строк полной выборки.
+	 * 
+	 * @param selector
+	 *    массив, определяющий, какие строки полной выборки входят в первую часть разбиения
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(boolean[] selector) {
+		BitSet mask = new BitSet(selector.length);
+		for (int i = 0; i < selector.length; i++) {
+			if (selector[i]) mask.set(i);
+		}
+		return fitness(mask);
+	}
+	
+	/**
+	 * Вычисляет функционал качества для бинарного разбиения, заданного
+	 * битовой маской строк полной выборки. Подмножество выборки при этом не создается.
+	 * 
+	 * @param mask
+	 *    битовая маска строк полной выборки, входящих в первую часть разбиения
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(BitSet mask) {
+		return fitness(null, mask, mask.cardinality());
+	}
+	
+	/**
+	 * Подсчитывает статистику для части бинарного разбиения, заданной битовой маской.
+	 * 
+	 * @param mask
+	 *    битовая маска строк полной выборки, входящих в часть разбиения; не должна
+	 *    изменяться после вызова метода
+	 * @return
+	 *    статистика для части разбиения
+	 */
+	public PartStatistics statistics(BitSet mask) {
+		return new PartStatistics(mask, fullCounts.sum(mask), tailCounts.sum(mask),
+				countInitials ? headCounts.sum(mask) : null);
+	}
+	
+	/**
+	 * Подсчитывает статистику для части бинарного разбиения на основе статистики
+	 * для другого, близкого разбиения. Учитываются только строки, принадлежность которых
+	 * к части разбиения изменилась; если таких строк больше, чем строк в новой части,
+	 * статистика подсчитывается заново.
+	 * 
+	 * @param parent
+	 *    статистика для исходного разбиения (может равняться {@code null})
+	 * @param mask
+	 *    битовая маска строк полной выборки, входящих в часть нового разбиения; не должна
+	 *    изменяться после вызова метода
+	 * @return
+	 *    статистика для части нового разбиения
+	 */
+	public PartStatistics statistics(PartStatistics parent, BitSet mask) {
+		if (parent == null) {
+			return statistics(mask);
+		}
+		
+		BitSet diff = (BitSet) parent.mask.clone();
+		diff.xor(mask);
+		if (diff.cardinality() >= mask.cardinality()) {
+			return statistics(mask);
+		}
+		
+		int[] full = parent.full.clone(), tail = parent.tail.clone(),
+				head = countInitials ? parent.head.clone() : null;
+		for (int i = diff.nextSetBit(0); i >= 0; i = diff.nextSetBit(i + 1)) {
+			if (mask.get(i)) {
+				fullCounts.add(i, full);
+				tailCounts.add(i, tail);
+				if (countInitials) headCounts.add(i, head);
+			} else {
+				fullCounts.remove(i, full);
+				tailCounts.remove(i, tail);
+				if (countInitials) headCounts.remove(i, head);
+			}
+		}
+		return new PartStatistics(mask, full, tail, head);
+	}
+	
+	/**
+	 * Вычисляет функционал качества для бинарного разбиения по статистике одной из его частей.
+	 * 
+	 * @param statistics
+	 *    статистика для части разбиения
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(PartStatistics statistics) {
+		return fitness(statistics.full, statistics.tail, statistics.head, statistics.size);
+	}
+	
+	private double fitness(SequenceSet subset, BitSet mask, int size) {
+		return fitness(count(fullCounts, subset, mask), count(tailCounts, subset, mask),
+				countInitials ? count(headCounts, subset, mask) : null, size);
+	}
+	
+	/**
+	 * Вычисляет функционал качества для бинарного разбиения по статистике одной из его частей.
+	 * 
+	 * @param full
+	 *    статистика по фрагментам длины {@code order + 1}
+	 * @param tail
+	 *    статистика по фрагментам длины {@code order}
+	 * @param head
+	 *    статистика по начальным фрагментам (не используется, если начальные вероятности
+	 *    не учитываются)
+	 * @param size
+	 *    количество строк в части разбиения
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	private double fitness(int[] full, int[] tail, int[] head, int size) {
+		double result = sum(fullCounts.totals, full) - sum(tailCounts.totals, tail);
+		if (countInitials) {
+			double headProb = sum(headCounts.totals, head) 
+					- xlog(size) - xlog(fullSet.size() - size);
+			result += headProb;
+		}
+		result -= fullEntropy;
+		
+		return result;
+	}
+	
+	/**
+	 * Вычисляет функционал качества для семейства предикатов на основе концентрации
+	 * {@link ContentPartitionRule} с общим множеством цепочек и различными пороговыми значениями.
+	 * 
+	 * <p>Строки выборки упорядочиваются по убыванию концентрации цепочек один раз; затем
+	 * пороговое значение последовательно уменьшается, и к статистике части разбиения 
+	 * добавляются только строки, концентрация в которых превысила очередной порог.
+	 * Таким образом, время вычисления для всех порогов сопоставимо со временем вычисления
+	 * для одного порога.
+	 * 
+	 * @param fragments
+	 *    множество цепочек, концентрация которых используется в предикатах
+	 * @param thresholds
+	 *    пороговые значения концентрации
+	 * @param sizes
+	 *    массив, в который записываются количества строк, на которых предикаты истинны
+	 *    (может равняться {@code null})
+	 * @return
+	 *    значения функционала качества для предикатов с заданными пороговыми значениями
+	 */
+	public double[] fitness(FragmentSet fragments, final double[] thresholds, int[] sizes) {
+		final double[] content = index(fragments.getFragmentLength()).content(fragments);
+		
+		Integer[] rows = new Integer[content.length];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = i;
+		}
+		Arrays.sort(rows, new Comparator<Integer>() {
+			
+			@Override
+			public int compare(Integer x, Integer y) {
+				return Double.compare(content[y], content[x]);
+			}
+		});
+		
+		Integer[] order = new Integer[thresholds.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			
+			@Override
+			public int compare(Integer x, Integer y) {
+				return Double.compare(thresholds[y], thresholds[x]);
+			}
+		});
+		
+		final int[] full = fullCounts.empty(), tail = tailCounts.empty(), 
+				head = countInitials ? headCounts.empty() : null;
+		double[] result = new double[thresholds.length];
+		int ptr = 0;
+		for (int t : order) {
+			while ((ptr < rows.length) && (content[rows[ptr]] > thresholds[t])) {
+				fullCounts.add(rows[ptr], full);
+				tailCounts.add(rows[ptr], tail);
+				if (countInitials) headCounts.add(rows[ptr], head);
+				ptr++;
+			}
+			
+			result[t] = fitness(full, tail, head, ptr);
+			if (sizes != null) sizes[t] = ptr;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Вычисляет функционал качества для бинарного разбиения, заданного
+	 * предикатом.
+	 * 
+	 * @param rule
+	 *    предикат, порождающий разбиение
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(PartitionRule rule) {
+		return this.fitness(mask(rule));
+	}
+	
+	/**
+	 * Вычисляет функционал качества разбиения, заданного подмножествами выборки.
+	 * 
+	 * @param subsets
+	 *    подмножества выборки, образующие ее разбиение
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(SequenceSet... subsets) {
+		BitSet[] masks = new BitSet[subsets.length];
+		for (int i = 0; i < subsets.length; i++) {
+			masks[i] = mask(subsets[i]);
+		}
+		return fitness(subsets, masks);
+	}
+	
+	/**
+	 * Вычисляет функционал качества разбиения, части которого заданы подмножествами
+	 * выборки и (или) битовыми масками строк полной выборки.
+	 * 
+	 * @param subsets
+	 *    подмножества выборки; используются для частей, маска которых равна {@code null}
+	 * @param masks
+	 *    битовые маски строк полной выборки для частей разбиения
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	private double fitness(SequenceSet[] subsets, BitSet[] masks) {
+		double result = 0;
+		for (int i = 0; i < masks.length; i++) {
+			final SequenceSet subset = (subsets == null) ? null : subsets[i];
+			final BitSet mask = masks[i];
+			final int size = (mask != null) ? mask.cardinality() : subset.size();
+			
+			result += sum(count(fullCounts, subset, mask), null) 
+					- sum(count(tailCounts, subset, mask), null);
+			if (countInitials) {
+				double headProb = sum(count(headCounts, subset, mask), null) - xlog(size);
+				result += headProb;
+			}
+		}
+		result -= fullEntropy;
+		
+		return result;
+	}
+	
+	/**
+	 * Вычисляет функционал качества разбиения, заданного деревом разбиения.
+	 * 
+	 * @param tree
+	 *    дерево разбиения выборки
+	 * @return
+	 *    значение функционала качества разбиения
+	 */
+	public double fitness(PartitionRuleTree tree) {
+		BitSet[] masks = new BitSet[tree.size()];
+		for (int p = 0; p < masks.length; p++) {
+			masks[p] = new BitSet(fullSet.size());
+		}
+		final int[] parts = tree.getParts(fullSet);
+		for (int i = 0; i < parts.length; i++) {
+			masks[parts[i]].set(i);
+		}
+		return fitness(null, masks);
+	}
+	
+	/**
+	 * Восстанавливает поля объекта, которые не записываются в поток, на основе сохраненных полей.
+	 * 
+	 * @param in
+	 *    поток для считывания объекта
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
+		in.defaultReadObject();
+		
+		factory = new FragmentFactory(fullSet.states(), order + 1);
+		this.fullEntropy = entropy();
+	}
+}
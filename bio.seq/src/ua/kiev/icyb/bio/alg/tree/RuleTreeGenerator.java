@@ -0,0 +1,667 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ua.kiev.icyb.bio.AbstractLaunchable;
+import ua.kiev.icyb.bio.Representable;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.alg.FitnessCache;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Класс для построения областей компетентности алгоритмов распознавания
+ * на основе деревьев предикатов. Используемые предикаты используют концентрации 
+ * коротких последовательностей наблюдаемых состояний.
+ */
+public class RuleTreeGenerator extends AbstractLaunchable implements Representable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Запись, соовтетствующая вычислению качества предиката во время работы алгоритма
+	 * построения дерева.
+	 */
+	public static class Fitness implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Выборка, на которой вычислялось качество предиката.
+		 */
+		public final SequenceSet set;
+		
+		/**
+		 * Предикат, качество которого вычислялось.
+		 */
+		public final PartitionRule rule;
+		
+		/**
+		 * Значение функционала качества.
+		 */
+		public final double fitness;
+		
+		/**
+		 * Номер итерации алгоритма (с отсчетом от нуля), в ходе которой было вычислено качество.
+		 */
+		public final int iteration;
+		
+		/**
+		 * Номер части разбиения (с отсчетом от нуля), для которой проверялся предикат.
+		 */
+		public final int partitionIndex;
+		
+		/**
+		 * Является ли предикат оптимальным для своей части разбиения?
+		 */
+		public boolean isOptimal = false;
+		
+		/**
+		 * Является ли предикат оптимальным для всех частей разбиения в целом?
+		 */
+		public boolean isGloballyOptimal = false;
+		
+		private Fitness(SequenceSet set, PartitionRule rule, double fitness, 
+				int iteration, int partitionIndex) {
+			
+			this.set = set;
+			this.rule = rule;
+			this.fitness = fitness;
+			this.iteration = iteration;
+			this.partitionIndex = partitionIndex;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("[iter=%d, part=%d: q(%s) = %.2f]", 
+					this.iteration, this.partitionIndex,
+					this.rule, this.fitness);
+		}
+	}
+	
+	/** Количество правил в дереве, которое надо построить. */
+	public int treeSize;
+	
+	/** Порядок марковских цепей при вычислении функционала качества для правил. */
+	public int order;
+	
+	/** 
+	 * Набор отношений, в которых тестируемые предикаты делят выборку.
+	 * Например, значение {@code 0.6} означает, что предикат должен быть 
+	 * истинен на 60% прецедентов выборки.
+	 */
+	public double[] percentages;
+	
+	/**
+	 * Определяет минимальное количество генов в частях выборки, генерируемых
+	 * в процессе построения дерева. Если значение поля меньше единицы, оно рассматривается
+	 * как доля от размера выборки; если же значение больше единицы, это абсолютное
+	 * число. 
+	 */
+	public double minPartSize;
+	
+	/**
+	 * Выборка, испольуемая для вычисления функционала качества предикатов.
+	 */
+	public SequenceSet set;
+	
+	/**
+	 * Множества наборов цепочек наблюдаемых состояний, рассматриваемых в предикатах.
+	 */
+	public Collection<FragmentSet> baseSets;
+	
+	/**
+	 * Имя файла, в который необходимо сохранить полученное дерево предикатов.
+	 * Дерево сохраняется каждый раз при добавлении нового предиката.
+	 */
+	public String treeFile;
+	
+	/**
+	 * Имя файла, в котором сохраняется кэш значений функционала качества предикатов
+	 * (см. {@link FitnessCache#open(ua.kiev.icyb.bio.Env, String, int)}). Кэш может
+	 * использоваться совместно несколькими алгоритмами; если значение равно {@code null},
+	 * кэш не используется.
+	 */
+	public String cacheFile = null;
+	
+	/**
+	 * Максимальное количество значений функционала качества, хранящихся в кэше.
+	 */
+	public int cacheCapacity = 100000;
+	
+	/**
+	 * Дерево предикатов, которое строится алгоритмом.
+	 */
+	public PartitionRuleTree tree;
+	
+	/**
+	 * Текущий индекс части разбиения для всех прецедентов из выборки.
+	 */
+	private int[] partIdx;
+	
+	/**
+	 * Вычисленные значения функционала качества для предикатов в ходе выполнения
+	 * алгоритма.
+	 */
+	public final Collection<Fitness> computedFitness = new ArrayList<Fitness>();
+	
+	/**
+	 * Максимальное значение функционала качества для разбиений каждой из текущих частей
+	 * выборки. Значение {@link Double#NaN} означает, что функционал качества
+	 * для соответствующей части выборки еще не вычислен.
+	 */
+	private double[] maxFitness;
+	
+	/**
+	 * Оптимальное правило разбиения для каждой из текущих частей выборки.
+	 */
+	private PartitionRule[] optRule;
+	
+	/**
+	 * Предикаты для частей текущего разбиения выборки, для которых еще не найден
+	 * оптимальный предикат. Ключами отображения служат индексы частей разбиения.
+	 */
+	private Map<Integer, List<PartitionRule>> partRules = null;
+	
+	/**
+	 * Отображения, связывающие предикаты и значения функционала качества порождаемых
+	 * ими разбиений, для каждой из частей текущего разбиения выборки. Ключами служат
+	 * индексы частей разбиения; значения для части разбиения хранятся до тех пор, пока 
+	 * эта часть не будет разбита. Отсутствие предиката в отображении означает, что
+	 * функционал качества для него еще не вычислен.
+	 */
+	private Map<Integer, Map<PartitionRule, Double>> ruleFitness = null;
+	
+	/** Кэш значений функционала качества; {@code null}, если кэш не используется. */
+	private transient FitnessCache cache;
+	
+	/**
+	 * Создает новый алгоритм построения дерева предикатов.
+	 */
+	public RuleTreeGenerator() {
+	}
+	
+	/**
+	 * Возвращает часть выборки, соответствующую части текущего разбиения.
+	 * 
+	 * @param part
+	 *    индекс части разбиения
+	 * @return
+	 *    часть выборки
+	 */
+	private SequenceSet partSet(int part) {
+		boolean b[] = new boolean[set.size()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (partIdx[i] == part);
+		}
+		return set.filter(b);
+	}
+	
+	/**
+	 * Вычисляет значения функционала качества для предикатов всех заданных частей разбиения.
+	 * Предикаты для всех частей оцениваются одновременно с помощью общего пула потоков.
+	 * 
+	 * @param entropies
+	 *    объекты для вычисления функционала качества на частях выборки; ключами
+	 *    служат индексы частей разбиения
+	 */
+	private void computeFitness(Map<Integer, RuleEntropy> entropies) {
+		ExecutorService executor = getEnv().executor();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		
+		for (Map.Entry<Integer, RuleEntropy> part : entropies.entrySet()) {
+			final int p = part.getKey();
+			if (!ruleFitness.containsKey(p)) {
+				ruleFitness.put(p, new ConcurrentHashMap<PartitionRule, Double>());
+			}
+			final Map<PartitionRule, Double> fitness = ruleFitness.get(p);
+			
+			// Предикаты на основе концентрации с общим множеством цепочек оцениваются вместе
+			Map<FragmentSet, List<ContentPartitionRule>> sweeps = 
+					new HashMap<FragmentSet, List<ContentPartitionRule>>();
+			for (PartitionRule rule : partRules.get(p)) {
+				if (fitness.containsKey(rule)) continue;
+				
+				if (rule instanceof ContentPartitionRule) {
+					FragmentSet bases = ((ContentPartitionRule) rule).getBases();
+					if (!sweeps.containsKey(bases)) {
+						sweeps.put(bases, new ArrayList<ContentPartitionRule>());
+					}
+					sweeps.get(bases).add((ContentPartitionRule) rule);
+				} else {
+					tasks.add(new RuleTask(p, part.getValue(), rule));
+				}
+			}
+			for (Map.Entry<FragmentSet, List<ContentPartitionRule>> sweep : sweeps.entrySet()) {
+				tasks.add(new SweepTask(p, part.getValue(), sweep.getKey(), sweep.getValue()));
+			}
+		}
+		
+		try {
+			List<Future<Void>> futures = executor.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			getEnv().exception(e);
+		} catch (ExecutionException e) {
+			getEnv().exception(e);
+		}
+	}
+	
+	/**
+	 * Строит тестируемые предикаты для заданных частей разбиения выборки, если они еще
+	 * не построены. Предикаты для всех частей строятся с помощью общего пула потоков.
+	 * 
+	 * @param entropies
+	 *    объекты для вычисления функционала качества на частях выборки; ключами
+	 *    служат индексы частей разбиения
+	 */
+	private void inferRules(Map<Integer, RuleEntropy> entropies) {
+		ExecutorService executor = getEnv().executor();
+		List<Integer> parts = new ArrayList<Integer>();
+		List<InferTask> tasks = new ArrayList<InferTask>();
+		for (Map.Entry<Integer, RuleEntropy> part : entropies.entrySet()) {
+			if (partRules.containsKey(part.getKey())) continue;
+			
+			for (FragmentSet comb : baseSets) {
+				parts.add(part.getKey());
+				tasks.add(new InferTask(part.getValue(), comb, percentages));
+			}
+		}
+		if (tasks.isEmpty()) return;
+		
+		try {
+			getEnv().debugInline(1, Messages.getString("tree.infer"));
+			List<Future<List<PartitionRule>>> futures = executor.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++) {
+				final int p = parts.get(i);
+				if (!partRules.containsKey(p)) {
+					partRules.put(p, new ArrayList<PartitionRule>());
+				}
+				partRules.get(p).addAll(futures.get(i).get());
+			}
+			getEnv().debug(1, "");
+		} catch (InterruptedException e) {
+			getEnv().exception(e);
+		} catch (ExecutionException e) {
+			getEnv().exception(e);
+		}
+	}
+	
+	private final class InferTask implements Callable<List<PartitionRule>> {
+		private final RuleEntropy entropy;
+		private final double[] percentages;
+		private final FragmentSet comb;
+		
+		public InferTask(RuleEntropy entropy, FragmentSet comb, double[] percentages) {
+			this.percentages = percentages;
+			this.entropy = entropy;
+			this.comb = comb;
+		}
+		
+		public List<PartitionRule> call() throws Exception {
+			List<PartitionRule> rules = new ArrayList<PartitionRule>();
+			
+			double[] vars = entropy.index(comb.getFragmentLength()).content(comb);
+			Arrays.sort(vars);
+			
+			for (int i = 0; i < percentages.length; i++) {
+				int idx = (int) (vars.length * percentages[i]);
+				PartitionRule r = new ContentPartitionRule(comb, vars[idx]);
+				rules.add(r);
+			}
+			getEnv().debugInline(1, ".");
+			
+			return rules;
+		}
+	}
+	
+	private class RuleTask implements Callable<Void> {
+		private final int part;
+		private final RuleEntropy entropy;
+		private final PartitionRule rule;
+		
+		public RuleTask(int part, RuleEntropy entropy, PartitionRule rule) {
+			this.part = part;
+			this.entropy = entropy;
+			this.rule = rule;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			BitSet complies = entropy.mask(rule);
+			int size = complies.cardinality();
+			double fitness = -1;
+			if (isAdmissible(entropy.getSet(), size)) {
+				final FitnessCache.Key key = cacheKey(entropy, rule);
+				Double cached = (key == null) ? null : cache.get(key);
+				if (cached == null) {
+					fitness = entropy.fitness(complies);
+					if (key != null) cache.put(key, fitness);
+				} else {
+					fitness = cached;
+				}
+			}
+			record(part, entropy.getSet(), rule, size, fitness);
+			
+			return null;	
+		}
+	}
+	
+	/**
+	 * Задача для вычисления функционала качества семейства предикатов на основе концентрации
+	 * с общим множеством цепочек. Все пороговые значения оцениваются за один проход
+	 * по упорядоченным строкам выборки (см. {@link RuleEntropy#fitness(FragmentSet, double[], int[])}).
+	 */
+	private class SweepTask implements Callable<Void> {
+		private final int part;
+		private final RuleEntropy entropy;
+		private final FragmentSet bases;
+		private final List<ContentPartitionRule> rules;
+		
+		public SweepTask(int part, RuleEntropy entropy, FragmentSet bases,
+				List<ContentPartitionRule> rules) {
+			
+			this.part = part;
+			this.entropy = entropy;
+			this.bases = bases;
+			this.rules = rules;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			final SequenceSet fullSet = entropy.getSet();
+			
+			// Значения из кэша используются только вместе с размерами частей разбиения
+			List<ContentPartitionRule> computed = new ArrayList<ContentPartitionRule>();
+			List<ContentPartitionRule> cached = new ArrayList<ContentPartitionRule>();
+			List<Double> cachedFitness = new ArrayList<Double>();
+			for (ContentPartitionRule rule : rules) {
+				final FitnessCache.Key key = cacheKey(entropy, rule);
+				Double value = (key == null) ? null : cache.get(key);
+				if (value == null) {
+					computed.add(rule);
+				} else {
+					cached.add(rule);
+					cachedFitness.add(value);
+				}
+			}
+			
+			if (!cached.isEmpty()) {
+				final double[] content = entropy.index(bases.getFragmentLength()).content(bases);
+				for (int i = 0; i < cached.size(); i++) {
+					final double threshold = cached.get(i).getThreshold();
+					int size = 0;
+					for (int row = 0; row < content.length; row++) {
+						if (content[row] > threshold) size++;
+					}
+					record(part, fullSet, cached.get(i), size, cachedFitness.get(i));
+				}
+			}
+			
+			if (!computed.isEmpty()) {
+				double[] thresholds = new double[computed.size()];
+				for (int i = 0; i < thresholds.length; i++) {
+					thresholds[i] = computed.get(i).getThreshold();
+				}
+				
+				int[] sizes = new int[thresholds.length];
+				double[] fitness = entropy.fitness(bases, thresholds, sizes);
+				for (int i = 0; i < thresholds.length; i++) {
+					if (cache != null) {
+						cache.put(cacheKey(entropy, computed.get(i)), fitness[i]);
+					}
+					record(part, fullSet, computed.get(i), sizes[i], 
+							isAdmissible(fullSet, sizes[i]) ? fitness[i] : -1);
+				}
+			}
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Возвращает ключ для кэширования функционала качества предиката на части выборки.
+	 * 
+	 * @param entropy
+	 *    объект для вычисления функционала качества на части выборки
+	 * @param rule
+	 *    предикат
+	 * @return
+	 *    ключ для кэша или {@code null}, если кэш не используется
+	 */
+	private FitnessCache.Key cacheKey(RuleEntropy entropy, PartitionRule rule) {
+		if ((cache == null) || !(rule instanceof Serializable)) {
+			return null;
+		}
+		return new FitnessCache.Key(entropy.fingerprint(), entropy.getOrder(), (Serializable) rule);
+	}
+	
+	/**
+	 * Проверяет, достаточно ли велики обе части разбиения выборки.
+	 * 
+	 * @param fullSet
+	 *    разбиваемая выборка
+	 * @param size
+	 *    количество строк, на которых предикат истинен
+	 * @return
+	 *    {@code true}, если размеры обеих частей не меньше {@link #minPartSize}
+	 */
+	private boolean isAdmissible(SequenceSet fullSet, int size) {
+		return (size >= minPartSize) && (size <= fullSet.size() - minPartSize);
+	}
+	
+	/**
+	 * Сохраняет вычисленное значение функционала качества для предиката. Метод может
+	 * вызываться одновременно из нескольких потоков.
+	 * 
+	 * @param part
+	 *    индекс разбиваемой части выборки
+	 * @param fullSet
+	 *    разбиваемая часть выборки
+	 * @param rule
+	 *    предикат
+	 * @param size
+	 *    количество строк, на которых предикат истинен
+	 * @param fitness
+	 *    значение функционала качества
+	 */
+	private void record(int part, SequenceSet fullSet, PartitionRule rule, 
+			int size, double fitness) {
+		
+		if (!isAdmissible(fullSet, size)) {
+			fitness = -1;
+			getEnv().debug(1, Messages.format("tree.small_set", 
+					Messages.format("tree.rule", rule, size) ));
+		} else {
+			getEnv().debug(1, Messages.format("misc.fitness", 
+					Messages.format("tree.rule", rule, size), 
+					fitness));
+		}
+		
+		ruleFitness.get(part).put(rule, fitness);
+		
+		synchronized(computedFitness) {
+			computedFitness.add(new Fitness(fullSet, rule, fitness, tree.size(), part));
+		}
+	}
+	
+	/**
+	 * Находит оптимальный предикат для части разбиения по вычисленным значениям
+	 * функционала качества.
+	 * 
+	 * @param part
+	 *    индекс части разбиения
+	 */
+	private void selectRule(int part) {
+		double partMax = Double.NEGATIVE_INFINITY;
+		PartitionRule partMaxRule = null;
+		
+		for (Map.Entry<PartitionRule, Double> entry : ruleFitness.get(part).entrySet()) { 
+			if (entry.getValue() > partMax) {
+				partMax = entry.getValue();
+				partMaxRule = entry.getKey();
+			}
+		}
+		maxFitness[part] = partMax;
+		optRule[part] = partMaxRule;
+		getEnv().debug(1, Messages.format("tree.opt_rule",
+				part + 1, optRule[part], maxFitness[part]));
+		
+		for (Fitness f: computedFitness) {
+			if ((f.iteration == tree.size()) && (f.partitionIndex == part) 
+					&& (f.fitness == maxFitness[part])) {
+				
+				f.isOptimal = true;
+			}
+		}
+	}
+	
+	@Override
+	protected void doRun() {
+		if (minPartSize < 1) {
+			minPartSize = set.size() * minPartSize;
+		}
+		getEnv().debug(1, this.repr());
+		
+		if (tree == null) {
+			tree = new PartitionRuleTree();
+			partIdx = new int[set.size()];
+			maxFitness = new double[treeSize];
+			Arrays.fill(maxFitness, Double.NEGATIVE_INFINITY);
+			optRule = new PartitionRule[treeSize];
+		}
+		if (partRules == null) {
+			partRules = new HashMap<Integer, List<PartitionRule>>();
+			ruleFitness = new HashMap<Integer, Map<PartitionRule, Double>>();
+		}
+		cache = (cacheFile == null) ? null : FitnessCache.open(getEnv(), cacheFile, cacheCapacity);
+		
+		while (tree.size() <= treeSize) {
+			// Части разбиения, для которых необходимо найти оптимальный предикат
+			Map<Integer, RuleEntropy> entropies = new LinkedHashMap<Integer, RuleEntropy>();
+			for (int p = 0; p < tree.size(); p++) {
+				getEnv().debug(1, "");
+				getEnv().debug(1, Messages.format("tree.part", p + 1, tree.size()));
+				
+				if (maxFitness[p] > Double.NEGATIVE_INFINITY) {
+					getEnv().debug(1, Messages.format("tree.opt_rule",
+							p + 1, optRule[p], maxFitness[p]));
+				} else {
+					entropies.put(p, new RuleEntropy(partSet(p), order));
+				}
+			}
+			
+			inferRules(entropies);
+			save();
+			
+			computeFitness(entropies);
+			for (int p : entropies.keySet()) {
+				selectRule(p);
+			}
+			save();
+			if (cache != null) {
+				cache.save(getEnv(), cacheFile);
+			}
+			
+			addNewRule();
+			save();
+		}
+	}
+	
+	/**
+	 * Добавляет новый предикат в дерево.
+	 */
+	private void addNewRule() {
+		int maxPart = -1;
+		double overallMax = Double.NEGATIVE_INFINITY;
+		for (int p = 0; p < tree.size(); p++) {
+			if (maxFitness[p] > overallMax) {
+				overallMax = maxFitness[p];
+				maxPart = p;
+			}
+		}
+		
+		for (Fitness f: computedFitness) {
+			if ((f.iteration <= tree.size()) && f.isOptimal 
+					&& (f.fitness == overallMax)) {
+				
+				f.isGloballyOptimal = true;
+			}
+		}
+		
+		getEnv().debug(1, Messages.format("tree.g_opt_rule", 
+				maxPart + 1, optRule[maxPart], overallMax));
+		tree.add(optRule[maxPart], maxPart);
+		
+		// Предикат вычисляется непосредственно на строках разбиваемой части выборки
+		int partSize = 0, count = 0;
+		for (int i = 0; i < partIdx.length; i++)
+			if (partIdx[i] == maxPart) {
+				partSize++;
+				if (optRule[maxPart].test(set.observed(i))) {
+					partIdx[i] = tree.size() - 1;
+					count++;
+				}
+			}
+		maxFitness[maxPart] = Double.NEGATIVE_INFINITY;
+		optRule[maxPart] = null;
+		// Значения функционала для остальных частей разбиения остаются в силе
+		partRules.remove(maxPart);
+		ruleFitness.remove(maxPart);
+		
+		getEnv().debug(1, Messages.format("tree.new_part", 
+				count, partSize, 1.0 * count/partSize) + "\n");
+		
+		saveTree();
+	}
+	
+	/**
+	 * Сохраняет дерево предикатов в файл.
+	 */
+	private void saveTree() {
+		if (treeFile != null) {
+			getEnv().debug(1, Messages.format("tree.save_tree", treeFile));
+			try {
+				getEnv().save(tree, treeFile);
+			} catch (IOException e) {
+				getEnv().error(1, Messages.format("tree.e_save_tree", e));
+			}
+		}
+	}
+	
+	@Override
+	public String repr() {
+		String repr = "";
+		repr += Messages.format("tree.rules", this.treeSize) + "\n";
+		repr += Messages.format("tree.order", this.order) + "\n";
+		repr += Messages.format("tree.percentages", Arrays.toString(this.percentages)) + "\n";
+		repr += Messages.format("tree.min_part_size", this.minPartSize) + "\n";
+		
+		repr += Messages.format("misc.dataset", this.set.repr()) + "\n";
+		repr += Messages.format("tree.bases", this.baseSets) + "\n";
+		repr += Messages.format("tree.tree_file", this.treeFile) + "\n";
+		repr += Messages.format("misc.cache_file", this.cacheFile, this.cacheCapacity);
+		
+		if (tree != null) {
+			repr += "\n" + Messages.format("tree.tree", tree.repr());
+		}
+		return repr;
+	}
+}
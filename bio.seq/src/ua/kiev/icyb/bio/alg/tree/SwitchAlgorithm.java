@@ -0,0 +1,306 @@
+package ua.kiev.icyb.bio.alg.tree;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ua.kiev.icyb.bio.JobListener;
+import ua.kiev.icyb.bio.SeqAlgorithm;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.alg.AbstractSeqAlgorithm;
+import ua.kiev.icyb.bio.alg.CompositeAlgorithm;
+import ua.kiev.icyb.bio.alg.EstimatesSet;
+import ua.kiev.icyb.bio.res.Messages;
+
+
+/**
+ * Алгоритм распознавания, применяющий для распознавания скрытой последовательности
+ * строки наблюдаемых состояний один из составляющих алгоритмов, выбираемый в зависимости
+ * от свойств этой строки.
+ * 
+ * <p>При обучении и распознавании на выборке строки сначала группируются по составляющим
+ * алгоритмам, после чего каждая группа обрабатывается соответствующим алгоритмом целиком.
+ */
+public class SwitchAlgorithm extends AbstractSeqAlgorithm implements CompositeAlgorithm {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Алгоритмы, использующиеся для распознавания. 
+	 */
+	private SeqAlgorithm algorithms[];
+	
+	/**
+	 * Хэш-таблица меток.
+	 */
+	private Map<String, Byte> labels = new HashMap<String, Byte>(); 
+	
+	/**
+	 * Создает новый алгоритм с заданными составляющими. Логика соответствия между 
+	 * составляющими алгоритмами и строками наблюдаемых состояний не определяется;
+	 * подклассы, использующие этот конструктор, должны позаботиться об этом.
+	 * 
+	 * @param algs
+	 *    массив составляющих алгоритмов
+	 */
+	protected SwitchAlgorithm(SeqAlgorithm[] algs) {
+		this.algorithms = algs.clone();
+	}
+	
+	/**
+	 * Создает новый алгоритм с априорно заданным распределением областей компетентности
+	 * на конечном множестве прецедентов. При попытке использовать алгоритм на 
+	 * строке наблюдаемых состояний, не входящей в прецеденты, будет вызвано исключение.
+	 * 
+	 * @param labels
+	 *    хэш-таблица, связывающая идентификаторы прецедентов с метками
+	 * @param algs
+	 *    составляющие алгоритмы распознавания
+	 */
+	public SwitchAlgorithm(Map<String, Byte> labels, SeqAlgorithm[] algs) {
+		this(algs);
+		this.labels = labels;
+	}
+	
+	
+	/**
+	 * Возвращает индекс компетентного составляющего алгоритма для заданной последовательности
+	 * наблюдаемых состояний.
+	 * 
+	 * <p>Имплементация по умолчанию ищет строку состояний (по содержимому) в выборке,
+	 * предоставленной с  {@linkplain #SwitchAlgorithm(Map, SeqAlgorithm[]) публичным конструктором}
+	 * и возвращает соответствующий индекс алгоритма. Если строка не содержится в выборке,
+	 * вызывается исключение времени исполнения.
+	 * 
+	 * <p>Подклассы должны переопределять метод, если они не используют упомянутый выше конструктор.
+	 * 
+	 * @param sequence 
+	 *    последовательность наблюдаемых состояний
+	 * @return 
+	 *    индекс (с отсчетом от нуля) компетентного составляющего алгоритма
+	 */
+	@Override
+	public int index(Sequence sequence) {
+		Byte idx = labels.get(sequence.id);
+		if (idx == null) {
+			throw new IllegalArgumentException("Sequence is not in the training set!");
+		}
+		return idx;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Имплементация по умолчанию вызывает метод {@link #index(Sequence)} для каждой
+	 * строки выборки.
+	 */
+	@Override
+	public int[] indices(SequenceSet set) {
+		int[] indices = new int[set.size()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = index(set.get(i));
+		}
+		return indices;
+	}
+	
+	@Override
+	public int size() {
+		return algorithms.length;
+	}
+	
+	@Override
+	public SeqAlgorithm component(int index) {
+		return algorithms[index];
+	}
+	
+	/**
+	 * Разбивает выборку на группы строк, относящихся к одному составляющему алгоритму.
+	 * 
+	 * @param set
+	 *    выборка
+	 * @return
+	 *    индексы строк выборки для каждого составляющего алгоритма
+	 */
+	private int[][] groups(SequenceSet set) {
+		final int[] indices = indices(set);
+		int[] sizes = new int[algorithms.length];
+		for (int i = 0; i < indices.length; i++) {
+			sizes[indices[i]]++;
+		}
+		
+		int[][] groups = new int[algorithms.length][];
+		for (int k = 0; k < algorithms.length; k++) {
+			groups[k] = new int[sizes[k]];
+			sizes[k] = 0;
+		}
+		for (int i = 0; i < indices.length; i++) {
+			groups[indices[i]][sizes[indices[i]]++] = i;
+		}
+		return groups;
+	}
+	
+	/**
+	 * Строит селектор для группы строк выборки.
+	 * 
+	 * @param set
+	 *    выборка
+	 * @param group
+	 *    индексы строк группы
+	 * @return
+	 *    селектор, истинный на строках группы
+	 */
+	private static boolean[] selector(SequenceSet set, int[] group) {
+		boolean[] selector = new boolean[set.size()];
+		for (int i : group) {
+			selector[i] = true;
+		}
+		return selector;
+	}
+	
+	@Override
+	public void train(Sequence sequence) {
+		algorithms[index(sequence)].train(sequence);
+	}
+	
+	@Override
+	public void train(Collection<? extends Sequence> set) {
+		if (!(set instanceof SequenceSet)) {
+			super.train(set);
+			return;
+		}
+		
+		final SequenceSet sequenceSet = (SequenceSet) set;
+		final int[][] groups = groups(sequenceSet);
+		for (int k = 0; k < algorithms.length; k++) {
+			if (groups[k].length > 0) {
+				algorithms[k].train(sequenceSet.filter(selector(sequenceSet, groups[k])));
+			}
+		}
+	}
+	
+	@Override
+	public void reset() {
+		for (SeqAlgorithm model: algorithms) {
+			model.reset();
+		}
+	}
+	
+	@Override
+	public byte[] run(Sequence sequence) {
+		return algorithms[index(sequence)].run(sequence);
+	}
+	
+	@Override
+	public SequenceSet runSet(SequenceSet set) {
+		return runSet(set, null);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Строки, относящиеся к каждому составляющему алгоритму, распознаются подряд
+	 * методом {@link SeqAlgorithm#runSet(SequenceSet, JobListener)} этого алгоритма.
+	 * Составляющий алгоритм может сбросить флаг прерывания потока (например,
+	 * {@link AbstractSeqAlgorithm#runSet(SequenceSet, JobListener)}); поэтому, если группа
+	 * строк распознана не полностью, флаг прерывания устанавливается заново, а остальные
+	 * группы не обрабатываются. При прерывании обработчик не уведомляется об окончании работы.
+	 */
+	@Override
+	public SequenceSet runSet(SequenceSet set, JobListener listener) {
+		final EstimatesSet estimates = new EstimatesSet(set);
+		final int[][] groups = groups(set);
+		
+		boolean interrupted = false;
+		for (int k = 0; k < algorithms.length; k++) {
+			if (groups[k].length == 0) continue;
+			if (Thread.currentThread().isInterrupted()) {
+				interrupted = true;
+				break;
+			}
+			
+			GroupListener groupListener = new GroupListener(estimates, groups[k], listener);
+			algorithms[k].runSet(set.filter(selector(set, groups[k])), groupListener);
+			if (!groupListener.isComplete()) {
+				interrupted = true;
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		
+		if ((listener != null) && !interrupted) {
+			listener.finished();
+		}
+		return estimates;
+	}
+	
+	/**
+	 * Обработчик событий для распознавания группы строк одним из составляющих алгоритмов.
+	 * Сохраняет результаты распознавания в общий набор и передает их внешнему обработчику.
+	 */
+	private static class GroupListener implements JobListener {
+		
+		private final EstimatesSet estimates;
+		private final int[] group;
+		private final JobListener listener;
+		
+		/** Количество распознанных строк группы. */
+		private final AtomicInteger completed = new AtomicInteger(0);
+		
+		public GroupListener(EstimatesSet estimates, int[] group, JobListener listener) {
+			this.estimates = estimates;
+			this.group = group;
+			this.listener = listener;
+		}
+		
+		@Override
+		public void seqCompleted(Sequence sequence) {
+			Sequence estimated = estimates.put(group[sequence.index], sequence.hidden);
+			completed.incrementAndGet();
+			if (listener != null) {
+				listener.seqCompleted(estimated);
+			}
+		}
+		
+		@Override
+		public void finished() {
+			// Внешний обработчик уведомляется после обработки всех групп
+		}
+		
+		/**
+		 * Проверяет, распознаны ли все строки группы.
+		 * 
+		 * @return
+		 *    {@code true}, если все строки группы распознаны
+		 */
+		public boolean isComplete() {
+			return completed.get() == group.length;
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d x %s", algorithms.length, algorithms[0]);
+	}
+	
+	@Override
+	public SwitchAlgorithm clearClone() {
+		SwitchAlgorithm other = (SwitchAlgorithm) super.clearClone();
+		other.algorithms = algorithms.clone();
+		for (int i = 0; i < algorithms.length; i++) {
+			other.algorithms[i] = (SeqAlgorithm) algorithms[i].clearClone();
+		}
+		other.labels = new HashMap<String, Byte>();
+		other.labels.putAll(labels);
+		return other;
+	}
+	
+	@Override
+	public String repr() {
+		String repr = super.repr() + "\n";
+		repr += Messages.format("alg.algs_n", algorithms.length) + "\n";
+		repr += Messages.format("alg.base", algorithms[0].repr());
+		return repr;
+	}
+}
@@ -0,0 +1,858 @@
+package ua.kiev.icyb.bio.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.StatesDescription;
+import ua.kiev.icyb.bio.alg.Approximation;
+import ua.kiev.icyb.bio.alg.FallthruChain;
+import ua.kiev.icyb.bio.alg.GeneViterbiAlgorithm;
+import ua.kiev.icyb.bio.alg.MarkovChain;
+import ua.kiev.icyb.bio.alg.ThreadedAlgorithm;
+import ua.kiev.icyb.bio.alg.ViterbiAlgorithm;
+import ua.kiev.icyb.bio.alg.mixture.DecrementalEMAlgorithm;
+import ua.kiev.icyb.bio.alg.mixture.EMAlgorithm;
+import ua.kiev.icyb.bio.alg.mixture.IncrementalEMAlgorithm;
+import ua.kiev.icyb.bio.alg.mixture.LikelihoodCache;
+import ua.kiev.icyb.bio.alg.mixture.MarkovMixture;
+import ua.kiev.icyb.bio.alg.mixture.MixtureAlgorithm;
+import ua.kiev.icyb.bio.alg.mixture.MixtureWeights;
+import ua.kiev.icyb.bio.alg.mixture.MultiStartEMAlgorithm;
+import ua.kiev.icyb.bio.alg.mixture.OnlineEMAlgorithm;
+import ua.kiev.icyb.bio.alg.tree.PriorityCompAlgorithm;
+
+/**
+ * Тесты, связанные со смесями моделей.
+ */
+public class MixtureTests {
+
+	private static Env env;
+	
+	private static SequenceSet set1;
+	private static SequenceSet set2;
+	
+	private static final StatesDescription STATES = StatesDescription.create("ACGT", "xi", "ACGTacgt");
+	
+	@BeforeClass
+	public static void setup() throws IOException {
+		final String testDir = System.getProperty("testdir", "test");
+		env = new Env(testDir + "/env.conf");
+		set1 = env.loadSet("elegans-I");
+		set2 = env.loadSet("elegans-II");
+	}
+	
+	/**
+	 * Проверяет добавление компонент в модель.
+	 */
+	@Test
+	public void testMixtureAdd() {
+		MarkovMixture mixture = new MarkovMixture();
+		MarkovChain mc1 = new MarkovChain(1, 6, STATES);
+		mixture.add(mc1, 1.0);
+		
+		assertEquals(1, mixture.size());
+		assertEquals(1.0, mixture.weight(0), 1e-6);
+		
+		MarkovChain mc2 = new MarkovChain(1, 5, STATES);
+		mixture.add(mc2, 0.5);
+		
+		assertEquals(2, mixture.size());
+		assertEquals(0.5, mixture.weight(0), 1e-6);
+		assertEquals(0.5, mixture.weight(1), 1e-6);
+		assertSame(mc1, mixture.model(0));
+		assertSame(mc2, mixture.model(1));
+		
+		MarkovChain mc3 = new MarkovChain(1, 5, STATES);
+		mixture.add(mc3, 0.5);
+		
+		assertEquals(3, mixture.size());
+		assertEquals(0.25, mixture.weight(0), 1e-6);
+		assertEquals(0.25, mixture.weight(1), 1e-6);
+		assertEquals(0.5, mixture.weight(2), 1e-6);
+		assertSame(mc3, mixture.model(2));
+	}
+	
+	/**
+	 * Проверяет удаление компонент из модели.
+	 */
+	@Test
+	public void testMixtureDelete() {
+		MarkovMixture mixture = new MarkovMixture();
+		MarkovChain mc1 = new MarkovChain(1, 6, STATES);
+		mixture.add(mc1, 1.0);
+		MarkovChain mc2 = new MarkovChain(1, 5, STATES);
+		mixture.add(mc2, 0.5);
+		MarkovChain mc3 = new MarkovChain(1, 5, STATES);
+		mixture.add(mc3, 0.5);
+		
+		assertEquals(0.25, mixture.weight(0), 1e-6);
+		assertEquals(0.25, mixture.weight(1), 1e-6);
+		assertEquals(0.5, mixture.weight(2), 1e-6);
+		
+		mixture.delete(1);
+		assertEquals(2, mixture.size());
+		assertEquals(1.0 / 3, mixture.weight(0), 1e-6);
+		assertEquals(2.0 / 3, mixture.weight(1), 1e-6);
+		assertSame(mc1, mixture.model(0));
+		assertSame(mc3, mixture.model(1));
+		
+		mixture.delete(0);
+		assertEquals(1, mixture.size());
+		assertEquals(1.0, mixture.weight(0), 1e-6);
+		assertSame(mc3, mixture.model(0));
+	}
+	
+	/**
+	 * Проверяет создание смеси с заданным видом компонент.
+	 */
+	@Test
+	public void testMixtureNew() {
+		MarkovMixture mixture = new MarkovMixture(4, 6, STATES);
+		
+		assertEquals(4, mixture.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(0.25, mixture.weight(i), 1e-6);
+			assertEquals(6, mixture.model(i).order());
+			
+			for (int j = 0; j < i; j++) {
+				assertNotSame(mixture.model(i), mixture.model(j));
+			}
+		}
+	}
+	
+	/**
+	 * Проверяет заполнение компонент смеси из выборки.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixtureRandomFill() throws IOException {
+		final SequenceSet set = set1;
+		
+		MarkovMixture mixture = new MarkovMixture(3, 5, set.states());
+		mixture.randomFill(set);
+		checkSanity(mixture);
+		for (int i = 0; i < mixture.size(); i++) {
+			assertTrue(mixture.weight(i) > 0.5 / mixture.size());
+			assertTrue(mixture.weight(i) < 1.25 / mixture.size());
+		}
+		
+		for (Sequence sequence : set) {
+			double logP = mixture.estimate(sequence) / sequence.length();
+			assertTrue(logP < -1.0);
+			assertTrue(logP > -5.0);
+		}
+	}
+	
+	/**
+	 * Проверяет вычисление правдоподобия для смеси распределений.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixtureEstimate() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		for (Sequence sequence : set1) {
+			double mixP = mixture.estimate(sequence);
+			
+			double est1 = mixture.model(0).estimate(sequence);
+			double est2 = mixture.model(1).estimate(sequence);
+			if (est1 < est2) {
+				double t = est2;
+				est2 = est1;
+				est1 = t;
+			}
+			
+			double expectedP = Math.log(0.5) + est1 + Math.log(1.0 + Math.exp(est2 - est1));
+			assertEquals(expectedP, mixP, 1e-4);
+		}
+	}
+	
+	/**
+	 * Проверяет вычисление правдоподобий для всех компонент смеси за один проход.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixtureLogLikelihoods() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(3, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		mixture.model(2).train(set1.join(set2));
+
+		for (Sequence sequence : set2) {
+			double[] logP = mixture.logLikelihoods(sequence);
+
+			assertEquals(mixture.size(), logP.length);
+			for (int i = 0; i < mixture.size(); i++) {
+				assertEquals(mixture.model(i).estimate(sequence), logP[i], 1e-9);
+			}
+		}
+
+		// Цепи разных порядков
+		mixture.add(new MarkovChain(1, 3, set1.states()), 0.25);
+		mixture.model(3).train(set2);
+		for (Sequence sequence : set1) {
+			double[] logP = mixture.logLikelihoods(sequence);
+			for (int i = 0; i < mixture.size(); i++) {
+				assertEquals(mixture.model(i).estimate(sequence), logP[i], 1e-9);
+			}
+		}
+	}
+
+	/**
+	 * Проверяет вычисление апостериорных вероятностей для смеси распределений.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixturePosteriors() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		for (Sequence sequence : set1) {
+			double[] posteriors = mixture.posteriors(sequence);
+			
+			assertEquals(mixture.size(), posteriors.length);
+			double sum = 0.0;
+			for (int i = 0; i < mixture.size(); i++) {
+				sum += posteriors[i];
+			}
+			assertEquals(1.0, sum, 1e-4);
+
+			double est1 = mixture.model(0).estimate(sequence);
+			double est2 = mixture.model(1).estimate(sequence);
+			
+			assertEquals(1.0, posteriors[1]/posteriors[0] * Math.exp(est1 - est2), 1e-4);
+		}
+	}
+	
+	/**
+	 * Проверяет вычисление апостериорных вероятностей с помощью класса {@link MixtureWeights}.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixtureWeights() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		MixtureWeights mw = new MixtureWeights(mixture, set2);
+		mw.run(env);
+		
+		for (int i = 0; i < set2.size(); i++) {
+			assertEquals(1.0, mw.weights[0][i] + mw.weights[1][i], 1e-6);
+			int label = mw.labels.get(set2.id(i));
+			int expLabel = (mw.weights[0][i] > 0.5) ? 0 : 1;
+			assertEquals(expLabel, label);
+
+			double[] posteriors = mixture.posteriors(set2.get(i));
+			assertEquals(posteriors[0], mw.weights[0][i], 1e-9);
+			assertEquals(posteriors[1], mw.weights[1][i], 1e-9);
+		}
+	}
+	
+	/**
+	 * Проверяет вычисление апостериорных вероятностей классом {@link MixtureWeights}
+	 * по ранее вычисленным логарифмическим правдоподобиям.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testCachedMixtureWeights() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		double[][] logLikelihoods = new double[2][set2.size()];
+		double[] logP = new double[2];
+		for (int i = 0; i < set2.size(); i++) {
+			mixture.logLikelihoods(set2.observed(i), set2.hidden(i), logP);
+			logLikelihoods[0][i] = logP[0];
+			logLikelihoods[1][i] = logP[1];
+		}
+		
+		mixture.setWeights(new double[] { 0.2, 0.8 });
+		MixtureWeights cached = new MixtureWeights(mixture, set2, 0.0, logLikelihoods);
+		cached.run(env);
+		MixtureWeights direct = new MixtureWeights(mixture, set2);
+		direct.run(env);
+		
+		assertEquals(direct.logLikelihood, cached.logLikelihood, 1e-6);
+		for (int i = 0; i < set2.size(); i++) {
+			assertEquals(direct.weights[0][i], cached.weights[0][i], 1e-9);
+			assertEquals(direct.weights[1][i], cached.weights[1][i], 1e-9);
+		}
+	}
+	
+	/**
+	 * Проверяет кэширование правдоподобий строк выборки с помощью класса {@link LikelihoodCache}.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLikelihoodCache() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(3, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		mixture.model(2).train(set1.join(set2));
+		
+		LikelihoodCache cache = new LikelihoodCache(set2);
+		double[][] logP = cache.get(mixture, env);
+		for (int i = 0; i < set2.size(); i += 50) {
+			for (int alg = 0; alg < 3; alg++) {
+				assertEquals(mixture.model(alg).estimate(set2.get(i)), logP[alg][i], 1e-6);
+			}
+		}
+		
+		double[][] cachedLogP = cache.get(mixture, env);
+		for (int alg = 0; alg < 3; alg++) {
+			assertSame(logP[alg], cachedLogP[alg]);
+		}
+		
+		// Измененная компонента пересчитывается
+		mixture.model(1).train(set1.get(0));
+		cachedLogP = cache.get(mixture, env);
+		assertSame(logP[0], cachedLogP[0]);
+		assertNotSame(logP[1], cachedLogP[1]);
+		assertEquals(mixture.model(1).estimate(set2.get(0)), cachedLogP[1][0], 1e-6);
+		
+		// После удаления компоненты остальные берутся из кэша
+		logP = cachedLogP;
+		mixture.delete(0);
+		cachedLogP = cache.get(mixture, env);
+		assertSame(logP[1], cachedLogP[0]);
+		assertSame(logP[2], cachedLogP[1]);
+	}
+	
+	/**
+	 * Проверяет вычисление усеченных апостериорных вероятностей с помощью класса 
+	 * {@link MixtureWeights}.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncatedMixtureWeights() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		MixtureWeights dense = new MixtureWeights(mixture, set2);
+		dense.run(env);
+		final double threshold = 0.01;
+		MixtureWeights sparse = new MixtureWeights(mixture, set2, threshold);
+		sparse.run(env);
+		
+		assertTrue(sparse.isSparse());
+		assertNull(sparse.weights);
+		assertEquals(dense.logLikelihood, sparse.logLikelihood, 1e-6);
+		assertEquals(dense.labels, sparse.labels);
+		
+		double lostMass = 0.0;
+		double[] row = new double[2];
+		for (int i = 0; i < set2.size(); i++) {
+			sparse.get(i, row);
+			assertEquals(1.0, row[0] + row[1], 1e-6);
+			
+			double rowLost = 0.0;
+			for (int alg = 0; alg < 2; alg++) {
+				if (dense.weights[alg][i] < threshold) {
+					assertEquals(0.0, row[alg], 0.0);
+					rowLost += dense.weights[alg][i];
+				}
+			}
+			assertTrue(rowLost <= sparse.maxTruncatedMass + 1e-9);
+			lostMass += rowLost;
+		}
+		assertEquals(lostMass, sparse.truncatedMass, 1e-6);
+	}
+	
+	/**
+	 * Проверяет, что при усечении апостериорных вероятностей каждая строка выборки 
+	 * сохраняет вероятность хотя бы для одной модели смеси.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncatedMixtureWeightsKeepArgmax() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		MixtureWeights sparse = new MixtureWeights(mixture, set2, 1.0);
+		sparse.run(env);
+		
+		double[] row = new double[2];
+		for (int i = 0; i < set2.size(); i++) {
+			sparse.get(i, row);
+			assertEquals(1.0, row[0] + row[1], 1e-6);
+			assertEquals(1.0, row[sparse.labels.get(set2.id(i))], 1e-6);
+		}
+	}
+	
+	/**
+	 * Проверяет, что апостериорные вероятности после удаления компоненты смеси, полученные
+	 * методом {@link MixtureWeights#without(int, MarkovMixture)}, совпадают с вероятностями,
+	 * вычисленными для уменьшенной смеси заново.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixtureWeightsWithout() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(3, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		mixture.model(2).train(set1.join(set2));
+		mixture.setWeights(new double[] { 0.2, 0.5, 0.3 });
+		
+		for (double threshold : new double[] { 0.0, 0.01 }) {
+			MarkovMixture full = (MarkovMixture) mixture.clone();
+			MixtureWeights weights = new MixtureWeights(full, set2, threshold);
+			weights.run(env);
+			
+			full.delete(1);
+			MixtureWeights derived = weights.without(1, full);
+			MixtureWeights expected = new MixtureWeights(full, set2, threshold);
+			expected.run(env);
+			
+			assertEquals(expected.isSparse(), derived.isSparse());
+			assertEquals(2, derived.count());
+			// Для усеченных вероятностей правдоподобие каждой строки может отличаться
+			// не больше, чем на -log(1 - threshold)
+			assertEquals(expected.logLikelihood, derived.logLikelihood, 
+					1e-6 - set2.size() * Math.log(1.0 - threshold));
+			
+			double[] expRow = new double[2], row = new double[2];
+			for (int i = 0; i < set2.size(); i++) {
+				expected.get(i, expRow);
+				derived.get(i, row);
+				assertEquals(1.0, row[0] + row[1], 1e-6);
+				if (!derived.isSparse()) {
+					assertArrayEquals(expRow, row, 1e-6);
+				}
+				assertEquals(expected.labels.get(set2.id(i)), derived.labels.get(set2.id(i)));
+			}
+		}
+	}
+	
+	/**
+	 * Алгоритм, выполняющий несколько итераций EM-алгоритма и поиск прецедентов, хуже всего
+	 * описывающихся смесью.
+	 */
+	private static class WorstSamplesAlgorithm extends IncrementalEMAlgorithm {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public int[] worst;
+		public MixtureWeights last;
+		
+		@Override
+		protected void doRun() {
+			ordinaryRun();
+			worst = worstSamples();
+			last = lastExpectation();
+		}
+	}
+	
+	/**
+	 * Проверяет, что поиск прецедентов, хуже всего описывающихся смесью, использует
+	 * апостериорные вероятности и правдоподобия последнего шага ожидания EM-алгоритма.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testWorstSamplesUseLastExpectation() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		for (boolean selectWeights : new boolean[] { false, true }) {
+			WorstSamplesAlgorithm alg = new WorstSamplesAlgorithm();
+			alg.set = set2;
+			alg.mixture = (MarkovMixture) mixture.clone();
+			alg.nIterations = 2;
+			alg.selectWeights = selectWeights;
+			alg.run(env);
+			
+			assertNotNull(alg.last);
+			assertEquals(2, alg.last.count());
+			double[][] logP = alg.last.logLikelihoods();
+			assertNotNull(logP);
+			
+			double[] prob = new double[set2.size()];
+			double[] row = new double[2];
+			double mean = 0.0;
+			for (int i = 0; i < set2.size(); i++) {
+				if (selectWeights) {
+					alg.last.get(i, row);
+					prob[i] = Math.max(row[0], row[1]);
+				} else {
+					prob[i] = Math.max(logP[0][i], logP[1][i]) / set2.length(i);
+				}
+				mean += prob[i] / set2.size();
+			}
+			
+			Set<Integer> expected = new HashSet<Integer>();
+			for (int i = 0; i < set2.size(); i++) {
+				if (prob[i] < mean) expected.add(i);
+			}
+			Set<Integer> actual = new HashSet<Integer>();
+			for (int i : alg.worst) {
+				actual.add(i);
+			}
+			assertEquals(expected, actual);
+		}
+	}
+	
+	/**
+	 * Проверяет отказ от недопустимого порога усечения апостериорных вероятностей.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncatedMixtureWeightsInvalidThreshold() {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		new MixtureWeights(mixture, set2, 1.5);
+	}
+	
+	/**
+	 * Проверяет, что шаг максимизации для усеченных апостериорных вероятностей с малым порогом
+	 * дает ту же смесь, что и для полных вероятностей.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncatedMaximization() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		EMAlgorithm dense = new EMAlgorithm();
+		dense.set = set1;
+		dense.mixture = (MarkovMixture) mixture.clone();
+		dense.nIterations = 1;
+		dense.run(env);
+		
+		EMAlgorithm sparse = new EMAlgorithm();
+		sparse.set = set1;
+		sparse.mixture = (MarkovMixture) mixture.clone();
+		sparse.nIterations = 1;
+		sparse.truncation = 1e-12;
+		sparse.run(env);
+		
+		for (int alg = 0; alg < 2; alg++) {
+			assertEquals(dense.mixture.weight(alg), sparse.mixture.weight(alg), 1e-6);
+		}
+		for (Sequence sequence : set1) {
+			assertEquals(dense.mixture.estimate(sequence), sparse.mixture.estimate(sequence), 1e-3);
+		}
+	}
+	
+	/**
+	 * Проверяет базовые характеристики смеси скрытых марковских моделей.
+	 * 
+	 * @param mixture
+	 *    смесь, которую нужно проверить
+	 */
+	public static void checkSanity(MarkovMixture mixture) {
+		assertTrue(mixture.size() > 0);
+		assertEquals(mixture.size(), mixture.weights().length);
+		
+		double sum = 0.0;
+		for (int i = 0; i < mixture.size(); i++) {
+			double w = mixture.weight(i);
+			assertEquals(w, mixture.weights()[i], 1e-6);
+			assertTrue(w >= 0.0);
+			assertTrue(w <= 1.0);
+			sum += w;
+		}
+		assertEquals(1.0, sum, 1e-6);
+		
+		for (int i = 0; i < mixture.size(); i++) {
+			assertNotNull(mixture.model(i));
+		}
+	}
+	
+	/**
+	 * Тестирует EM-алгоритм для поиска оптимальной смеси марковских распределений.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testEMAlgorithm() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		EMAlgorithm alg = new EMAlgorithm();
+		alg.set = set1;
+		alg.mixture = mixture;
+		alg.nIterations = 10;
+		alg.run(env);
+		
+		MarkovMixture newMixture = alg.mixture;
+		checkSanity(newMixture);
+		
+		assertNotEquals(0.5, newMixture.weight(0), 1e-6);
+		double logP = mixture.estimate(set1), newLogP = newMixture.estimate(set1);
+		assertTrue(newLogP - logP > 50000.0);
+	}
+	
+	/**
+	 * Тестирует остановку EM-алгоритма по достижении сходимости.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testEMConvergence() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+
+		EMAlgorithm alg = new EMAlgorithm();
+		alg.set = set1;
+		alg.mixture = mixture;
+		alg.nIterations = 100;
+		alg.tolerance = 1e-3;
+		alg.run(env);
+
+		MarkovMixture newMixture = alg.mixture;
+		checkSanity(newMixture);
+
+		// Алгоритм останавливается после шага ожидания для итоговой смеси
+		assertEquals(newMixture.estimate(set1), alg.logLikelihood(), 1e-3);
+		assertTrue(alg.logLikelihood() > mixture.estimate(set1));
+	}
+
+	/**
+	 * Тестирует пошаговый EM-алгоритм, читающий выборку из файла.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testOnlineEMAlgorithm() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		mixture.model(0).train(set1);
+		mixture.model(1).train(set2);
+		
+		OnlineEMAlgorithm alg = new OnlineEMAlgorithm();
+		alg.dataset = "elegans-I";
+		alg.mixture = (MarkovMixture) mixture.clone();
+		alg.batchSize = 500;
+		alg.nPasses = 2;
+		alg.run(env);
+		
+		MarkovMixture newMixture = alg.mixture;
+		checkSanity(newMixture);
+		
+		assertNotEquals(0.5, newMixture.weight(0), 1e-6);
+		double logP = mixture.estimate(set1), newLogP = newMixture.estimate(set1);
+		assertTrue(newLogP > logP);
+	}
+	
+	/**
+	 * Тестирует EM-алгоритм с несколькими случайными начальными приближениями.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testMultiStartEMAlgorithm() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(2, 5, set1.states());
+		SequenceSet set = set1.join(set2);
+		
+		MultiStartEMAlgorithm alg = new MultiStartEMAlgorithm();
+		alg.set = set;
+		alg.mixture = mixture;
+		alg.nStarts = 3;
+		alg.nIterations = 5;
+		alg.warmupIterations = 2;
+		alg.run(env);
+		
+		MarkovMixture newMixture = alg.mixture;
+		assertNotSame(mixture, newMixture);
+		checkSanity(newMixture);
+		
+		MarkovMixture randomMixture = new MarkovMixture(2, 5, set1.states());
+		randomMixture.randomFill(set);
+		assertTrue(newMixture.estimate(set) > randomMixture.estimate(set));
+	}
+	
+	/**
+	 * Тестирует распознавание с помощью смеси марковских моделей при параллельном 
+	 * переборе начальных приближений, в том числе при вызове из потоков того же пула.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testMixtureAlgorithm() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(3, 5, set1.states());
+		mixture.randomFill(set1);
+		
+		MixtureAlgorithm alg = new MixtureAlgorithm(mixture, env);
+		alg.train(set1);
+		
+		boolean[] selector = new boolean[set2.size()];
+		for (int i = 0; i < set2.size(); i += 20) {
+			selector[i] = true;
+		}
+		SequenceSet testSet = set2.filter(selector);
+		SequenceSet estimates = new ThreadedAlgorithm(alg, env).runSet(testSet);
+		
+		for (int i = 0; i < testSet.size(); i++) {
+			byte[] hidden = alg.run(testSet.get(i));
+			assertNotNull(hidden);
+			assertEquals(testSet.observed(i).length, hidden.length);
+			assertArrayEquals(hidden, estimates.hidden(i));
+		}
+	}
+	
+	/**
+	 * Проверяет, что распознавание с помощью смеси из одной марковской цепи с аппроксимацией
+	 * совпадает с алгоритмом Витерби для этой цепи, в том числе для переходов,
+	 * вероятности которых не наблюдались при обучении и вычисляются приближенно.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMixtureAlgorithmFallthru() throws IOException {
+		final Approximation approx = new Approximation(6, 2, Approximation.Strategy.MEAN);
+		
+		MarkovMixture mixture = new MarkovMixture();
+		mixture.add(new FallthruChain(approx, set1.states()), 1.0);
+		MixtureAlgorithm alg = new MixtureAlgorithm(mixture, env);
+		alg.train(set1);
+		
+		GeneViterbiAlgorithm reference = new GeneViterbiAlgorithm(approx.order, false) {
+			
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected MarkovChain createChain(StatesDescription states) {
+				return new FallthruChain(approx, states);
+			}
+		};
+		reference.train(set1);
+		
+		int nCompared = 0;
+		for (int i = 0; i < set2.size(); i += 10) {
+			byte[] expected = reference.run(set2.get(i));
+			if (expected == null) continue;
+			
+			assertArrayEquals(expected, alg.run(set2.get(i)));
+			nCompared++;
+		}
+		assertTrue(nCompared > 0);
+	}
+	
+	/**
+	 * Проверяет быструю проверку возможности распознавания для алгоритма на основе смеси
+	 * и использование этого алгоритма в композиции с голосованием по старшинству.
+	 */
+	@Test
+	public void testMixtureAlgorithmInPriorityComp() {
+		boolean[] first = new boolean[set1.size()], second = new boolean[set1.size()];
+		for (int i = 0; i < 20; i++) {
+			first[i] = true;
+			second[i + 20] = true;
+		}
+		
+		MarkovMixture mixture = new MarkovMixture();
+		MarkovChain mc1 = new MarkovChain(1, 3, set1.states());
+		mc1.train(set1.filter(first));
+		mixture.add(mc1, 1.0);
+		MarkovChain mc2 = new MarkovChain(1, 3, set1.states());
+		mc2.train(set1.filter(second));
+		mixture.add(mc2, 0.5);
+		
+		MixtureAlgorithm alg = new MixtureAlgorithm(mixture, env);
+		PriorityCompAlgorithm comp = new PriorityCompAlgorithm(alg, new ViterbiAlgorithm(1, 2));
+		comp.train(set1.filter(first).join(set1.filter(second)));
+		
+		int nRecognized = 0;
+		for (int i = 40; i < 100; i++) {
+			Sequence seq = set1.get(i);
+			byte[] expected = alg.run(seq);
+			if (!alg.isFeasible(seq)) {
+				assertNull(expected);
+			}
+			if (expected != null) {
+				assertArrayEquals(expected, comp.run(seq));
+				nRecognized++;
+			}
+		}
+		assertTrue(nRecognized > 0);
+	}
+	
+	/**
+	 * Тестирует EM-алгоритм для поиска оптимальной смеси марковских распределений
+	 * с последовательным добавлением компонент.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testIncEMAlgorithm() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(1, 6, set1.states());
+		mixture.model(0).train(set1);
+		
+		IncrementalEMAlgorithm alg = new IncrementalEMAlgorithm();
+		alg.set = set1;
+		alg.mixture = mixture;
+		alg.nIterations = 10;
+		alg.maxModels = 3;
+		alg.run(env);
+		
+		MarkovMixture newMixture = alg.mixture;
+		assertEquals(3, newMixture.size());
+		checkSanity(newMixture);
+		
+		double logP = mixture.estimate(set1), newLogP = newMixture.estimate(set1);
+		assertTrue(newLogP - logP > 50000.0);
+	}
+	
+	/**
+	 * Тестирует EM-алгоритм для поиска оптимальной смеси марковских распределений
+	 * с последовательным удалением компонент.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testDecEMAlgorithm() throws IOException {
+		MarkovMixture mixture = new MarkovMixture(5, 5, set1.states());
+		mixture.randomFill(set1);
+		
+		DecrementalEMAlgorithm alg = new DecrementalEMAlgorithm();
+		alg.set = set1;
+		alg.mixture = (MarkovMixture) mixture.clone();
+		alg.nIterations = 10;
+		alg.refineIterations = 3;
+		alg.minModels = 3;
+		alg.run(env);
+		
+		MarkovMixture newMixture = alg.mixture;
+		assertEquals(3, newMixture.size());
+		checkSanity(newMixture);
+		
+		double logP = mixture.estimate(set1), newLogP = newMixture.estimate(set1);
+		assertTrue(newLogP > logP);
+	}
+}
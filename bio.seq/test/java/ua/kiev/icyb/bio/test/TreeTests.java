@@ -0,0 +1,1220 @@
+package ua.kiev.icyb.bio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import ua.kiev.icyb.bio.Env;
+import ua.kiev.icyb.bio.JobListener;
+import ua.kiev.icyb.bio.SeqAlgorithm;
+import ua.kiev.icyb.bio.Sequence;
+import ua.kiev.icyb.bio.SequenceSet;
+import ua.kiev.icyb.bio.SimpleSequenceSet;
+import ua.kiev.icyb.bio.alg.FitnessCache;
+import ua.kiev.icyb.bio.alg.GeneticAlgorithm;
+import ua.kiev.icyb.bio.alg.Organism;
+import ua.kiev.icyb.bio.alg.ThreadedAlgorithm;
+import ua.kiev.icyb.bio.alg.ViterbiAlgorithm;
+import ua.kiev.icyb.bio.alg.tree.ContentPartitionRule;
+import ua.kiev.icyb.bio.alg.tree.FragmentIndex;
+import ua.kiev.icyb.bio.alg.tree.FragmentSet;
+import ua.kiev.icyb.bio.alg.tree.FragmentSetWrapper;
+import ua.kiev.icyb.bio.alg.tree.Partition;
+import ua.kiev.icyb.bio.alg.tree.PartitionRule;
+import ua.kiev.icyb.bio.alg.tree.PartitionRuleTree;
+import ua.kiev.icyb.bio.alg.tree.RuleEntropy;
+import ua.kiev.icyb.bio.alg.tree.RuleTreeGenerator;
+import ua.kiev.icyb.bio.alg.tree.TreeSwitchAlgorithm;
+
+/**
+ * Тесты, связанные с алгоритмами с областями компетентности.
+ */
+public class TreeTests {
+	
+	private static Env env;
+	
+	private static SequenceSet set1;
+	
+	@BeforeClass
+	public static void setup() throws IOException {
+		final String testDir = System.getProperty("testdir", "test");
+		env = new Env(testDir + "/env.conf");
+		set1 = env.loadSet("elegans-I");
+	}
+	
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+	
+	private static class RandomPartitionRule extends PartitionRule {
+		
+		private final double p;
+		
+		public RandomPartitionRule(double p) {
+			this.p = p;
+		}
+		
+		@Override
+		public boolean test(byte[] seq) {
+			return (Math.random() < p);
+		}
+		
+		@Override
+		public String toString() {
+			return "Random(" + p + ")";
+		}
+	}
+	
+	private static byte[] randomSequence(int alphabetSize, int length) {
+		byte[] seq = new byte[length];
+		for (int i = 0; i < length; i++) {
+			seq[i] = (byte) Math.floor(Math.random() * alphabetSize);
+		}
+		return seq;
+	}
+	
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+	
+	/**
+	 * Тестирует базовые методы множества цепочек.
+	 */
+	@Test
+	public void testFragmentSet() {
+		FragmentSet set = new FragmentSet("ACGT", 1);
+		set.add(1);
+		set.add(2);
+		assertEquals("C,G", set.toString());
+		
+		List<String> strings = new ArrayList<String>();
+		strings.add("A");
+		strings.add("T");
+		set = new FragmentSet("ACGT", strings);
+		assertEquals(2, set.size());
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(3));
+	}
+	
+	/**
+	 * Тестирует поиск дополнения к множеству.
+	 */
+	@Test
+	public void testFragmentSetComplementary() {
+		FragmentSet set = new FragmentSet("ACGT", 1);
+		set.add(1);
+		set.add(2);
+		assertEquals("C,G", set.toString());
+		
+		set = set.complmentary();
+		assertEquals("A,T", set.toString());
+	}
+	
+	/**
+	 * Тестирует поиск подмножеств множества цепочек.
+	 */
+	@Test
+	public void testFragmentSetSubsets() {
+		FragmentSet set = new FragmentSet("ACGT", 1);
+		set.add(1);
+		set.add(2); // set ~ { C, G }
+		
+		Collection<FragmentSet> subsets = set.subsets();
+		assertEquals(2, subsets.size());
+		
+		set.add(0); // set ~ { A, C, G }
+		subsets = set.subsets();
+		assertEquals(6, subsets.size());
+		
+		set.add(3); // set ~ { A, C, G, T }
+		subsets = set.subsets();
+		assertEquals(7, subsets.size());
+		for (FragmentSet subset : subsets) {
+			assertTrue(subset.size() <= 2);
+		}
+	}
+	
+	/**
+	 * Тестирует перебор подмножеств множества, содержащего больше 31 цепочки.
+	 */
+	@Test
+	public void testFragmentSetLargeSubsets() {
+		FragmentSet set = new FragmentSet("ACGT", 3);
+		for (int i = 0; i < 40; i++) {
+			set.add(i);
+		}
+		Collection<FragmentSet> subsets = set.subsets();
+		assertEquals(Integer.MAX_VALUE, subsets.size());
+		FragmentSet first = subsets.iterator().next();
+		assertEquals(1, first.size());
+		assertTrue(first.contains(0));
+		
+		for (int i = 40; i < 63; i++) {
+			set.add(i);
+		}
+		try {
+			set.subsets();
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Ожидаемое исключение
+		}
+	}
+	
+	/**
+	 * Тестирует загрузку множества цепочек, сохраненного в сериализованной форме
+	 * предыдущих версий (подкласс {@link java.util.HashSet}).
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFragmentSetLegacyForm() throws Exception {
+		// Множество { AC, CG, GT }, сохраненное версией 0.10.0
+		final String hex = "aced00057372002575612e6b6965762e696379622e62696f2e616c672e747265652e4672"
+				+ "61676d656e74536574000000000000000102000249000e667261676d656e744c656e6774"
+				+ "684c0008616c7068616265747400124c6a6176612f6c616e672f537472696e673b787200"
+				+ "116a6176612e7574696c2e48617368536574ba44859596b8b7340300007870770c000000"
+				+ "103f40000000000003737200116a6176612e6c616e672e496e746567657212e2a0a4f781"
+				+ "873802000149000576616c7565787200106a6176612e6c616e672e4e756d62657286ac95"
+				+ "1d0b94e08b0200007870000000017371007e0004000000067371007e00040000000b7800"
+				+ "00000274000441434754";
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		
+		ObjectInputStream in = new Env.ObjInputStream(new ByteArrayInputStream(bytes), env);
+		FragmentSet set = (FragmentSet) in.readObject();
+		in.close();
+		
+		assertEquals("ACGT", set.getStates());
+		assertEquals(2, set.getFragmentLength());
+		assertEquals(new FragmentSet("ACGT", Arrays.asList("AC", "CG", "GT")), set);
+	}
+	
+	/**
+	 * Тестирует сравнение множеств цепочек и расстояние между ними.
+	 */
+	@Test
+	public void testFragmentSetEquality() {
+		FragmentSet x = new FragmentSet("ACGT", 3);
+		x.add(1);
+		x.add(63);
+		FragmentSet y = new FragmentSet(x);
+		assertEquals(x, y);
+		assertEquals(x.hashCode(), y.hashCode());
+		assertEquals(0, x.distance(y));
+		
+		y.remove(63);
+		y.add(2);
+		assertFalse(x.equals(y));
+		assertEquals(2, x.distance(y));
+		
+		FragmentSet z = new FragmentSet("ACGT", 4);
+		z.add(1);
+		z.add(63);
+		assertFalse(x.equals(z));
+		assertEquals(256 - 2, z.complmentary().size());
+		assertFalse(z.complmentary().contains(63));
+	}
+	
+	/**
+	 * Тестирует вычисление концентрации цепочек в строке.
+	 */
+	@Test
+	public void testFragmentSetContent() {
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2); // frag ~ { C, G }
+		
+		byte[] seq = new byte[] { 1, 3, 2, 1, 2, 0, 0 };
+		assertEquals(4.0 / 7, frag.content(seq), 1e-6);
+		seq = new byte[] { 0, 3, 2, 1, 2, 0, 0 };
+		assertEquals(3.0 / 7, frag.content(seq), 1e-6);
+		seq = new byte[] { 0, 0, 3, 0, 0 };
+		assertEquals(0.0, frag.content(seq), 1e-6);
+		seq = new byte[] { 0, 0, 0, 0, 0, 1 };
+		assertEquals(1.0 / 6, frag.content(seq), 1e-6);
+	}
+	
+	/**
+	 * Тестирует вычисление медианной концентрации множества цепочек в наборе строк.
+	 */
+	@Test
+	public void testFragmentSetMedianContent() throws IOException {
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2); // frag ~ { C, G }
+		
+		SimpleSequenceSet set = new SimpleSequenceSet("ACGT", "xi", null);
+		byte[] seq = new byte[] { 1, 3, 2, 1, 2, 0, 0 };
+		set.add(new Sequence(seq, null));
+		seq = new byte[] { 0, 0, 3, 0, 0 };
+		set.add(new Sequence(seq, null));
+		seq = new byte[] { 0, 0, 0, 0, 0, 1 };
+		set.add(new Sequence(seq, null));
+		
+		double content = frag.medianContent(set);
+		assertEquals(1.0 / 6, content, 1e-6);
+		
+		seq = new byte[] { 0, 0, 2, 0, 0, 1 };
+		set.add(new Sequence(seq, null));
+		
+		content = frag.medianContent(set);
+		assertEquals(1.0 / 3, content, 1e-6);
+	}
+	
+	/**
+	 * Тестирует вычисление концентраций цепочек с помощью индекса вхождений.
+	 */
+	@Test
+	public void testFragmentIndex() {
+		final SequenceSet set = set1;
+		
+		for (int length = 1; length <= 3; length++) {
+			FragmentIndex index = new FragmentIndex(set, length);
+			assertEquals(set.size(), index.size());
+			
+			FragmentSet frag = new FragmentSet("ACGT", length);
+			for (int i = 0; i < 3; i++) {
+				frag.add((int) Math.floor(Math.random() * (1 << (2 * length))));
+			}
+			
+			double[] content = index.content(frag);
+			for (int i = 0; i < set.size(); i++) {
+				assertEquals(frag.content(set.observed(i)), content[i], 1e-12);
+			}
+			assertEquals(frag.medianContent(set), index.medianContent(frag), 1e-12);
+			
+			PartitionRule rule = new ContentPartitionRule(frag, 0.1);
+			BitSet mask = ((ContentPartitionRule) rule).mask(index);
+			assertEquals(rule.mask(set), mask);
+			boolean[] selector = rule.test(set);
+			for (int i = 0; i < selector.length; i++) {
+				assertEquals(selector[i], mask.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Тестирует базовые методы предиката на основе концентрации множества наблюдаемых состояний. 
+	 */
+	@Test
+	public void testContentPartitionRule() {
+		FragmentSet set = new FragmentSet("ACGT", 1);
+		set.add(1);
+		set.add(2); // set ~ { C, G }
+		
+		PartitionRule rule = new ContentPartitionRule(set, 0.5);
+		byte[] seq = new byte[] { 1, 3, 2, 1, 2, 0, 0 };
+		assertTrue(rule.test(seq));
+		seq = new byte[] { 0, 3, 2, 1, 2, 0, 0 };
+		assertFalse(rule.test(seq));
+		rule = new ContentPartitionRule(set, 0.3);
+		assertTrue(rule.test(seq));
+	}
+	
+	/**
+	 * Тестирует разбиение выборки предикатом.
+	 */
+	@Test
+	public void testContentPartitionRuleSplit() {
+		final SequenceSet set = set1;
+		
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2); // frag ~ { C, G }
+		
+		PartitionRule rule = new ContentPartitionRule(frag, 0.5);
+		SequenceSet[] parts = rule.split(set);
+		assertEquals(2, parts.length);
+		assertEquals(set.size(), parts[0].size() + parts[1].size());
+		
+		for (Sequence seq : parts[0]) {
+			assertTrue(frag.content(seq.observed) > 0.5);
+		}
+		for (Sequence seq : parts[1]) {
+			assertTrue(frag.content(seq.observed) <= 0.5);
+		}
+	}
+	
+	/**
+	 * Тестирует базовые методы дерева предикатов.
+	 */
+	@Test
+	public void testParititionRuleTree() {
+		PartitionRuleTree tree = new PartitionRuleTree();
+		assertEquals(1, tree.size());
+		
+		PartitionRule rule1 = new RandomPartitionRule(0.5);
+		tree.add(rule1, 0);
+		assertEquals(2, tree.size());
+		assertSame(rule1, tree.rule(0));
+		
+		PartitionRule rule2 = new RandomPartitionRule(0.5);
+		tree.add(rule2, 0);
+		assertEquals(3, tree.size());
+		assertSame(rule1, tree.rule(0));
+		assertSame(rule2, tree.rule(1));
+		
+		tree.trim(1);
+		assertEquals(2, tree.size());
+		assertSame(rule1, tree.rule(0));
+	}
+	
+	/**
+	 * Тестирует поиск компонент разбиения.
+	 */
+	@Test
+	public void testParititionRuleTreePartitions() {
+		final FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2); // frag ~ {c, g}
+		
+		PartitionRuleTree tree = new PartitionRuleTree();
+		PartitionRule rule1 = new ContentPartitionRule(frag, 0.475);
+		tree.add(rule1, 0);
+		PartitionRule rule2 = new ContentPartitionRule(frag, 0.525);
+		tree.add(rule2, 1);
+		
+		List<Partition> leaves = tree.leaves();
+		assertEquals(tree.size(), leaves.size());
+		
+		int[] counts = new int[leaves.size()];
+		for (Partition part : leaves) {
+			counts[part.index()]++;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			assertEquals(1, counts[i]);
+		}
+		
+		// Каждый вызов root() возвращает отдельную копию дерева разбиения
+		Partition root = tree.root();
+		assertNotSame(root, tree.root());
+		assertNotSame(root, leaves.get(0).root());
+		assertEquals(tree.size(), root.numberOfLeaves());
+		
+		final int nSamples = 10000;
+		for (int i = 0; i < nSamples; i++) {
+			byte[] seq = randomSequence(4, 100);
+			int partIdx = tree.getPart(seq);
+			
+			for (Partition part : leaves) {
+				assertEquals(partIdx == part.index(), part.rule().test(seq));
+			}
+		}
+	}
+	
+	/**
+	 * Тестирует метод {@link PartitionRuleTree#getPart(byte[])}.
+	 */
+	@Test
+	public void testParititionRuleTreeGetPart() {
+		PartitionRuleTree tree = new PartitionRuleTree();
+		assertEquals(1, tree.size());
+		
+		PartitionRule rule1 = new RandomPartitionRule(0.6);
+		tree.add(rule1, 0);
+		PartitionRule rule2 = new RandomPartitionRule(0.3);
+		tree.add(rule2, 0);
+		
+		byte[] seq = new byte[] { 1, 2, 3 };
+		int[] counts = new int[tree.size()];
+		final int nSamples = 100000;
+		
+		for (int i = 0; i < nSamples; i++) {
+			counts[tree.getPart(seq)]++;
+		}
+		
+		final double dev = 3.0 / Math.sqrt(nSamples);
+		assertEquals((1 - 0.6) * (1 - 0.3), 1.0 * counts[0] / nSamples, dev);
+		assertEquals(0.6, 1.0 * counts[1] / nSamples, dev);
+		assertEquals((1 - 0.6) * 0.3, 1.0 * counts[2] / nSamples, dev);
+	}
+	
+	/**
+	 * Тестирует уменьшение размера дерева разбиения.
+	 */
+	@Test
+	public void testPartitionRuleTreeTrim() {
+		PartitionRuleTree tree = new PartitionRuleTree();
+		
+		PartitionRule rule1 = new RandomPartitionRule(0.6);
+		tree.add(rule1, 0);
+		PartitionRule rule2 = new RandomPartitionRule(0.3);
+		tree.add(rule2, 0);
+		
+		assertEquals(3, tree.size());
+		
+		tree.trim(5);
+		assertEquals(3, tree.size());
+		assertSame(rule1, tree.rule(0));
+		assertSame(rule2, tree.rule(1));
+		
+		tree.trim(2);
+		assertEquals(3, tree.size());
+		assertSame(rule1, tree.rule(0));
+		assertSame(rule2, tree.rule(1));
+		
+		tree.trim(1);
+		assertEquals(2, tree.size());
+		assertSame(rule1, tree.rule(0));
+		
+		byte[] seq = new byte[] { 1, 2, 3 };
+		int[] counts = new int[tree.size()];
+		final int nSamples = 100000;
+		
+		for (int i = 0; i < nSamples; i++) {
+			counts[tree.getPart(seq)]++;
+		}
+		
+		final double dev = 3.0 / Math.sqrt(nSamples);
+		assertEquals(0.4, 1.0 * counts[0] / nSamples, dev);
+		assertEquals(0.6, 1.0 * counts[1] / nSamples, dev);
+	}
+	
+	/**
+	 * Тестирует разбиение выборки с помощью дерева предикатов.
+	 */
+	@Test
+	public void testParititionRuleTreeSplit() {
+		PartitionRuleTree tree = new PartitionRuleTree();
+		assertEquals(1, tree.size());
+		
+		PartitionRule rule1 = new RandomPartitionRule(0.6);
+		tree.add(rule1, 0);
+		PartitionRule rule2 = new RandomPartitionRule(0.3);
+		tree.add(rule2, 0);
+				
+		byte[] seq = new byte[] { 1, 2, 3 };
+		final int nSamples = 100000;
+		SimpleSequenceSet set = new SimpleSequenceSet("ACGT", "xi", null);
+		for (int i = 0; i < nSamples; i++) {
+			set.add(new Sequence(seq, null));
+		}
+		
+		SequenceSet[] parts = tree.split(set);
+		
+		final double dev = 3.0 / Math.sqrt(nSamples);
+		assertEquals((1 - 0.6) * (1 - 0.3), 1.0 * parts[0].size() / nSamples, dev);
+		assertEquals(0.6, 1.0 * parts[1].size() / nSamples, dev);
+		assertEquals((1 - 0.6) * 0.3, 1.0 * parts[2].size() / nSamples, dev);
+	}
+	
+	/**
+	 * Проверяет, что разбиение выборки за один проход совпадает с поэлементным
+	 * определением частей разбиения.
+	 */
+	@Test
+	public void testPartitionRuleTreeGetParts() {
+		final SequenceSet set = set1;
+		
+		PartitionRuleTree tree = new PartitionRuleTree();
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2); // frag ~ { C, G }
+		tree.add(new ContentPartitionRule(frag, frag.medianContent(set)), 0);
+		frag = new FragmentSet("ACGT", 1);
+		frag.add(0); // frag ~ { A }
+		tree.add(new ContentPartitionRule(frag, 0.3), 0);
+		frag = new FragmentSet("ACGT", 2);
+		frag.add(3);
+		frag.add(12); // frag ~ { AT, TA }
+		tree.add(new ContentPartitionRule(frag, 0.1), 1);
+		
+		int[] parts = tree.getParts(set);
+		int[] parallelParts = tree.getParts(set, env);
+		int[] counts = new int[tree.size()];
+		for (int i = 0; i < set.size(); i++) {
+			assertEquals(tree.getPart(set.observed(i)), parts[i]);
+			assertEquals(parts[i], parallelParts[i]);
+			counts[parts[i]]++;
+		}
+		
+		SequenceSet[] subsets = tree.split(set, env);
+		for (int p = 0; p < tree.size(); p++) {
+			assertEquals(counts[p], subsets[p].size());
+			for (int i = 0; i < subsets[p].size(); i++) {
+				assertEquals(p, tree.getPart(subsets[p].observed(i)));
+			}
+		}
+	}
+	
+	/**
+	 * Проверяет, что обучение и распознавание группами строк, относящихся к одному
+	 * составляющему алгоритму, дают те же результаты, что и обработка отдельных строк.
+	 */
+	@Test
+	public void testTreeSwitchAlgorithmBatches() {
+		final SequenceSet set = set1;
+		
+		PartitionRuleTree tree = new PartitionRuleTree();
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2); // frag ~ { C, G }
+		tree.add(new ContentPartitionRule(frag, frag.medianContent(set)), 0);
+		
+		SeqAlgorithm[] algs = new SeqAlgorithm[tree.size()];
+		for (int i = 0; i < algs.length; i++) {
+			algs[i] = new ViterbiAlgorithm(1, 3);
+		}
+		TreeSwitchAlgorithm reference = new TreeSwitchAlgorithm(tree, algs);
+		TreeSwitchAlgorithm batched = (TreeSwitchAlgorithm) reference.clearClone();
+		for (Sequence sequence : set) {
+			reference.train(sequence);
+		}
+		new ThreadedAlgorithm(batched, env).train(set);
+		
+		SequenceSet threaded = new ThreadedAlgorithm(batched, env).runSet(set);
+		SequenceSet sequential = batched.runSet(set);
+		for (int i = 0; i < set.size(); i++) {
+			final byte[] expected = reference.run(set.get(i));
+			assertTrue(Arrays.equals(expected, threaded.hidden(i)));
+			assertTrue(Arrays.equals(expected, sequential.hidden(i)));
+			assertEquals(set.id(i), sequential.id(i));
+		}
+	}
+	
+	/**
+	 * Алгоритм Витерби, прерывающий текущий поток после распознавания первой строки.
+	 */
+	private static class InterruptingAlgorithm extends ViterbiAlgorithm {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public InterruptingAlgorithm() {
+			super(1, 3);
+		}
+		
+		@Override
+		public byte[] run(Sequence sequence) {
+			byte[] result = super.run(sequence);
+			Thread.currentThread().interrupt();
+			return result;
+		}
+	}
+	
+	/**
+	 * Проверяет, что прерывание потока во время распознавания одним из составляющих
+	 * алгоритмов останавливает распознавание остальных групп строк и сохраняется
+	 * после окончания работы метода.
+	 */
+	@Test
+	public void testSwitchAlgorithmInterrupt() {
+		final SequenceSet set = set1;
+		
+		PartitionRuleTree tree = new PartitionRuleTree();
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		frag.add(2);
+		tree.add(new ContentPartitionRule(frag, frag.medianContent(set)), 0);
+		
+		SeqAlgorithm[] algs = { new InterruptingAlgorithm(), new ViterbiAlgorithm(1, 3) };
+		TreeSwitchAlgorithm alg = new TreeSwitchAlgorithm(tree, algs);
+		alg.train(set);
+		
+		final AtomicInteger completed = new AtomicInteger(0), finished = new AtomicInteger(0);
+		try {
+			alg.runSet(set, new JobListener() {
+				
+				@Override
+				public void seqCompleted(Sequence sequence) {
+					completed.incrementAndGet();
+				}
+				
+				@Override
+				public void finished() {
+					finished.incrementAndGet();
+				}
+			});
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+		
+		assertEquals(1, completed.get());
+		assertEquals(0, finished.get());
+	}
+	
+	/**
+	 * Тестирует вычисление информационной энтропии.
+	 */
+	@Test
+	public void testEntropy() {
+		final SequenceSet set = set1;
+		
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		
+		PartitionRule falseRule = new RandomPartitionRule(-1.0);
+		assertEquals(0.0, entropy.fitness(falseRule), 1e-6);
+		PartitionRule trueRule = new RandomPartitionRule(2.0);
+		assertEquals(0.0, entropy.fitness(trueRule), 1e-6);
+		
+		PartitionRule rule = new RandomPartitionRule(0.5);
+		boolean[] selector = rule.test(set);
+		double H = entropy.fitness(set.filter(selector));
+		
+		for (int i = 0; i < selector.length; i++) {
+			selector[i] = !selector[i];
+		}
+		double otherH = entropy.fitness(set.filter(selector));
+		assertEquals(H, otherH, 1e-6);
+	}
+	
+	@Test
+	public void testFitnessForSubsets() throws IOException {
+		final SequenceSet set = set1;
+		
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		
+		PartitionRule rule = new RandomPartitionRule(0.6);
+		boolean[] selector = rule.test(set);
+		
+		SequenceSet subset1 = set.filter(selector);
+		for (int i = 0; i < selector.length; i++) {
+			selector[i] = !selector[i];
+		}
+		SequenceSet subset2 = set.filter(selector);
+		
+		double H = entropy.fitness(subset1);
+		double otherH = entropy.fitness(subset1, subset2);
+		assertEquals(H, otherH, 0.01);
+	}
+	
+	/**
+	 * Тестирует вычисление функционала качества для разбиения, заданного набором строк,
+	 * а также для подмножества, строки которого скопированы из полной выборки.
+	 */
+	@Test
+	public void testFitnessForSelector() throws IOException {
+		final SequenceSet set = set1;
+		
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		
+		PartitionRule rule = new RandomPartitionRule(0.4);
+		boolean[] selector = rule.test(set);
+		SequenceSet subset = set.filter(selector);
+		double H = entropy.fitness(subset);
+		assertEquals(H, entropy.fitness(selector), 1e-6);
+		
+		BitSet mask = new BitSet(selector.length);
+		for (int i = 0; i < selector.length; i++) {
+			if (selector[i]) mask.set(i);
+		}
+		assertEquals(H, entropy.fitness(mask), 1e-6);
+		
+		SimpleSequenceSet copy = new SimpleSequenceSet(set.states());
+		for (Sequence sequence : subset) {
+			copy.add(new Sequence(sequence.id, sequence.observed.clone(), sequence.hidden.clone()));
+		}
+		assertEquals(H, entropy.fitness(copy), 1e-6);
+	}
+	
+	/**
+	 * Тестирует вычисление функционала качества по битовой маске строк для предиката
+	 * на основе концентрации цепочек.
+	 */
+	@Test
+	public void testFitnessForMask() throws IOException {
+		final SequenceSet set = set1;
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		
+		FragmentSet fragments = new FragmentSet("ACGT", 2);
+		fragments.add(3);
+		fragments.add(12);
+		ContentPartitionRule rule = new ContentPartitionRule(fragments, 0.0);
+		rule.setThreshold(entropy.medianContent(fragments));
+		
+		boolean[] selector = rule.test(set);
+		BitSet mask = rule.mask(set);
+		assertEquals(mask, entropy.mask(rule));
+		assertEquals(mask, rule.mask(new FragmentIndex(set, 2)));
+		for (int i = 0; i < selector.length; i++) {
+			assertEquals(selector[i], mask.get(i));
+		}
+		
+		double H = entropy.fitness(set.filter(selector));
+		assertEquals(H, entropy.fitness(mask), 1e-6);
+		assertEquals(H, entropy.fitness(rule), 1e-6);
+	}
+	
+	/**
+	 * Тестирует подсчет количества вхождений цепочек для множества, полученного добавлением
+	 * цепочки к другому множеству, по количествам вхождений для исходного множества.
+	 */
+	@Test
+	public void testFragmentIndexOccurrences() {
+		final SequenceSet set = set1;
+		FragmentIndex index = new FragmentIndex(set, 2);
+		
+		FragmentSet base = new FragmentSet("ACGT", 2);
+		base.add(3);
+		base.add(9);
+		FragmentSet child = new FragmentSet("ACGT", 2);
+		child.add(3);
+		child.add(9);
+		child.add(12);
+		
+		int[] baseOccurrences = index.occurrences(base);
+		int[] occurrences = index.occurrences(baseOccurrences, 12);
+		int[] expected = index.occurrences(child);
+		for (int i = 0; i < set.size(); i++) {
+			final byte[] seq = set.observed(i);
+			int count = 0;
+			for (int pos = 0; pos + 1 < seq.length; pos++) {
+				final int fragment = seq[pos] * 4 + seq[pos + 1];
+				if ((fragment == 3) || (fragment == 9) || (fragment == 12)) count++;
+			}
+			assertEquals(count, expected[i]);
+			assertEquals(count, occurrences[i]);
+		}
+	}
+	
+	/**
+	 * Тестирует вычисление функционала качества по статистике, полученной обновлением 
+	 * статистики для близкого разбиения, как это делается при добавлении цепочки 
+	 * к множеству в алгоритме {@link ua.kiev.icyb.bio.alg.tree.RuleAddAlgorithm}.
+	 */
+	@Test
+	public void testIncrementalStatistics() throws IOException {
+		final SequenceSet set = set1;
+		
+		for (boolean countInitials : new boolean[] { true, false }) {
+			RuleEntropy entropy = new RuleEntropy(set, 5, countInitials);
+			FragmentIndex index = entropy.index(2);
+			
+			FragmentSet base = new FragmentSet("ACGT", 2);
+			base.add(3);
+			FragmentSet child = new FragmentSet("ACGT", 2);
+			child.add(3);
+			child.add(12);
+			
+			int[] baseOccurrences = index.occurrences(base);
+			double[] content = index.content(baseOccurrences);
+			BitSet baseMask = new ContentPartitionRule(base, median(content)).mask(index);
+			RuleEntropy.PartStatistics parent = entropy.statistics(baseMask);
+			assertEquals(entropy.fitness(baseMask), entropy.fitness(parent), 1e-6);
+			
+			content = index.content(index.occurrences(baseOccurrences, 12));
+			BitSet childMask = new ContentPartitionRule(child, median(content)).mask(index);
+			RuleEntropy.PartStatistics statistics = entropy.statistics(parent, childMask);
+			assertEquals(childMask.cardinality(), statistics.size());
+			assertEquals(entropy.fitness(childMask), entropy.fitness(statistics), 1e-6);
+			
+			// Разбиение, отличающееся от исходного несколькими строками
+			BitSet nearMask = (BitSet) baseMask.clone();
+			for (int i = 0; i < set.size(); i += set.size() / 10) {
+				nearMask.flip(i);
+			}
+			statistics = entropy.statistics(parent, nearMask);
+			assertEquals(nearMask.cardinality(), statistics.size());
+			assertEquals(entropy.fitness(nearMask), entropy.fitness(statistics), 1e-6);
+		}
+	}
+	
+	/**
+	 * Тестирует одновременное вычисление функционала качества для предикатов на основе
+	 * концентрации с различными пороговыми значениями.
+	 */
+	@Test
+	public void testFitnessSweep() throws IOException {
+		final SequenceSet set = set1;
+		
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		final FragmentSet frag = new FragmentSet(set.observedStates(), 1);
+		frag.add(1);
+		frag.add(2); // frag ~ {c, g}
+		
+		double[] thresholds = { 0.5, 0.3, 0.45, 0.6, 0.45, 0.4 };
+		int[] sizes = new int[thresholds.length];
+		double[] fitness = entropy.fitness(frag, thresholds, sizes);
+		for (int i = 0; i < thresholds.length; i++) {
+			PartitionRule rule = new ContentPartitionRule(frag, thresholds[i]);
+			assertEquals(set.filter(rule.test(set)).size(), sizes[i]);
+			assertEquals(entropy.fitness(rule), fitness[i], 1e-6);
+		}
+	}
+	
+	/**
+	 * Тестирует унимодальность функционала качества разбиения для семейства предикатов,
+	 * различающихся пороговым значением концентрации.
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testEntropyUnimodality() throws IOException {
+		final SequenceSet set = set1;
+		
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		final FragmentSet frag = new FragmentSet(set.observedStates(), 1);
+		frag.add(1);
+		frag.add(2); // frag ~ {c, g}
+		
+		int i = 0, maxI = -1;
+		double[] fitness = new double[61];
+		double maxFitness = 0.0;
+		for (double t = 0.2; t < 0.8; t += 0.01) {
+			PartitionRule rule = new ContentPartitionRule(frag, t);
+			fitness[i] = entropy.fitness(rule);
+			if (fitness[i] > maxFitness) {
+				maxI = i;
+				maxFitness = fitness[i];
+			}
+			i++;
+		}
+		
+		assertTrue(maxI > 5);
+		assertTrue(maxI < fitness.length - 5);
+		
+		for (i = 0; i < maxI; i++) {
+			assertTrue(fitness[i] <= fitness[i + 1]);
+		}
+		for (i = maxI + 1; i < fitness.length; i++) {
+			assertTrue(fitness[i - 1] >= fitness[i]);
+		}
+	}
+	
+	/**
+	 * Тестирует кэш значений функционала качества: вытеснение давно не использовавшихся
+	 * значений и сохранение на диск.
+	 */
+	@Test
+	public void testFitnessCache() throws IOException {
+		final RuleEntropy entropy = new RuleEntropy(set1, 3);
+		assertEquals(entropy.fingerprint(), new RuleEntropy(set1, 5).fingerprint());
+		
+		boolean[] selector = new boolean[set1.size()];
+		selector[0] = true;
+		assertFalse(entropy.fingerprint() == new RuleEntropy(set1.filter(selector), 3).fingerprint());
+		
+		FitnessCache cache = new FitnessCache(2);
+		FragmentSet frag = new FragmentSet("ACGT", 1);
+		frag.add(1);
+		FitnessCache.Key key1 = new FitnessCache.Key(entropy.fingerprint(), 3, 
+				new ContentPartitionRule(frag, 0.2));
+		FitnessCache.Key key2 = new FitnessCache.Key(entropy.fingerprint(), 3, 
+				new ContentPartitionRule(frag, 0.3));
+		FitnessCache.Key key3 = new FitnessCache.Key(entropy.fingerprint(), 5, 
+				new ContentPartitionRule(frag, 0.2));
+		
+		cache.put(key1, 1.0);
+		cache.put(key2, 2.0);
+		assertEquals(1.0, cache.get(key1), 1e-6);
+		cache.put(key3, 3.0);
+		assertEquals(2, cache.size());
+		assertNull(cache.get(key2));
+		
+		final String filename = tempFolder.getRoot() + "/fitness.cache";
+		cache.save(env, filename);
+		FitnessCache loaded = env.load(filename);
+		assertEquals(2, loaded.size());
+		assertEquals(1.0, loaded.get(new FitnessCache.Key(entropy.fingerprint(), 3, 
+				new ContentPartitionRule(frag, 0.2))), 1e-6);
+		assertEquals(3.0, loaded.get(key3), 1e-6);
+		
+		assertSame(FitnessCache.open(env, filename, 10), FitnessCache.open(env, filename, 10));
+		assertEquals(2, loaded.capacity());
+		assertEquals(10, FitnessCache.open(env, filename, 5).capacity());
+		assertEquals(20, FitnessCache.open(env, filename, 20).capacity());
+	}
+	
+	/**
+	 * Организм, представляющий собой 8-битное число; подсчитывает вычисления
+	 * функционала качества для каждого значения.
+	 */
+	private static class CountingOrganism implements Organism {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Количество вычислений функционала качества для каждого значения. */
+		static final Map<Integer, AtomicInteger> evaluations = new ConcurrentHashMap<Integer, AtomicInteger>();
+		
+		private final int value;
+		
+		public CountingOrganism(int value) {
+			this.value = value & 0xff;
+		}
+		
+		@Override
+		public Organism mutate(double p) {
+			return mutate(p, new Random());
+		}
+		
+		@Override
+		public Organism mutate(double p, Random random) {
+			int bits = value;
+			for (int i = 0; i < 8; i++) {
+				if (random.nextDouble() < p) bits ^= 1 << i;
+			}
+			return new CountingOrganism(bits);
+		}
+		
+		@Override
+		public Organism crossover(Organism other) {
+			return crossover(other, new Random());
+		}
+		
+		@Override
+		public Organism crossover(Organism other, Random random) {
+			final int mask = random.nextInt();
+			return new CountingOrganism((value & mask) | (((CountingOrganism) other).value & ~mask));
+		}
+		
+		@Override
+		public double fitness() {
+			evaluations.putIfAbsent(value, new AtomicInteger());
+			evaluations.get(value).incrementAndGet();
+			return Integer.bitCount(value);
+		}
+		
+		@Override
+		public int hashCode() {
+			return value;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof CountingOrganism) && (((CountingOrganism) obj).value == value);
+		}
+	}
+	
+	/**
+	 * Проверяет, что функционал качества организмов, не имеющих ключа для общего кэша,
+	 * вычисляется не более одного раза за время работы алгоритма.
+	 */
+	@Test
+	public void testGeneticAlgorithmMemoization() {
+		for (int islands = 1; islands <= 2; islands++) {
+			CountingOrganism.evaluations.clear();
+			
+			List<Organism> initial = new ArrayList<Organism>();
+			for (int i = 0; i < 6; i++) {
+				initial.add(new CountingOrganism(i * 37));
+			}
+			GeneticAlgorithm alg = new GeneticAlgorithm();
+			alg.initialPopulation = initial;
+			alg.generations = 5;
+			alg.crossovers = 2;
+			alg.mutations = 2;
+			alg.mutationP = 0.2;
+			alg.maxSize = 4;
+			alg.islands = islands;
+			env.run(alg);
+			
+			assertFalse(CountingOrganism.evaluations.isEmpty());
+			for (AtomicInteger count : CountingOrganism.evaluations.values()) {
+				assertEquals(1, count.get());
+			}
+		}
+	}
+	
+	/**
+	 * Тестирует островную модель генетического алгоритма.
+	 */
+	@Test
+	public void testIslandGeneticAlgorithm() throws IOException {
+		final RuleEntropy entropy = new RuleEntropy(set1, 3);
+		final Random random = new Random(1);
+		
+		List<Organism> initial = new ArrayList<Organism>();
+		double initialFitness = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < 6; i++) {
+			Organism item = FragmentSetWrapper.random(entropy, 2, random);
+			initial.add(item);
+			initialFitness = Math.max(initialFitness, item.fitness());
+		}
+		
+		GeneticAlgorithm alg = new GeneticAlgorithm();
+		alg.initialPopulation = initial;
+		alg.generations = 4;
+		alg.crossovers = 2;
+		alg.mutations = 2;
+		alg.mutationP = 0.1;
+		alg.maxSize = 3;
+		alg.islands = 3;
+		alg.migrationInterval = 1;
+		alg.migrants = 1;
+		alg.saveTemplate = tempFolder.getRoot() + "/pop-{i}.gen";
+		
+		final String saveFile = tempFolder.getRoot() + "/islands.run";
+		env.run(alg, saveFile);
+		
+		Set<Organism> population = env.load(tempFolder.getRoot() + "/pop-" + alg.generations + ".gen");
+		assertFalse(population.isEmpty());
+		assertTrue(population.size() <= alg.islands * alg.maxSize);
+		
+		double fitness = Double.NEGATIVE_INFINITY;
+		for (Organism item : population) {
+			fitness = Math.max(fitness, item.fitness());
+		}
+		assertTrue(fitness >= initialFitness);
+		
+		// Продолжение работы алгоритма по сохраненному состоянию островов
+		GeneticAlgorithm resumed = env.load(saveFile);
+		resumed.generations = alg.generations + 2;
+		env.run(resumed);
+		
+		population = env.load(tempFolder.getRoot() + "/pop-" + resumed.generations + ".gen");
+		assertFalse(population.isEmpty());
+		assertTrue(population.size() <= alg.islands * alg.maxSize);
+	}
+	
+	/**
+	 * Тестирует генерирование дерева разбиения на основе выборки.
+	 */
+	@Test
+	@Category(SlowTest.class)
+	public void testTreeGen() {
+		final SequenceSet set = set1;
+		
+		final FragmentSet frag = new FragmentSet(set.observedStates(), 1);
+		frag.add(1);
+		frag.add(2);
+		
+		RuleTreeGenerator alg = new RuleTreeGenerator();
+		alg.set = set;
+		alg.percentages = new double[] { 0.3, 0.35, 0.4, 0.45, 0.5, 0.55, 0.6, 0.65, 0.7 };
+		alg.baseSets = Collections.singleton(frag);
+		alg.order = 5;
+		alg.minPartSize = 10;
+		alg.treeSize = 3;
+		
+		env.run(alg);
+		
+		assertEquals(alg.treeSize + 1, alg.tree.size());
+		
+		int count = 0;
+		for (RuleTreeGenerator.Fitness f : alg.computedFitness) {
+			if (f.isOptimal) count++;
+		}
+		assertEquals(2 * alg.treeSize - 1, count);
+		
+		count = 0;
+		double fitness = 0.0;
+		for (RuleTreeGenerator.Fitness f : alg.computedFitness) {
+			if (f.isGloballyOptimal) {
+				count++;
+				fitness += f.fitness;
+			}
+		}
+		assertEquals(alg.treeSize, count);
+		
+		RuleEntropy entropy = new RuleEntropy(set, 5);
+		assertEquals(entropy.fitness(alg.tree), fitness, 0.1);
+	}
+	
+	/**
+	 * Проверяет, что при добавлении правила в дерево значения функционала качества 
+	 * для неразбиваемых частей выборки не вычисляются повторно, а выбранное правило
+	 * совпадает с правилом, найденным при вычислении функционала для всех частей заново.
+	 */
+	@Test
+	public void testTreeGenReusesFitness() {
+		final SequenceSet set = set1;
+		
+		final FragmentSet frag = new FragmentSet(set.observedStates(), 1);
+		frag.add(1);
+		frag.add(2);
+		
+		RuleTreeGenerator alg = new RuleTreeGenerator();
+		alg.set = set;
+		alg.percentages = new double[] { 0.3, 0.4, 0.5, 0.6, 0.7 };
+		alg.baseSets = Collections.singleton(frag);
+		alg.order = 5;
+		alg.minPartSize = 10;
+		alg.treeSize = 3;
+		
+		env.run(alg);
+		assertEquals(4, alg.tree.size());
+		
+		// Дерево перед добавлением последнего правила. Номер итерации равен количеству
+		// частей разбиения; значение функционала для правила могло быть вычислено на одной 
+		// из предыдущих итераций
+		PartitionRuleTree prefix = new PartitionRuleTree();
+		int lastPart = -1;
+		for (int r = 0; r < 3; r++) {
+			int splitPart = -1, foundIteration = -1;
+			for (RuleTreeGenerator.Fitness f : alg.computedFitness) {
+				if ((f.iteration <= r + 1) && (f.iteration > foundIteration) 
+						&& f.isGloballyOptimal && f.rule.equals(alg.tree.rule(r))) {
+					splitPart = f.partitionIndex;
+					foundIteration = f.iteration;
+				}
+			}
+			assertTrue(splitPart >= 0);
+			if (r < 2) {
+				prefix.add(alg.tree.rule(r), splitPart);
+			} else {
+				lastPart = splitPart;
+			}
+		}
+		final SequenceSet[] parts = prefix.split(set);
+		
+		// На последней итерации функционал вычисляется только для частей, полученных
+		// при добавлении предыдущего правила; третья часть не изменялась
+		Set<Integer> recomputed = new HashSet<Integer>();
+		for (RuleTreeGenerator.Fitness f : alg.computedFitness) {
+			if (f.iteration == 3) recomputed.add(f.partitionIndex);
+		}
+		assertEquals(2, recomputed.size());
+		assertTrue(recomputed.contains(2));
+		int untouched = -1;
+		for (int p = 0; p < 3; p++) {
+			if (!recomputed.contains(p)) untouched = p;
+		}
+		assertTrue(untouched >= 0);
+		
+		double bestFitness = Double.NEGATIVE_INFINITY;
+		int bestPart = -1;
+		int nReused = 0;
+		for (int p = 0; p < 3; p++) {
+			RuleEntropy entropy = new RuleEntropy(parts[p], alg.order);
+			final int iteration = (p == untouched) ? 2 : 3;
+			for (RuleTreeGenerator.Fitness f : alg.computedFitness) {
+				if ((f.partitionIndex != p) || (f.iteration != iteration) || (f.fitness < 0)) {
+					continue;
+				}
+				
+				assertEquals(parts[p].size(), f.set.size());
+				if (p == untouched) nReused++;
+				
+				final double fitness = entropy.fitness(f.rule);
+				assertEquals(fitness, f.fitness, 1e-6);
+				if (fitness > bestFitness) {
+					bestFitness = fitness;
+					bestPart = p;
+				}
+			}
+		}
+		assertTrue(nReused > 0);
+		
+		assertEquals(bestPart, lastPart);
+		RuleEntropy entropy = new RuleEntropy(parts[lastPart], alg.order);
+		assertEquals(bestFitness, entropy.fitness(alg.tree.rule(2)), 1e-6);
+	}
+}